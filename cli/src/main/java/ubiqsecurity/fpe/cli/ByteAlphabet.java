@@ -0,0 +1,80 @@
+package ubiqsecurity.fpe.cli;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ * maps the bytes of an ASCII alphabet to and from numerals, so that
+ * data can be encrypted straight from, and back into, byte buffers.
+ * because each character is one byte, encryption preserves the length
+ * of the data in bytes as well as in characters.
+ */
+final class ByteAlphabet
+{
+    private final byte[] chars;
+    private final int[] digits = new int[256];
+
+    ByteAlphabet(final String alphabet) {
+        Arrays.fill(this.digits, -1);
+
+        this.chars = new byte[alphabet.length()];
+        for (int i = 0; i < alphabet.length(); i++) {
+            final char c = alphabet.charAt(i);
+
+            if (c >= 0x80) {
+                throw new IllegalArgumentException("alphabet must be ASCII");
+            } else if (this.digits[c] >= 0) {
+                throw new IllegalArgumentException("duplicate character in alphabet");
+            }
+
+            this.chars[i] = (byte)c;
+            this.digits[c] = i;
+        }
+    }
+
+    int radix() {
+        return this.chars.length;
+    }
+
+    /*
+     * return the numeral value of the byte @b,
+     * or -1 if @b is not a member of the alphabet
+     */
+    int digit(final byte b) {
+        return this.digits[b & 0xff];
+    }
+
+    /*
+     * return the byte for the numeral value @d
+     */
+    byte character(final int d) {
+        return this.chars[d];
+    }
+
+    /*
+     * convert the @n bytes of @src beginning at @off into numerals,
+     * storing them in @X. returns false if any byte is not a member
+     * of the alphabet
+     */
+    boolean numerals(final ByteBuffer src, final int off, final int n,
+                     final int[] X) {
+        for (int i = 0; i < n; i++) {
+            final int d = this.digits[src.get(off + i) & 0xff];
+            if (d < 0) {
+                return false;
+            }
+            X[i] = d;
+        }
+        return true;
+    }
+
+    /*
+     * store the characters for the @n numerals of @X
+     * into @dst, beginning at @off
+     */
+    void bytes(final int[] X, final int n, final ByteBuffer dst, final int off) {
+        for (int i = 0; i < n; i++) {
+            dst.put(off + i, this.chars[X[i]]);
+        }
+    }
+}
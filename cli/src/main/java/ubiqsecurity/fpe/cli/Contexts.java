@@ -0,0 +1,77 @@
+package ubiqsecurity.fpe.cli;
+
+import ubiqsecurity.fpe.FF1;
+import ubiqsecurity.fpe.FF1Key;
+import ubiqsecurity.fpe.FF3_1;
+import ubiqsecurity.fpe.FF3_1Key;
+import ubiqsecurity.fpe.FFX;
+
+/*
+ * creates contexts for one algorithm, key, tweak, and alphabet. the
+ * contexts share one expanded key; each worker creates contexts of its
+ * own so that workers don't contend for the plans cached by a context
+ */
+final class Contexts
+{
+    static final String FF1 = "ff1";
+    static final String FF3_1 = "ff3-1";
+
+    private final String algorithm;
+    private final FF1Key ff1;
+    private final FF3_1Key ff3_1;
+    private final byte[] twk;
+    private final String alphabet;
+
+    Contexts(final String algorithm, final byte[] key, final byte[] twk,
+             final String alphabet) {
+        this.algorithm = algorithm;
+        this.twk = twk;
+        this.alphabet = alphabet;
+
+        if (algorithm.equals(FF1)) {
+            this.ff1 = new FF1Key(key);
+            this.ff3_1 = null;
+        } else if (algorithm.equals(FF3_1)) {
+            this.ff1 = null;
+            this.ff3_1 = new FF3_1Key(key);
+        } else {
+            throw new IllegalArgumentException("unknown algorithm: " + algorithm);
+        }
+
+        /* fail now, rather than in the workers, if the parameters are invalid */
+        this.create();
+    }
+
+    String alphabet() {
+        return this.alphabet;
+    }
+
+    FFX create() {
+        if (this.ff1 != null) {
+            return new FF1(this.ff1, this.twk, 0, 0,
+                           this.alphabet.length(), this.alphabet);
+        }
+        return new FF3_1(this.ff3_1, this.twk,
+                         this.alphabet.length(), this.alphabet);
+    }
+
+    static byte[] hex(final String s) {
+        final byte[] b = new byte[s.length() / 2];
+
+        if (s.length() % 2 != 0) {
+            throw new IllegalArgumentException("invalid hex string");
+        }
+
+        for (int i = 0; i < b.length; i++) {
+            final int hi = Character.digit(s.charAt(2 * i), 16);
+            final int lo = Character.digit(s.charAt(2 * i + 1), 16);
+
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("invalid hex string");
+            }
+            b[i] = (byte)((hi << 4) | lo);
+        }
+
+        return b;
+    }
+}
@@ -0,0 +1,224 @@
+package ubiqsecurity.fpe.cli;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import ubiqsecurity.fpe.FFX;
+
+/*
+ * encrypts or decrypts selected columns of a CSV file.
+ *
+ * the file is divided into chunks that end at newlines and are
+ * processed in parallel. fields are located and converted to numerals
+ * directly from the mapped bytes, and the results are written back
+ * into the mapped output at the same positions, so no strings are
+ * created for the data. fields may be quoted, but quoted fields may
+ * not contain newlines, as chunks are divided at any newline. empty
+ * fields are left empty.
+ */
+final class CsvTokenizer extends MappedTransform
+{
+    private final Contexts contexts;
+    private final ByteAlphabet alphabet;
+    private final boolean encrypt;
+    private final List<String> columns;
+    private final byte delimiter;
+    private final boolean header;
+    private final long chunk;
+
+    /* the columns to be processed, resolved from @columns */
+    private boolean[] selected;
+
+    /*
+     * @columns are 1-based column numbers or, if the file has a
+     * @header, the names of columns. @chunk is the approximate size,
+     * in bytes, of the chunks into which the file is divided
+     */
+    CsvTokenizer(final Contexts contexts, final boolean encrypt,
+                 final List<String> columns, final char delimiter,
+                 final boolean header,
+                 final int threads, final long chunk) {
+        super(threads);
+
+        if (delimiter >= 0x80 || delimiter == '"' ||
+            delimiter == '\r' || delimiter == '\n') {
+            throw new IllegalArgumentException("invalid delimiter");
+        }
+
+        this.contexts = contexts;
+        this.alphabet = new ByteAlphabet(contexts.alphabet());
+        this.encrypt = encrypt;
+        this.columns = columns;
+        this.delimiter = (byte)delimiter;
+        this.header = header;
+        this.chunk = chunk;
+    }
+
+    @Override
+    List<long[]> ranges(final FileChannel ch, final long size)
+        throws IOException {
+        final List<long[]> l = new ArrayList<>();
+        long pos = 0;
+
+        if (this.header) {
+            pos = lineEnd(ch, 0, size);
+            this.resolve(ch.map(FileChannel.MapMode.READ_ONLY, 0, pos));
+            /* the header is copied but not transformed */
+            l.add(new long[] { 0, pos });
+        } else {
+            this.resolve(null);
+        }
+
+        while (pos < size) {
+            final long end = lineEnd(ch, Math.min(pos + this.chunk, size) - 1, size);
+            l.add(new long[] { pos, end - pos });
+            pos = end;
+        }
+
+        return l;
+    }
+
+    /*
+     * determine which columns are selected, given the @header line
+     * of the file, or null if the file has none
+     */
+    private void resolve(final ByteBuffer header) {
+        final List<String> names = new ArrayList<>();
+        int max = 0;
+
+        if (header != null) {
+            final byte[] b = new byte[header.remaining()];
+            header.get(b);
+
+            for (String f : new String(b, StandardCharsets.UTF_8)
+                     .replaceAll("[\r\n]+$", "")
+                     .split(Pattern.quote(
+                                String.valueOf((char)this.delimiter)), -1)) {
+                if (f.length() >= 2 && f.startsWith("\"") && f.endsWith("\"")) {
+                    f = f.substring(1, f.length() - 1).replace("\"\"", "\"");
+                }
+                names.add(f);
+            }
+        }
+
+        final int[] idx = new int[this.columns.size()];
+        for (int i = 0; i < idx.length; i++) {
+            final String c = this.columns.get(i);
+
+            idx[i] = names.indexOf(c);
+            if (idx[i] < 0) {
+                try {
+                    idx[i] = Integer.parseInt(c) - 1;
+                } catch (NumberFormatException e) {
+                    idx[i] = -1;
+                }
+            }
+            if (idx[i] < 0) {
+                throw new IllegalArgumentException("unknown column: " + c);
+            }
+
+            max = Math.max(max, idx[i] + 1);
+        }
+
+        this.selected = new boolean[max];
+        for (int i : idx) {
+            this.selected[i] = true;
+        }
+    }
+
+    @Override
+    long transform(final MappedByteBuffer in, final MappedByteBuffer out,
+                   final long offset) {
+        final int len = in.limit();
+        final FFX ctx = this.contexts.create();
+        int[] X = new int[64];
+        long rows = 0;
+        int col = 0;
+        int i = 0;
+
+        if (this.header && offset == 0) {
+            return 0;
+        }
+
+        while (i < len) {
+            final int s, e;
+
+            if (in.get(i) == '"') {
+                int j = i + 1;
+
+                /* the field ends at a quote that isn't doubled */
+                while (j < len &&
+                       (in.get(j) != '"' || (j + 1 < len && in.get(j + 1) == '"'))) {
+                    j += (in.get(j) == '"') ? 2 : 1;
+                }
+
+                s = i + 1;
+                e = j;
+                i = Math.min(j + 1, len);
+
+                /* ignore anything between the closing quote and the delimiter */
+                while (i < len && in.get(i) != this.delimiter &&
+                       in.get(i) != '\r' && in.get(i) != '\n') {
+                    i++;
+                }
+            } else {
+                int j = i;
+
+                while (j < len && in.get(j) != this.delimiter &&
+                       in.get(j) != '\r' && in.get(j) != '\n') {
+                    j++;
+                }
+
+                s = i;
+                e = j;
+                i = j;
+            }
+
+            if (col < this.selected.length && this.selected[col] && e > s) {
+                final int n = e - s;
+
+                if (X.length < n) {
+                    X = new int[Math.max(n, 2 * X.length)];
+                }
+
+                try {
+                    if (!this.alphabet.numerals(in, s, n, X)) {
+                        throw new IllegalArgumentException("invalid character");
+                    }
+                    if (this.encrypt) {
+                        ctx.encrypt(X, 0, n, null);
+                    } else {
+                        ctx.decrypt(X, 0, n, null);
+                    }
+                } catch (IllegalArgumentException ex) {
+                    throw new IllegalArgumentException(
+                        ex.getMessage() + " in field at offset " + (offset + s), ex);
+                }
+
+                this.alphabet.bytes(X, n, out, s);
+            }
+
+            if (i < len && in.get(i) == this.delimiter) {
+                col++;
+                i++;
+            } else {
+                if (i < len && in.get(i) == '\r') {
+                    i++;
+                }
+                if (i < len && in.get(i) == '\n') {
+                    i++;
+                }
+                rows++;
+                col = 0;
+            }
+        }
+
+        return rows;
+    }
+}
@@ -0,0 +1,126 @@
+package ubiqsecurity.fpe.cli;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import ubiqsecurity.fpe.FFX;
+
+/*
+ * encrypts or decrypts the fields of a file of fixed-width records.
+ *
+ * as any multiple of the record length is the start of a record, the
+ * file is divided without reading it into equal ranges of whole
+ * records, a few per thread, and the ranges are processed in parallel.
+ * fields are converted to numerals directly from the mapped bytes and
+ * the results are written back into the mapped output at the same
+ * positions.
+ */
+final class FixedWidthTokenizer extends MappedTransform
+{
+    /* the number of ranges per thread, to even out the threads' work */
+    private static final int RANGES_PER_THREAD = 4;
+
+    private final Layout layout;
+    private final boolean encrypt;
+    private final int threads;
+    private final Contexts[] contexts;
+    private final ByteAlphabet[] alphabets;
+
+    FixedWidthTokenizer(final Layout layout, final byte[] key,
+                        final byte[] twk, final boolean encrypt,
+                        final int threads) {
+        super(threads);
+
+        this.layout = layout;
+        this.encrypt = encrypt;
+        this.threads = threads;
+        this.contexts = new Contexts[layout.fields.size()];
+        this.alphabets = new ByteAlphabet[layout.fields.size()];
+
+        for (int i = 0; i < this.contexts.length; i++) {
+            final Layout.Field f = layout.fields.get(i);
+
+            this.alphabets[i] = new ByteAlphabet(f.alphabet);
+            this.contexts[i] = new Contexts(f.algorithm, key, twk, f.alphabet);
+
+            /* check that the algorithm supports the field's length */
+            try {
+                this.contexts[i].create().encrypt(
+                    new int[f.length], 0, f.length, null);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                    e.getMessage() + " for field at offset " + f.offset, e);
+            }
+        }
+    }
+
+    @Override
+    List<long[]> ranges(final FileChannel ch, final long size) {
+        final List<long[]> l = new ArrayList<>();
+        final long records = size / this.layout.record;
+        final long per;
+
+        if (size % this.layout.record != 0) {
+            throw new IllegalArgumentException(
+                "file size is not a multiple of the record length");
+        }
+
+        per = Math.max(1, Math.min(
+                           (records + this.threads * RANGES_PER_THREAD - 1) /
+                           (this.threads * RANGES_PER_THREAD),
+                           Integer.MAX_VALUE / this.layout.record));
+
+        for (long r = 0; r < records; r += per) {
+            l.add(new long[] {
+                    r * this.layout.record,
+                    Math.min(per, records - r) * this.layout.record,
+                });
+        }
+
+        return l;
+    }
+
+    @Override
+    long transform(final MappedByteBuffer in, final MappedByteBuffer out,
+                   final long offset) {
+        final int record = this.layout.record;
+        final int records = in.limit() / record;
+        final int nf = this.contexts.length;
+        final FFX[] ctx = new FFX[nf];
+        final int[] off = new int[nf];
+        final int[] len = new int[nf];
+        int[] X = new int[0];
+
+        for (int i = 0; i < nf; i++) {
+            final Layout.Field f = this.layout.fields.get(i);
+
+            ctx[i] = this.contexts[i].create();
+            off[i] = f.offset;
+            len[i] = f.length;
+            X = (X.length < f.length) ? new int[f.length] : X;
+        }
+
+        for (int r = 0, base = 0; r < records; r++, base += record) {
+            for (int i = 0; i < nf; i++) {
+                final int s = base + off[i];
+
+                if (!this.alphabets[i].numerals(in, s, len[i], X)) {
+                    throw new IllegalArgumentException(
+                        "invalid character in field at offset " + (offset + s));
+                }
+
+                if (this.encrypt) {
+                    ctx[i].encrypt(X, 0, len[i], null);
+                } else {
+                    ctx[i].decrypt(X, 0, len[i], null);
+                }
+
+                this.alphabets[i].bytes(X, len[i], out, s);
+            }
+        }
+
+        return records;
+    }
+}
@@ -0,0 +1,618 @@
+package ubiqsecurity.fpe.cli;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import ubiqsecurity.fpe.FFX;
+
+/*
+ * encrypts or decrypts the string values at selected paths of a stream
+ * of JSON documents, such as a file of newline-delimited JSON.
+ *
+ * the stream is scanned byte by byte, and everything other than the
+ * selected values is copied through unchanged, including whitespace.
+ * no tree of the documents is built: the scanner keeps only its place
+ * in the paths being matched, so the memory used is bounded by the
+ * nesting depth of the documents and the length of the longest
+ * selected value rather than by the size of a document.
+ *
+ * paths are of the form $.customer.ssn, in which [*] selects every
+ * element of an array, as in $.accounts[*].number. values at selected
+ * paths that are not strings, and empty strings, are left unchanged.
+ */
+final class JsonTokenizer
+{
+    /* the deepest nesting of objects and arrays allowed */
+    static final int MAX_DEPTH = 512;
+    /* the longest value, in characters, that may be selected */
+    static final int MAX_VALUE = 1 << 20;
+
+    private static final int BUFFER = 65536;
+
+    /*
+     * a node of the tree of selected paths. a value whose path leads
+     * to a node is selected if the node is
+     */
+    private static final class Node
+    {
+        byte[][] names = new byte[0][];
+        Node[] members = new Node[0];
+        Node elements;
+        boolean selected;
+
+        Node member(final byte[] name) {
+            for (int i = 0; i < this.names.length; i++) {
+                if (Arrays.equals(this.names[i], name)) {
+                    return this.members[i];
+                }
+            }
+
+            this.names = Arrays.copyOf(this.names, this.names.length + 1);
+            this.members = Arrays.copyOf(this.members, this.members.length + 1);
+            this.names[this.names.length - 1] = name;
+            return this.members[this.members.length - 1] = new Node();
+        }
+
+        /*
+         * return the member named by the @n bytes of @b, or null
+         */
+        Node member(final byte[] b, final int n) {
+            for (int i = 0; i < this.names.length; i++) {
+                final byte[] name = this.names[i];
+
+                if (name.length == n) {
+                    int j = 0;
+                    while (j < n && name[j] == b[j]) {
+                        j++;
+                    }
+                    if (j == n) {
+                        return this.members[i];
+                    }
+                }
+            }
+            return null;
+        }
+
+        Node elements() {
+            if (this.elements == null) {
+                this.elements = new Node();
+            }
+            return this.elements;
+        }
+    }
+
+    private final Contexts contexts;
+    private final ByteAlphabet alphabet;
+    private final boolean encrypt;
+    private final Node root = new Node();
+    /* the length, in bytes, of the longest member name in the paths */
+    private int maxName;
+
+    JsonTokenizer(final Contexts contexts, final boolean encrypt,
+                  final List<String> paths) {
+        this.contexts = contexts;
+        this.alphabet = new ByteAlphabet(contexts.alphabet());
+        this.encrypt = encrypt;
+
+        for (String p : paths) {
+            this.add(p);
+        }
+    }
+
+    private void add(final String path) {
+        Node node = this.root;
+        int i = 1;
+
+        if (!path.startsWith("$")) {
+            throw new IllegalArgumentException("invalid path: " + path);
+        }
+
+        while (i < path.length()) {
+            if (path.startsWith("[*]", i)) {
+                node = node.elements();
+                i += 3;
+            } else if (path.charAt(i) == '.') {
+                int j = i + 1;
+                while (j < path.length() &&
+                       path.charAt(j) != '.' && path.charAt(j) != '[') {
+                    j++;
+                }
+                if (j == i + 1) {
+                    throw new IllegalArgumentException("invalid path: " + path);
+                }
+
+                final byte[] name = path.substring(i + 1, j)
+                    .getBytes(StandardCharsets.UTF_8);
+                this.maxName = Math.max(this.maxName, name.length);
+                node = node.member(name);
+                i = j;
+            } else {
+                throw new IllegalArgumentException("invalid path: " + path);
+            }
+        }
+
+        node.selected = true;
+    }
+
+    /*
+     * transform the documents of @in, writing them to @out
+     */
+    Throughput run(final InputStream in, final OutputStream out)
+        throws IOException {
+        final long start = System.nanoTime();
+        final Scanner s = new Scanner(in, out);
+        long records = 0;
+
+        while (true) {
+            s.whitespace();
+            if (s.peek() < 0) {
+                break;
+            }
+            s.value(this.root, 0);
+            records++;
+        }
+        s.flush();
+
+        return new Throughput(records, s.offset(), System.nanoTime() - start);
+    }
+
+    /*
+     * decode the escapes in the first @n bytes of @raw, returning the
+     * UTF-8 encoding of the result, or null if the bytes can't be
+     * decoded or may have been truncated
+     */
+    private static byte[] unescape(final byte[] raw, final int n) {
+        final StringBuilder sb = new StringBuilder();
+        int s = 0;
+
+        if (n == raw.length) {
+            return null;
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (raw[i] == '\\') {
+                final char c;
+
+                sb.append(new String(raw, s, i - s, StandardCharsets.UTF_8));
+                if (++i == n) {
+                    return null;
+                }
+
+                switch (raw[i]) {
+                case '"': case '\\': case '/':
+                    c = (char)raw[i];
+                    break;
+                case 'b':
+                    c = '\b';
+                    break;
+                case 'f':
+                    c = '\f';
+                    break;
+                case 'n':
+                    c = '\n';
+                    break;
+                case 'r':
+                    c = '\r';
+                    break;
+                case 't':
+                    c = '\t';
+                    break;
+                case 'u':
+                    if (i + 4 >= n) {
+                        return null;
+                    }
+                    try {
+                        c = (char)Integer.parseInt(
+                            new String(raw, i + 1, 4, StandardCharsets.US_ASCII), 16);
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                    i += 4;
+                    break;
+                default:
+                    return null;
+                }
+
+                sb.append(c);
+                s = i + 1;
+            }
+        }
+        sb.append(new String(raw, s, n - s, StandardCharsets.UTF_8));
+
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private final class Scanner
+    {
+        private final InputStream in;
+        private final OutputStream out;
+        private final FFX ctx = contexts.create();
+
+        private final byte[] ib = new byte[BUFFER];
+        private int ip, il;
+        /* the offset in the stream of ib[0] */
+        private long base;
+
+        private final byte[] ob = new byte[BUFFER];
+        private int op;
+
+        /*
+         * the raw bytes of the current member name, up to a length
+         * beyond which it can't match any of the paths
+         */
+        private final byte[] name = new byte[6 * maxName + 1];
+        private int[] X = new int[64];
+
+        Scanner(final InputStream in, final OutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        long offset() {
+            return this.base + this.ip;
+        }
+
+        private IOException error(final String msg) {
+            return new IOException(msg + " at offset " + this.offset());
+        }
+
+        int peek() throws IOException {
+            while (this.ip == this.il) {
+                this.base += this.il;
+                this.ip = 0;
+                this.il = this.in.read(this.ib);
+                if (this.il < 0) {
+                    this.il = 0;
+                    return -1;
+                }
+            }
+            return this.ib[this.ip] & 0xff;
+        }
+
+        private int next() throws IOException {
+            final int c = this.peek();
+            if (c < 0) {
+                throw new EOFException("unexpected end of input at offset " +
+                                       this.offset());
+            }
+            this.ip++;
+            return c;
+        }
+
+        private void put(final int b) throws IOException {
+            if (this.op == this.ob.length) {
+                this.out.write(this.ob, 0, this.op);
+                this.op = 0;
+            }
+            this.ob[this.op++] = (byte)b;
+        }
+
+        private int copy() throws IOException {
+            final int c = this.next();
+            this.put(c);
+            return c;
+        }
+
+        private void expect(final int c) throws IOException {
+            if (this.peek() != c) {
+                throw this.error("expected '" + (char)c + "'");
+            }
+            this.copy();
+        }
+
+        /*
+         * copy, in bulk, the bytes of a string up to
+         * the next quote, escape, or control character
+         */
+        private void plain() throws IOException {
+            int i = this.ip;
+
+            while (i < this.il) {
+                final int b = this.ib[i];
+                if (b == '"' || b == '\\' || (b >= 0 && b < 0x20)) {
+                    break;
+                }
+                i++;
+            }
+
+            while (this.ip < i) {
+                final int n = Math.min(i - this.ip, this.ob.length - this.op);
+
+                System.arraycopy(this.ib, this.ip, this.ob, this.op, n);
+                this.ip += n;
+                this.op += n;
+                if (this.op == this.ob.length) {
+                    this.out.write(this.ob, 0, this.op);
+                    this.op = 0;
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            this.out.write(this.ob, 0, this.op);
+            this.op = 0;
+            this.out.flush();
+        }
+
+        void whitespace() throws IOException {
+            int c;
+            while ((c = this.peek()) == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                this.copy();
+            }
+        }
+
+        /*
+         * transform a value whose path leads to @node,
+         * or to no selected path if @node is null
+         */
+        void value(final Node node, final int depth) throws IOException {
+            final int c;
+
+            this.whitespace();
+            c = this.peek();
+
+            if (c == '{') {
+                this.object(node, depth + 1);
+            } else if (c == '[') {
+                this.array(node, depth + 1);
+            } else if (c == '"') {
+                if (node != null && node.selected) {
+                    this.cipher();
+                } else {
+                    this.string(false);
+                }
+            } else if (c < 0) {
+                this.next();
+            } else {
+                this.literal();
+            }
+        }
+
+        private void object(final Node node, final int depth) throws IOException {
+            if (depth > MAX_DEPTH) {
+                throw this.error("nesting too deep");
+            }
+
+            this.copy();
+            this.whitespace();
+            if (this.peek() == '}') {
+                this.copy();
+                return;
+            }
+
+            while (true) {
+                final int n;
+                final int c;
+
+                this.whitespace();
+                if (this.peek() != '"') {
+                    throw this.error("expected a member name");
+                }
+                n = this.string(node != null);
+
+                this.whitespace();
+                this.expect(':');
+                this.value((node != null) ? this.member(node, n) : null, depth);
+
+                this.whitespace();
+                c = this.copy();
+                if (c == '}') {
+                    return;
+                } else if (c != ',') {
+                    throw this.error("expected ',' or '}'");
+                }
+            }
+        }
+
+        /*
+         * return the member of @node named by the @n bytes of the
+         * name just scanned, or null if there is none
+         */
+        private Node member(final Node node, final int n) {
+            if (n < 0) {
+                /* the name contained escapes */
+                final byte[] b = unescape(this.name, -n - 1);
+                return (b != null) ? node.member(b, b.length) : null;
+            }
+            return node.member(this.name, n);
+        }
+
+        private void array(final Node node, final int depth) throws IOException {
+            final Node elements = (node != null) ? node.elements : null;
+
+            if (depth > MAX_DEPTH) {
+                throw this.error("nesting too deep");
+            }
+
+            this.copy();
+            this.whitespace();
+            if (this.peek() == ']') {
+                this.copy();
+                return;
+            }
+
+            while (true) {
+                final int c;
+
+                this.value(elements, depth);
+
+                this.whitespace();
+                c = this.copy();
+                if (c == ']') {
+                    return;
+                } else if (c != ',') {
+                    throw this.error("expected ',' or ']'");
+                }
+            }
+        }
+
+        /*
+         * copy a number, true, false, or null
+         */
+        private void literal() throws IOException {
+            int c = this.peek();
+
+            if (!((c >= '0' && c <= '9') || c == '-' ||
+                  c == 't' || c == 'f' || c == 'n')) {
+                throw this.error("unexpected character");
+            }
+
+            do {
+                this.copy();
+                c = this.peek();
+            } while ((c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') ||
+                     c == '.' || c == '+' || c == '-' || c == 'E');
+        }
+
+        /*
+         * copy a string. if @save, the raw bytes between the quotes are
+         * also saved in name, as far as it has room. returns the number
+         * of bytes saved, or, if the string contains escapes, -1 - that
+         * number, so that the caller can decode them
+         */
+        private int string(final boolean save) throws IOException {
+            boolean escaped = false;
+            int n = 0;
+            int c;
+
+            this.copy();
+            while (true) {
+                if (!save) {
+                    this.plain();
+                }
+                if ((c = this.copy()) == '"') {
+                    break;
+                }
+
+                if (c == '\\') {
+                    escaped = true;
+                    if (save && n < this.name.length) {
+                        this.name[n++] = (byte)c;
+                    }
+                    c = this.copy();
+                } else if (c < 0x20) {
+                    throw this.error("control character in string");
+                }
+                if (save && n < this.name.length) {
+                    this.name[n++] = (byte)c;
+                }
+            }
+
+            return escaped ? -1 - n : n;
+        }
+
+        /*
+         * encrypt or decrypt a selected string
+         */
+        private void cipher() throws IOException {
+            final long offset;
+            int n = 0;
+            int c;
+
+            offset = this.offset();
+            this.next();
+
+            while ((c = this.next()) != '"') {
+                if (c == '\\') {
+                    c = this.escape();
+                } else if (c < 0x20) {
+                    throw this.error("control character in string");
+                }
+
+                if (n == this.X.length) {
+                    if (n == MAX_VALUE) {
+                        throw this.error("string too long");
+                    }
+                    this.X = Arrays.copyOf(this.X, Math.min(2 * n, MAX_VALUE));
+                }
+
+                this.X[n] = (c < 0x80) ? alphabet.digit((byte)c) : -1;
+                if (this.X[n] < 0) {
+                    throw new IOException(
+                        "invalid character in string at offset " + offset);
+                }
+                n++;
+            }
+
+            if (n > 0) {
+                try {
+                    if (encrypt) {
+                        this.ctx.encrypt(this.X, 0, n, null);
+                    } else {
+                        this.ctx.decrypt(this.X, 0, n, null);
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(
+                        e.getMessage() + " in string at offset " + offset, e);
+                }
+            }
+
+            this.put('"');
+            for (int i = 0; i < n; i++) {
+                final int b = alphabet.character(this.X[i]);
+
+                if (b == '"' || b == '\\') {
+                    this.put('\\');
+                    this.put(b);
+                } else if (b < 0x20) {
+                    for (byte e : String.format("\\u%04x", b)
+                             .getBytes(StandardCharsets.US_ASCII)) {
+                        this.put(e);
+                    }
+                } else {
+                    this.put(b);
+                }
+            }
+            this.put('"');
+        }
+
+        /*
+         * return the character represented by an escape,
+         * the backslash of which has been read
+         */
+        private int escape() throws IOException {
+            final int c = this.next();
+
+            switch (c) {
+            case '"': case '\\': case '/':
+                return c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                return this.hex();
+            default:
+                throw this.error("invalid escape");
+            }
+        }
+
+        /*
+         * read the four hex digits of a \\u escape
+         */
+        private int hex() throws IOException {
+            int v = 0;
+
+            for (int i = 0; i < 4; i++) {
+                final int d = Character.digit(this.next(), 16);
+                if (d < 0) {
+                    throw this.error("invalid escape");
+                }
+                v = (v << 4) | d;
+            }
+
+            return v;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ubiqsecurity.fpe.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * the layout of the records of a fixed-width file, read from a spec
+ * such as:
+ *
+ *   # the length of each record, including any line terminator
+ *   record 42
+ *   # offset length algorithm alphabet
+ *   field 0 9 ff1 0123456789
+ *   field 20 20 ff3-1 0123456789abcdefghijklmnopqrstuvwxyz
+ *
+ * offsets are in bytes from the start of the record and begin at 0.
+ * fields may not overlap, and the bytes outside of them are copied
+ * unchanged. alphabets must be ASCII and may not contain whitespace.
+ */
+final class Layout
+{
+    static final class Field
+    {
+        final int offset;
+        final int length;
+        final String algorithm;
+        final String alphabet;
+
+        Field(final int offset, final int length,
+              final String algorithm, final String alphabet) {
+            this.offset = offset;
+            this.length = length;
+            this.algorithm = algorithm;
+            this.alphabet = alphabet;
+        }
+    }
+
+    final int record;
+    final List<Field> fields;
+
+    Layout(final int record, final List<Field> fields) {
+        final List<Field> l = new ArrayList<>(fields);
+
+        if (record < 1) {
+            throw new IllegalArgumentException("invalid record length");
+        }
+
+        l.sort((a, b) -> Integer.compare(a.offset, b.offset));
+        for (int i = 0; i < l.size(); i++) {
+            final Field f = l.get(i);
+
+            if (f.offset < 0 || f.length < 1 || f.offset > record - f.length) {
+                throw new IllegalArgumentException(
+                    "field at offset " + f.offset + " is outside of the record");
+            }
+            if (i > 0 && l.get(i - 1).offset + l.get(i - 1).length > f.offset) {
+                throw new IllegalArgumentException(
+                    "field at offset " + f.offset + " overlaps another");
+            }
+        }
+
+        this.record = record;
+        this.fields = Collections.unmodifiableList(l);
+    }
+
+    static Layout parse(final Reader r) throws IOException {
+        final BufferedReader br = new BufferedReader(r);
+        final List<Field> fields = new ArrayList<>();
+        int record = -1;
+        String line;
+        int num = 0;
+
+        while ((line = br.readLine()) != null) {
+            final String[] t;
+
+            num++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            t = line.split("\\s+");
+            try {
+                if (t[0].equals("record") && t.length == 2) {
+                    record = Integer.parseInt(t[1]);
+                    continue;
+                } else if (t[0].equals("field") && t.length == 5) {
+                    fields.add(new Field(Integer.parseInt(t[1]),
+                                         Integer.parseInt(t[2]),
+                                         t[3], t[4]));
+                    continue;
+                }
+            } catch (NumberFormatException e) {
+                /* reported below */
+            }
+
+            throw new IllegalArgumentException("invalid layout at line " + num);
+        }
+
+        if (record < 0) {
+            throw new IllegalArgumentException("layout has no record length");
+        }
+
+        return new Layout(record, fields);
+    }
+}
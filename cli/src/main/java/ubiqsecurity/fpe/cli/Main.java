@@ -0,0 +1,193 @@
+package ubiqsecurity.fpe.cli;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * the command line interface: ubiq-fpe <command> [options] <arguments>
+ */
+public final class Main
+{
+    /* options common to all commands */
+    private static final String[] CIPHER_OPTIONS = {
+        "key", "tweak", "threads",
+    };
+    private static final String[] CIPHER_FLAGS = {
+        "encrypt", "decrypt",
+    };
+
+    private static final String USAGE =
+        "usage: ubiq-fpe <command> [options] <arguments>\n" +
+        "\n" +
+        "commands:\n" +
+        "  csv <input> <output>    encrypt or decrypt columns of a CSV file\n" +
+        "      --columns <list>    comma-separated column numbers (from 1)\n" +
+        "                          or, with --header, column names\n" +
+        "      --header            the first line names the columns\n" +
+        "      --delimiter <c>     the field delimiter (default ,)\n" +
+        "      --chunk-size <MiB>  the size of the chunks processed in\n" +
+        "                          parallel (default 64)\n" +
+        "      --algorithm ff1|ff3-1  (default ff1)\n" +
+        "      --alphabet <chars>  ASCII characters (default 0123456789)\n" +
+        "  fixed <input> <output>  encrypt or decrypt the fields of a file\n" +
+        "                          of fixed-width records\n" +
+        "      --layout <file>     the record length and the offset, length,\n" +
+        "                          algorithm, and alphabet of each field\n" +
+        "  json <input> <output>   encrypt or decrypt string values of a\n" +
+        "                          stream of JSON documents; - is standard\n" +
+        "                          input or output\n" +
+        "      --paths <list>      comma-separated paths, e.g. $.customer.ssn\n" +
+        "                          or $.accounts[*].number\n" +
+        "      --algorithm, --alphabet  as for csv\n" +
+        "\n" +
+        "options for all commands:\n" +
+        "  --encrypt | --decrypt\n" +
+        "  --key <hex>             the key, or set UBIQ_FPE_KEY\n" +
+        "  --tweak <hex>           the tweak (default empty)\n" +
+        "  --threads <n>           for csv and fixed (default: the number\n" +
+        "                          of processors)\n";
+
+    private Main() {
+    }
+
+    private static String[] concat(final String[] a, final String... b) {
+        final String[] c = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+    static byte[] key(final Options o) {
+        final String key = o.get("key", System.getenv("UBIQ_FPE_KEY"));
+
+        if (key == null) {
+            throw new IllegalArgumentException("missing option: --key");
+        }
+        return Contexts.hex(key);
+    }
+
+    static byte[] tweak(final Options o) {
+        return Contexts.hex(o.get("tweak", ""));
+    }
+
+    static boolean encrypt(final Options o) {
+        if (o.has("encrypt") == o.has("decrypt")) {
+            throw new IllegalArgumentException(
+                "specify exactly one of --encrypt and --decrypt");
+        }
+        return o.has("encrypt");
+    }
+
+    static int threads(final Options o) {
+        return o.getInt("threads", Runtime.getRuntime().availableProcessors());
+    }
+
+    static List<String> files(final Options o, final int n) {
+        if (o.args().size() != n) {
+            throw new IllegalArgumentException("expected " + n + " file names");
+        }
+        return o.args();
+    }
+
+    private static Throughput csv(final String[] argv) throws Exception {
+        final Options o = new Options(
+            argv,
+            concat(CIPHER_OPTIONS,
+                   "algorithm", "alphabet", "columns", "delimiter", "chunk-size"),
+            concat(CIPHER_FLAGS, "header"));
+        final List<String> f = files(o, 2);
+        final String delimiter = o.get("delimiter", ",");
+
+        if (delimiter.length() != 1) {
+            throw new IllegalArgumentException("invalid delimiter");
+        }
+
+        return new CsvTokenizer(new Contexts(o.get("algorithm", Contexts.FF1),
+                                             key(o), tweak(o),
+                                             o.get("alphabet", "0123456789")),
+                                encrypt(o),
+                                Arrays.asList(o.require("columns").split(",")),
+                                delimiter.charAt(0), o.has("header"),
+                                threads(o),
+                                (long)o.getInt("chunk-size", 64) << 20)
+            .run(Paths.get(f.get(0)), Paths.get(f.get(1)));
+    }
+
+    private static Throughput fixed(final String[] argv) throws Exception {
+        final Options o = new Options(argv, concat(CIPHER_OPTIONS, "layout"),
+                                      CIPHER_FLAGS);
+        final List<String> f = files(o, 2);
+        final Layout layout;
+
+        try (Reader r = Files.newBufferedReader(Paths.get(o.require("layout")),
+                                                StandardCharsets.UTF_8)) {
+            layout = Layout.parse(r);
+        }
+
+        return new FixedWidthTokenizer(layout, key(o), tweak(o), encrypt(o),
+                                       threads(o))
+            .run(Paths.get(f.get(0)), Paths.get(f.get(1)));
+    }
+
+    private static Throughput json(final String[] argv) throws Exception {
+        final Options o = new Options(
+            /* the json command is sequential, so it has no --threads */
+            argv, new String[] { "key", "tweak", "algorithm", "alphabet", "paths" },
+            CIPHER_FLAGS);
+        final List<String> f = files(o, 2);
+        final JsonTokenizer t = new JsonTokenizer(
+            new Contexts(o.get("algorithm", Contexts.FF1), key(o), tweak(o),
+                         o.get("alphabet", "0123456789")),
+            encrypt(o), Arrays.asList(o.require("paths").split(",")));
+
+        try (InputStream in = f.get(0).equals("-")
+                 ? System.in : Files.newInputStream(Paths.get(f.get(0)));
+             OutputStream out = f.get(1).equals("-")
+                 ? System.out : Files.newOutputStream(Paths.get(f.get(1)))) {
+            return t.run(in, out);
+        }
+    }
+
+    public static void main(final String[] args) {
+        final String[] rest;
+        final Throughput t;
+
+        if (args.length == 0 || args[0].equals("--help")) {
+            System.err.print(USAGE);
+            System.exit(args.length == 0 ? 2 : 0);
+        }
+
+        rest = Arrays.copyOfRange(args, 1, args.length);
+
+        try {
+            switch (args[0]) {
+            case "csv":
+                t = csv(rest);
+                break;
+            case "fixed":
+                t = fixed(rest);
+                break;
+            case "json":
+                t = json(rest);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown command: " + args[0]);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("ubiq-fpe: " + e.getMessage());
+            System.exit(2);
+            return;
+        } catch (Exception e) {
+            System.err.println("ubiq-fpe: " + e);
+            System.exit(1);
+            return;
+        }
+
+        System.err.println(t);
+    }
+}
@@ -0,0 +1,125 @@
+package ubiqsecurity.fpe.cli;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * transforms a file into another of the same size, in parallel. the
+ * input is divided into ranges, each of which is memory-mapped, along
+ * with the same range of the output, and transformed by a worker. as
+ * each range is written to the same position in the output as it was
+ * read from the input, the output is in order however the ranges are
+ * scheduled.
+ */
+abstract class MappedTransform
+{
+    private final int threads;
+
+    MappedTransform(final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("invalid number of threads");
+        }
+        this.threads = threads;
+    }
+
+    /*
+     * divide the @size bytes of @ch into ranges, each given as
+     * { offset, length }. a range may not exceed 2 GiB
+     */
+    abstract List<long[]> ranges(FileChannel ch, long size)
+        throws IOException;
+
+    /*
+     * transform a range. @in and @out are positioned at 0 and hold the
+     * range, which begins at @offset in the file. @out holds a copy of
+     * @in. returns the number of records in the range
+     */
+    abstract long transform(MappedByteBuffer in, MappedByteBuffer out,
+                            long offset);
+
+    Throughput run(final Path input, final Path output) throws IOException {
+        final long start = System.nanoTime();
+        final ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+
+        try (RandomAccessFile ri = new RandomAccessFile(input.toFile(), "r");
+             RandomAccessFile ro = new RandomAccessFile(output.toFile(), "rw")) {
+            final FileChannel ci = ri.getChannel();
+            final FileChannel co = ro.getChannel();
+            final long size = ci.size();
+            final List<Future<Long>> results = new ArrayList<>();
+            long records = 0;
+
+            ro.setLength(size);
+
+            for (long[] r : this.ranges(ci, size)) {
+                if (r[1] > Integer.MAX_VALUE) {
+                    throw new IOException("range too large at offset " + r[0]);
+                }
+
+                results.add(pool.submit(() -> {
+                            final MappedByteBuffer in =
+                                ci.map(FileChannel.MapMode.READ_ONLY, r[0], r[1]);
+                            final MappedByteBuffer out =
+                                co.map(FileChannel.MapMode.READ_WRITE, r[0], r[1]);
+
+                            out.put(in.duplicate());
+                            out.clear();
+                            return this.transform(in, out, r[0]);
+                        }));
+            }
+
+            for (Future<Long> f : results) {
+                records += f.get();
+            }
+
+            return new Throughput(records, size, System.nanoTime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            } else if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /*
+     * return the offset just past the first newline at or after @pos,
+     * or @size if there is none
+     */
+    static long lineEnd(final FileChannel ch, long pos, final long size)
+        throws IOException {
+        final ByteBuffer b = ByteBuffer.allocate(65536);
+
+        while (pos < size) {
+            b.clear();
+            final int n = ch.read(b, pos);
+            if (n < 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (b.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,26 @@
+package ubiqsecurity.fpe.cli;
+
+/*
+ * the amount of data processed by a command and the time it took
+ */
+final class Throughput
+{
+    final long records;
+    final long bytes;
+    final long nanos;
+
+    Throughput(final long records, final long bytes, final long nanos) {
+        this.records = records;
+        this.bytes = bytes;
+        this.nanos = nanos;
+    }
+
+    @Override
+    public String toString() {
+        final double s = Math.max(this.nanos, 1) / 1e9;
+        final double mb = this.bytes / 1e6;
+
+        return String.format("%d records, %.1f MB in %.2f s: %.0f records/s, %.1f MB/s",
+                             this.records, mb, s, this.records / s, mb / s);
+    }
+}
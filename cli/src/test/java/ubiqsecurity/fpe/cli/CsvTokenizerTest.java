@@ -0,0 +1,105 @@
+package ubiqsecurity.fpe.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import ubiqsecurity.fpe.FFX;
+
+public class CsvTokenizerTest
+{
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final Contexts contexts = new Contexts(
+        Contexts.FF1, new byte[16], new byte[] { 1, 2, 3 }, "0123456789");
+
+    private Path write(final String s) throws IOException {
+        final File f = tmp.newFile();
+        Files.write(f.toPath(), s.getBytes(StandardCharsets.US_ASCII));
+        return f.toPath();
+    }
+
+    private static String read(final Path p) throws IOException {
+        return new String(Files.readAllBytes(p), StandardCharsets.US_ASCII);
+    }
+
+    private String csv(final String s, final boolean encrypt,
+                       final boolean header, final String... columns)
+        throws IOException {
+        final Path in = this.write(s);
+        final Path out = tmp.newFile().toPath();
+        final Throughput t = new CsvTokenizer(
+            this.contexts, encrypt, Arrays.asList(columns), ',', header,
+            3, 16).run(in, out);
+
+        assertEquals(s.length(), t.bytes);
+        return read(out);
+    }
+
+    @Test
+    public void encrypt() throws IOException {
+        final FFX ctx = this.contexts.create();
+        final StringBuilder pt = new StringBuilder("name,ssn,note\r\n");
+        final StringBuilder ct = new StringBuilder("name,ssn,note\r\n");
+
+        /* enough rows, with a small chunk size, to create many chunks */
+        for (int i = 0; i < 200; i++) {
+            final String ssn = String.format("%09d", 123456789L * i % 1000000000L);
+            final String note = (i % 3 == 0) ? "" : "\"a, \"\"b\"\"\"";
+
+            pt.append("row" + i + ",\"" + ssn + "\"," + note + "\r\n");
+            ct.append("row" + i + ",\"" + ctx.encrypt(ssn) + "\"," + note + "\r\n");
+        }
+        /* an empty field, and a final row without a newline */
+        pt.append("empty,,x\r\nlast,000000,");
+        ct.append("empty,,x\r\nlast," + ctx.encrypt("000000") + ",");
+
+        final String CT = this.csv(pt.toString(), true, true, "ssn");
+        assertEquals(ct.toString(), CT);
+        assertEquals(pt.toString(), this.csv(CT, false, true, "ssn"));
+    }
+
+    @Test
+    public void columns() throws IOException {
+        final FFX ctx = this.contexts.create();
+
+        assertEquals("012345," + ctx.encrypt("1234567") + ",x\n" +
+                     "999999," + ctx.encrypt("7654321") + ",y\n",
+                     this.csv("012345,1234567,x\n999999,7654321,y\n",
+                              true, false, "2"));
+        assertEquals(ctx.encrypt("012345") + ",a," + ctx.encrypt("1234567") + "\n",
+                     this.csv("012345,a,1234567\n", true, false, "1", "3"));
+    }
+
+    @Test
+    public void invalid() throws IOException {
+        final IllegalArgumentException e = assertThrows(
+            IllegalArgumentException.class, () -> {
+                this.csv("n\n123456\n12345x\n", true, true, "n");
+            });
+        assertTrue(e.getMessage().contains("invalid character in field at offset 9"));
+
+        assertThrows(IllegalArgumentException.class, () -> {
+                this.csv("n\n123456\n", true, true, "m");
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                /* too short for FF1 */
+                this.csv("123\n", true, false, "1");
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                new Contexts("ff2", new byte[16], null, "0123456789");
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                new ByteAlphabet("0123456789é");
+            });
+    }
+}
@@ -0,0 +1,113 @@
+package ubiqsecurity.fpe.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import ubiqsecurity.fpe.FFX;
+
+public class FixedWidthTokenizerTest
+{
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final byte[] key = new byte[16];
+    private final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+
+    private static final String ALNUM = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    private static final String LAYOUT =
+        "# a test layout\n" +
+        "record 32\n" +
+        "\n" +
+        "field 20 10 ff3-1 " + ALNUM + "\n" +
+        "field 0 9 ff1 0123456789\n";
+
+    private String run(final Layout layout, final String s,
+                       final boolean encrypt, final int threads)
+        throws IOException {
+        final File in = tmp.newFile();
+        final Path out = tmp.newFile().toPath();
+        final Throughput t;
+
+        Files.write(in.toPath(), s.getBytes(StandardCharsets.US_ASCII));
+        t = new FixedWidthTokenizer(layout, this.key, this.twk, encrypt, threads)
+            .run(in.toPath(), out);
+
+        assertEquals(s.length() / layout.record, t.records);
+        return new String(Files.readAllBytes(out), StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void encrypt() throws IOException {
+        final Layout layout = Layout.parse(new StringReader(LAYOUT));
+        final FFX ff1 = new Contexts(Contexts.FF1, key, twk, "0123456789").create();
+        final FFX ff3_1 = new Contexts(Contexts.FF3_1, key, twk, ALNUM).create();
+        final StringBuilder pt = new StringBuilder();
+        final StringBuilder ct = new StringBuilder();
+
+        assertEquals(32, layout.record);
+        assertEquals(0, layout.fields.get(0).offset);
+        assertEquals(20, layout.fields.get(1).offset);
+
+        for (int i = 0; i < 1000; i++) {
+            final String ssn = String.format("%09d", 987654321L * i % 1000000000L);
+            final String id = Long.toString(1000000000000000L + 7919L * i, 36)
+                .substring(0, 10);
+            final String pad = String.format("%-11s", "name " + i);
+
+            pt.append(ssn + pad + id + "\r\n");
+            ct.append(ff1.encrypt(ssn) + pad + ff3_1.encrypt(id) + "\r\n");
+        }
+
+        for (int threads : new int[] { 1, 3 }) {
+            final String CT = this.run(layout, pt.toString(), true, threads);
+            assertEquals(ct.toString(), CT);
+            assertEquals(pt.toString(), this.run(layout, CT, false, threads));
+        }
+    }
+
+    @Test
+    public void invalid() throws IOException {
+        final Layout layout = Layout.parse(
+            new StringReader("record 10\nfield 2 6 ff1 0123456789\n"));
+
+        /* not a whole number of records */
+        assertThrows(IllegalArgumentException.class, () -> {
+                this.run(layout, "xx123456\r\nxx", true, 1);
+            });
+
+        final IllegalArgumentException e = assertThrows(
+            IllegalArgumentException.class, () -> {
+                this.run(layout, "xx123456\r\nxx12345 \r\n", true, 1);
+            });
+        assertTrue(e.getMessage().contains("invalid character in field at offset 12"));
+
+        assertThrows(IllegalArgumentException.class, () -> {
+                /* too short for FF1 */
+                new FixedWidthTokenizer(
+                    Layout.parse(new StringReader("record 4\nfield 0 4 ff1 0123456789\n")),
+                    this.key, this.twk, true, 1);
+            });
+
+        for (String s : Arrays.asList(
+                 "field 0 4 ff1 0123456789\n",
+                 "record 8\nfield 0 9 ff1 0123456789\n",
+                 "record 8\nfield 0 6 ff1 0123456789\nfield 5 1 ff1 01\n",
+                 "record 8\nfield 0 6 ff1\n",
+                 "record x\n")) {
+            assertThrows(IllegalArgumentException.class, () -> {
+                    Layout.parse(new StringReader(s));
+                });
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package ubiqsecurity.fpe.cli;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import ubiqsecurity.fpe.FFX;
+
+public class JsonTokenizerTest
+{
+    private final Contexts contexts = new Contexts(
+        Contexts.FF1, new byte[16], new byte[] { 1, 2, 3 }, "0123456789");
+    private final FFX ctx = contexts.create();
+
+    private String json(final String s, final boolean encrypt,
+                        final String... paths) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] b = s.getBytes(StandardCharsets.UTF_8);
+
+        final Throughput t = new JsonTokenizer(
+            this.contexts, encrypt, Arrays.asList(paths))
+            .run(new ByteArrayInputStream(b), out);
+
+        assertEquals(b.length, t.bytes);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private String e(final String s) {
+        return this.ctx.encrypt(s);
+    }
+
+    @Test
+    public void encrypt() throws IOException {
+        final String PT =
+            "{\"customer\": {\"name\": \"A \\\"B\\\" C\", \"ssn\": \"123456789\",\n" +
+            "  \"ids\": [1, -2.5e3, true, null]}, \"ssn\": \"987654321\"}\n" +
+            "{\"customer\":{\"ssn\":\"\"}}\n" +
+            "{\"customer\":{\"ssn\":123456789}}\n" +
+            "{\"other\":{\"customer\":{\"ssn\":\"123456789\"}}}\n" +
+            "{\"customer\":{\"s\\u0073n\":\"5555555555\",\"ssn2\":\"123456\"}}\n" +
+            "{\"accounts\":[{\"number\":\"1111111111\"},{\"number\":\"2222222222\"}]}\n" +
+            "  [\"x\", {}, []]  \n" +
+            "{\"é\":{\"ssn\":\"123456\"}}";
+        final String CT =
+            "{\"customer\": {\"name\": \"A \\\"B\\\" C\", \"ssn\": \"" + e("123456789") + "\",\n" +
+            "  \"ids\": [1, -2.5e3, true, null]}, \"ssn\": \"987654321\"}\n" +
+            "{\"customer\":{\"ssn\":\"\"}}\n" +
+            "{\"customer\":{\"ssn\":123456789}}\n" +
+            "{\"other\":{\"customer\":{\"ssn\":\"123456789\"}}}\n" +
+            "{\"customer\":{\"s\\u0073n\":\"" + e("5555555555") + "\",\"ssn2\":\"123456\"}}\n" +
+            "{\"accounts\":[{\"number\":\"" + e("1111111111") + "\"},{\"number\":\"" +
+            e("2222222222") + "\"}]}\n" +
+            "  [\"x\", {}, []]  \n" +
+            "{\"é\":{\"ssn\":\"" + e("123456") + "\"}}";
+        final String[] paths = {
+            "$.customer.ssn", "$.accounts[*].number", "$.é.ssn",
+        };
+
+        assertEquals(CT, this.json(PT, true, paths));
+        assertEquals(PT, this.json(CT, false, paths));
+    }
+
+    @Test
+    public void escapes() throws IOException {
+        /* escaped characters in a selected value are decoded */
+        assertEquals("{\"a\":\"" + e("123456") + "\"}",
+                     this.json("{\"a\":\"\\u0031\\u003234\\u00356\"}", true, "$.a"));
+
+        /* characters that must be escaped are, in the output */
+        final Contexts c = new Contexts(
+            Contexts.FF1, new byte[16], new byte[0], "ab\"\\");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final String CT;
+
+        new JsonTokenizer(c, true, Arrays.asList("$.a")).run(
+            new ByteArrayInputStream("{\"a\":\"aaaaaaaaaaaaaaaaaaaa\"}"
+                                     .getBytes(StandardCharsets.UTF_8)),
+            out);
+        CT = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals("{\"a\":\"" +
+                     c.create().encrypt("aaaaaaaaaaaaaaaaaaaa")
+                     .replace("\\", "\\\\").replace("\"", "\\\"") +
+                     "\"}", CT);
+    }
+
+    @Test
+    public void large() throws IOException {
+        final int n = 100000;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        /* a single, large document, generated as it is read */
+        final InputStream in = new InputStream() {
+                private final byte[] head = "{\"x\":[".getBytes(StandardCharsets.US_ASCII);
+                private final byte[] item = "{\"y\":\"0123456789\"},".getBytes(StandardCharsets.US_ASCII);
+                private final byte[] tail = "{}]}".getBytes(StandardCharsets.US_ASCII);
+                private long pos;
+
+                @Override
+                public int read() {
+                    final long end = head.length + (long)n * item.length;
+
+                    if (pos < head.length) {
+                        return head[(int)pos++];
+                    } else if (pos < end) {
+                        return item[(int)((pos++ - head.length) % item.length)];
+                    } else if (pos < end + tail.length) {
+                        return tail[(int)(pos++ - end)];
+                    }
+                    return -1;
+                }
+            };
+
+        final Throughput t = new JsonTokenizer(
+            this.contexts, true, Arrays.asList("$.x[*].y")).run(in, out);
+        final String CT = new String(out.toByteArray(), StandardCharsets.US_ASCII);
+
+        assertEquals(1, t.records);
+        assertTrue(CT.startsWith("{\"x\":[{\"y\":\"" + e("0123456789") + "\"},"));
+        assertTrue(CT.endsWith("{}]}"));
+        assertEquals(t.bytes, CT.length());
+    }
+
+    @Test
+    public void invalid() throws IOException {
+        final IOException e = assertThrows(IOException.class, () -> {
+                this.json("{\"a\":\"123456\"}\n{\"a\":\"12345x\"}", true, "$.a");
+            });
+        assertTrue(e.getMessage().contains("invalid character in string at offset 20"));
+
+        for (String s : Arrays.asList(
+                 "{\"a\" \"123456\"}", "{\"a\":\"123456\"", "{\"a\":x}",
+                 "{\"a\":\"123\"}", "[1 2]", "{\"a\":\"1\n\"}")) {
+            assertThrows(IOException.class, () -> {
+                    this.json(s, true, "$.a");
+                });
+        }
+
+        final StringBuilder deep = new StringBuilder();
+        for (int i = 0; i <= JsonTokenizer.MAX_DEPTH; i++) {
+            deep.append('[');
+        }
+        assertThrows(IOException.class, () -> {
+                this.json(deep.toString(), true, "$.a");
+            });
+
+        for (String p : Arrays.asList("a", "$.", "$..a", "$[0]", "$a")) {
+            assertThrows(IllegalArgumentException.class, () -> {
+                    new JsonTokenizer(this.contexts, true, Arrays.asList(p));
+                });
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package ubiqsecurity.fpe;
+
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Reports the heap footprint of FF1 and FF3-1 contexts, comparing
+ * contexts that each expand their own key with contexts that share
+ * a single {@link FFXKey}.
+ *
+ * Run with: ./gradlew footprint
+ */
+public class ContextFootprint
+{
+    private static final int COUNT = 1000;
+
+    private static final int[] RADIX = { 10, 16, 36 };
+
+    public static void main(final String[] args) {
+        final byte[] key = new byte[32];
+        final byte[] twk = new byte[7];
+
+        final FFX[] owned = new FFX[COUNT];
+        final FFX[] shared = new FFX[COUNT];
+
+        final FF1Key ff1 = new FF1Key(key);
+        final FF3_1Key ff3_1 = new FF3_1Key(key);
+
+        for (int i = 0; i < COUNT; i++) {
+            final int radix = RADIX[i % RADIX.length];
+
+            if (i % 2 == 0) {
+                owned[i] = new FF1(key, twk, 0, 0, radix);
+                shared[i] = new FF1(ff1, twk, 0, 0, radix);
+            } else {
+                owned[i] = new FF3_1(key, twk, radix);
+                shared[i] = new FF3_1(ff3_1, twk, radix);
+            }
+        }
+
+        report("own key", GraphLayout.parseInstance((Object)owned));
+        report("shared key", GraphLayout.parseInstance((Object)shared));
+    }
+
+    private static void report(final String what, final GraphLayout layout) {
+        /* don't count the array holding the contexts */
+        final long size = layout.totalSize() - (16 + 4L * COUNT);
+
+        System.out.printf("%-12s %8d contexts %10d bytes %8.1f bytes/context%n",
+                          what, COUNT, size, (double)size / COUNT);
+    }
+}
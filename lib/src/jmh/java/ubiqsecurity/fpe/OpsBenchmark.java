@@ -0,0 +1,87 @@
+package ubiqsecurity.fpe;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the helpers in FFXOps, which differ between the releases of
+ * the multi-release jar. Run on Java 17 or later, with the jar on the
+ * class path, to compare against the Java 8 versions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpsBenchmark
+{
+    private final byte[] a = new byte[32];
+    private final byte[] b = new byte[32];
+    private final long[] x = new long[64];
+
+    private long m, rm, radix, rradix;
+
+    @Setup
+    public void setup() {
+        final Random rnd = new Random(0);
+
+        rnd.nextBytes(a);
+        rnd.nextBytes(b);
+        for (int i = 0; i < x.length; i++) {
+            x[i] = rnd.nextLong() >>> 9;
+        }
+
+        m = 100000000L;
+        rm = FFXOps.reciprocal(m);
+        radix = 10;
+        rradix = FFXOps.reciprocal(radix);
+    }
+
+    /* one block of the CBC-MAC in FF1's PRF */
+    @Benchmark
+    public byte[] xor() {
+        FFXOps.xor(a, 0, a, 0, b, 0, 16);
+        return a;
+    }
+
+    /* one block of FF3-1's REV(CIPH(REV(P))) */
+    @Benchmark
+    public byte[] rev() {
+        FFXOps.rev(b, a);
+        FFXOps.rev(a, b);
+        return a;
+    }
+
+    /* reductions modulo radix**v in the rounds of FF1 and FF3-1 */
+    @Benchmark
+    public long mod() {
+        long s = 0;
+        for (long v : x) {
+            s += v - FFXOps.div(v, m, rm) * m;
+        }
+        return s;
+    }
+
+    /* conversion of the halves back into numerals */
+    @Benchmark
+    public long numerals() {
+        long s = 0;
+        for (long v : x) {
+            final long q = FFXOps.div(v, radix, rradix);
+            s += v - q * radix;
+        }
+        return s;
+    }
+}
@@ -0,0 +1,103 @@
+package ubiqsecurity.fpe;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares Luhn-preserving encryption of card numbers by PanCipher with
+ * the loop that callers would otherwise write: encrypting the middle
+ * digits as a string until the whole number passes the check.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PanBenchmark
+{
+    @Param({ "16", "19" })
+    public int length;
+
+    private final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+
+    private FF1 ctx;
+    private PanCipher cipher;
+
+    /*
+     * the number of iterations depends on the input, so the
+     * benchmarks cycle through many random card numbers
+     */
+    private final String[] pans = new String[1024];
+    private int next;
+
+    @Setup
+    public void setup() {
+        final Random rnd = new Random(0);
+
+        ctx = new FF1(new byte[16], twk, 0, 0, 10);
+        cipher = new PanCipher(ctx);
+
+        for (int i = 0; i < pans.length; i++) {
+            final StringBuilder sb = new StringBuilder();
+
+            for (int j = 0; j < length - 1; j++) {
+                sb.append((char)('0' + rnd.nextInt(10)));
+            }
+            for (char c = '0'; c <= '9'; c++) {
+                if (luhn(sb.toString() + c)) {
+                    pans[i] = sb.append(c).toString();
+                    break;
+                }
+            }
+        }
+    }
+
+    private String pan() {
+        return pans[next++ & (pans.length - 1)];
+    }
+
+    private static boolean luhn(final String s) {
+        int sum = 0;
+
+        for (int i = s.length() - 1, dbl = 0; i >= 0; i--, dbl ^= 1) {
+            final int d = (s.charAt(i) - '0') << dbl;
+            sum += (d > 9) ? d - 9 : d;
+        }
+
+        return sum % 10 == 0;
+    }
+
+    @Benchmark
+    public String builtin() {
+        return cipher.encrypt(pan());
+    }
+
+    @Benchmark
+    public String loop() {
+        final String pan = pan();
+        final String bin = pan.substring(0, 6);
+        final String last = pan.substring(pan.length() - 4);
+        String mid = pan.substring(6, pan.length() - 4);
+        String r;
+
+        do {
+            mid = ctx.encrypt(mid);
+            r = bin + mid + last;
+        } while (!luhn(r));
+
+        return r;
+    }
+}
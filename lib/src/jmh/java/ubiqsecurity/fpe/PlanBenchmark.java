@@ -0,0 +1,76 @@
+package ubiqsecurity.fpe;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per-length parameters (plans) that contexts cache:
+ * encryption of values of one length, of values whose lengths
+ * alternate, as in mixed traffic, and the cost of constructing the
+ * plan that the cache saves whenever the length or tweak changes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlanBenchmark
+{
+    @Param({ "FF1", "FF3_1" })
+    public String algorithm;
+
+    @Param({ "9", "16", "40" })
+    public int length;
+
+    private final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+
+    private FFX ctx;
+    private String PT, PT2;
+    private int next;
+
+    @Setup
+    public void setup() {
+        final byte[] key = new byte[16];
+        final StringBuilder sb = new StringBuilder();
+
+        if (algorithm.equals("FF1")) {
+            ctx = new FF1(key, twk, 0, 0, 10);
+        } else {
+            ctx = new FF3_1(key, twk, 10);
+        }
+
+        for (int i = 0; i < length; i++) {
+            sb.append((char)('0' + (i % 10)));
+        }
+        PT = sb.toString();
+        PT2 = PT + "0";
+    }
+
+    @Benchmark
+    public String fixed() {
+        return ctx.encrypt(PT, twk);
+    }
+
+    /* values of @length and @length + 1 characters, alternately */
+    @Benchmark
+    public String mixed() {
+        return ((next++ & 1) == 0) ? ctx.encrypt(PT, twk) : ctx.encrypt(PT2, twk);
+    }
+
+    @Benchmark
+    public FFXPlan construct() {
+        return ctx.plan(length, twk);
+    }
+}
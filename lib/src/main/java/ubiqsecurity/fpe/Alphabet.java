@@ -0,0 +1,71 @@
+package ubiqsecurity.fpe;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * maps the characters of an alphabet to and from their numeral values.
+ *
+ * lookups use a table indexed by character, which is shared by all
+ * contexts using the same alphabet so that it doesn't add to the size
+ * of each context. alphabets containing characters beyond the range
+ * of the table fall back to searching the alphabet.
+ */
+final class Alphabet
+{
+    private static final int TABLE_MAX = 1024;
+
+    private static final ConcurrentHashMap<String, Alphabet> cache =
+        new ConcurrentHashMap<>();
+
+    final String chars;
+    private final short[] table;
+
+    private Alphabet(final String chars) {
+        int max = 0;
+
+        for (int i = 0; i < chars.length(); i++) {
+            max = Math.max(max, chars.charAt(i));
+        }
+
+        this.chars = chars;
+
+        if (max < TABLE_MAX && chars.length() <= Short.MAX_VALUE) {
+            this.table = new short[max + 1];
+            Arrays.fill(this.table, (short)-1);
+
+            /*
+             * if a character appears more than once, its first
+             * position is its value, as with String.indexOf
+             */
+            for (int i = chars.length() - 1; i >= 0; i--) {
+                this.table[chars.charAt(i)] = (short)i;
+            }
+        } else {
+            this.table = null;
+        }
+    }
+
+    static Alphabet of(final String chars) {
+        final Alphabet a = cache.get(chars);
+        return (a != null) ? a : cache.computeIfAbsent(chars, Alphabet::new);
+    }
+
+    /*
+     * return the numeral value of @c or -1 if @c
+     * is not a member of the alphabet
+     */
+    int digit(final char c) {
+        if (this.table == null) {
+            return this.chars.indexOf(c);
+        }
+        return (c < this.table.length) ? this.table[c] : -1;
+    }
+
+    /*
+     * return the character for the numeral value @d
+     */
+    char character(final int d) {
+        return this.chars.charAt(d);
+    }
+}
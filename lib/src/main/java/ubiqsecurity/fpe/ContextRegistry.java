@@ -0,0 +1,489 @@
+package ubiqsecurity.fpe;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * A concurrent cache of FF1 and FF3-1 contexts.
+ *
+ * Constructing a context validates the key and tweak, computes the
+ * length limits for the radix, and expands the AES key. The registry
+ * does that at most once per {@link Descriptor} and hands the same
+ * (thread-safe) context to every caller presenting an equal descriptor.
+ *
+ * Contexts are evicted, least recently used first, when the registry
+ * grows beyond its capacity, and also when they have not been used for
+ * longer than the idle timeout. An evicted context is never destroyed
+ * while it may still be in use:
+ *
+ * - a context obtained with {@link #acquire} is pinned until its lease
+ *   is closed, and is destroyed, overwriting its key material, when it
+ *   has been evicted and the last lease on it is closed
+ * - a context obtained with {@link #get} may be used for any length of
+ *   time, so, once handed out, it is not destroyed by eviction; like a
+ *   key retired from a {@link KeyRing}, it is dropped and left to the
+ *   caller or the garbage collector. it is destroyed, though, by
+ *   {@link #invalidate} and {@link #invalidateAll}, which are for when
+ *   the caller knows that it is no longer in use, e.g. when its key has
+ *   been revoked
+ *
+ * Where key material must not outlive its use, acquire() should be
+ * preferred.
+ *
+ * Callers should not hold on to a context, but should look it up again
+ * for each operation. The lookup of a cached context with get() does not
+ * allocate.
+ */
+public class ContextRegistry
+{
+    /**
+     * An immutable description of a context: the algorithm, key,
+     * default tweak, tweak limits, radix, and alphabet.
+     *
+     * A descriptor is meant to be created once (e.g. per tenant and
+     * format) and reused for every lookup.
+     */
+    public static final class Descriptor
+    {
+        private static final int FF1 = 1;
+        private static final int FF3_1 = 3;
+
+        private final int algorithm;
+        private final byte[] key, twk;
+        private final long twkmin, twkmax;
+        private final int radix;
+        private final String alpha;
+        private final int hash;
+
+        private Descriptor(final int algorithm,
+                           final byte[] key, final byte[] twk,
+                           final long twkmin, final long twkmax,
+                           final int radix, final String alpha) {
+            int hash;
+
+            this.algorithm = algorithm;
+            this.key = Arrays.copyOf(key, key.length);
+            this.twk = Arrays.copyOf(twk, twk.length);
+            this.twkmin = twkmin;
+            this.twkmax = twkmax;
+            this.radix = radix;
+            this.alpha = alpha;
+
+            hash = algorithm;
+            hash = 31 * hash + Arrays.hashCode(this.key);
+            hash = 31 * hash + Arrays.hashCode(this.twk);
+            hash = 31 * hash + Long.hashCode(twkmin);
+            hash = 31 * hash + Long.hashCode(twkmax);
+            hash = 31 * hash + radix;
+            hash = 31 * hash + alpha.hashCode();
+            this.hash = hash;
+        }
+
+        /**
+         * Describe an FF1 context.
+         *
+         * The parameters are the same as those of the corresponding
+         * {@link ubiqsecurity.fpe.FF1} constructor.
+         *
+         * @param key     a byte array containing the key
+         * @param twk     the default tweak
+         * @param twkmin  the minimum number of bytes allowable for a tweak
+         * @param twkmax  the maximum number of bytes allowable for a tweak
+         *                or 0 to indicate that there is no maximum
+         * @param radix   the radix of the alphabet
+         * @param alpha   the alphabet
+         *
+         * @return        the descriptor
+         */
+        public static Descriptor ff1(final byte[] key, final byte[] twk,
+                                     final long twkmin, final long twkmax,
+                                     final int radix, final String alpha) {
+            return new Descriptor(FF1, key, twk, twkmin, twkmax, radix, alpha);
+        }
+
+        /**
+         * Describe an FF1 context that uses the default alphabet.
+         *
+         * @param key     a byte array containing the key
+         * @param twk     the default tweak
+         * @param twkmin  the minimum number of bytes allowable for a tweak
+         * @param twkmax  the maximum number of bytes allowable for a tweak
+         *                or 0 to indicate that there is no maximum
+         * @param radix   the radix of the alphabet
+         *
+         * @return        the descriptor
+         */
+        public static Descriptor ff1(final byte[] key, final byte[] twk,
+                                     final long twkmin, final long twkmax,
+                                     final int radix) {
+            return ff1(key, twk, twkmin, twkmax, radix, FFX.DEFAULT_ALPHABET);
+        }
+
+        /**
+         * Describe an FF3-1 context.
+         *
+         * @param key     a byte array containing the key
+         * @param twk     the default tweak, which must be 7 bytes
+         * @param radix   the radix of the alphabet
+         * @param alpha   the alphabet
+         *
+         * @return        the descriptor
+         */
+        public static Descriptor ff3_1(final byte[] key, final byte[] twk,
+                                       final int radix, final String alpha) {
+            return new Descriptor(FF3_1, key, twk, 7, 7, radix, alpha);
+        }
+
+        /**
+         * Describe an FF3-1 context that uses the default alphabet.
+         *
+         * @param key     a byte array containing the key
+         * @param twk     the default tweak, which must be 7 bytes
+         * @param radix   the radix of the alphabet
+         *
+         * @return        the descriptor
+         */
+        public static Descriptor ff3_1(final byte[] key, final byte[] twk,
+                                       final int radix) {
+            return ff3_1(key, twk, radix, FFX.DEFAULT_ALPHABET);
+        }
+
+        /*
+         * construct the context described by this object
+         */
+        FFX build() {
+            if (this.algorithm == FF1) {
+                return new FF1(this.key, this.twk,
+                               this.twkmin, this.twkmax,
+                               this.radix, this.alpha);
+            }
+            return new FF3_1(this.key, this.twk, this.radix, this.alpha);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            } else if (!(o instanceof Descriptor)) {
+                return false;
+            }
+
+            final Descriptor d = (Descriptor)o;
+            return this.hash == d.hash &&
+                this.algorithm == d.algorithm &&
+                this.twkmin == d.twkmin &&
+                this.twkmax == d.twkmax &&
+                this.radix == d.radix &&
+                this.alpha.equals(d.alpha) &&
+                Arrays.equals(this.key, d.key) &&
+                Arrays.equals(this.twk, d.twk);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    /**
+     * A context pinned by {@link #acquire}. The context is not destroyed
+     * by the registry until the lease is closed.
+     */
+    public static final class Lease implements AutoCloseable
+    {
+        private final Entry entry;
+        private boolean closed;
+
+        private Lease(final Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * @return the context
+         */
+        public FFX context() {
+            if (this.closed) {
+                throw new IllegalStateException("lease closed");
+            }
+            return this.entry.ctx;
+        }
+
+        /**
+         * Release the context. Closing a lease more than once
+         * has no further effect.
+         */
+        @Override
+        public void close() {
+            if (!this.closed) {
+                this.closed = true;
+                this.entry.release();
+            }
+        }
+    }
+
+    private static final class Entry
+    {
+        final Descriptor desc;
+        final FFX ctx;
+        volatile long accessed;
+        /* set once the context has been handed out by get() */
+        volatile boolean shared;
+        /* set by invalidate(), to destroy the context even if shared */
+        volatile boolean wipe;
+        /*
+         * the number of references to the entry: one held by the map
+         * until the entry is evicted, and one for each pin
+         */
+        final AtomicInteger refs = new AtomicInteger(1);
+
+        Entry(final Descriptor desc, final FFX ctx, final long accessed) {
+            this.desc = desc;
+            this.ctx = ctx;
+            this.accessed = accessed;
+        }
+
+        /*
+         * pin the entry, unless its last reference has already
+         * been released, in which case the context may be destroyed
+         */
+        boolean retain() {
+            int r;
+
+            do {
+                r = this.refs.get();
+                if (r == 0) {
+                    return false;
+                }
+            } while (!this.refs.compareAndSet(r, r + 1));
+
+            return true;
+        }
+
+        /*
+         * drop a reference. whoever drops the last one destroys the
+         * context, unless get() has handed it out and it hasn't been
+         * invalidated. a pin is held while @shared is set, so the last
+         * release always observes it
+         */
+        void release() {
+            if (this.refs.decrementAndGet() == 0 &&
+                (!this.shared || this.wipe)) {
+                this.ctx.destroy();
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<Descriptor, Entry> map;
+    private final int capacity;
+    private final long idle;
+    private final LongSupplier ticker;
+    private final Function<Descriptor, FFX> builder;
+
+    /**
+     * Construct a new, empty registry.
+     *
+     * @param capacity the maximum number of contexts held by the registry
+     * @param idle     the time after which an unused context is evicted,
+     *                 or 0 to evict contexts only when over capacity
+     * @param unit     the unit of @idle
+     */
+    public ContextRegistry(final int capacity,
+                           final long idle, final TimeUnit unit) {
+        this(capacity, idle, unit, System::nanoTime, Descriptor::build);
+    }
+
+    ContextRegistry(final int capacity,
+                    final long idle, final TimeUnit unit,
+                    final LongSupplier ticker,
+                    final Function<Descriptor, FFX> builder) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("invalid capacity");
+        } else if (idle < 0) {
+            throw new IllegalArgumentException("invalid idle time");
+        }
+
+        this.map = new ConcurrentHashMap<>();
+        this.capacity = capacity;
+        this.idle = unit.toNanos(idle);
+        this.ticker = ticker;
+        this.builder = builder;
+    }
+
+    /**
+     * Get the context for a descriptor, constructing it if necessary.
+     *
+     * If several threads request a context that isn't present, only
+     * one of them constructs it; the others wait for and receive that
+     * same context.
+     *
+     * The registry does not destroy a context once it has been returned
+     * by this function, even after evicting it, unless it is
+     * invalidated.
+     *
+     * @param desc the description of the context
+     *
+     * @return     the context
+     */
+    public FFX get(final Descriptor desc) {
+        Entry e = this.map.get(desc);
+
+        /*
+         * once shared, a context is no longer destroyed by eviction,
+         * so a hit needn't pin it, only record the access
+         */
+        if (e != null && e.shared) {
+            e.accessed = this.ticker.getAsLong();
+            return e.ctx;
+        }
+
+        e = this.pin(desc);
+        if (!e.shared) {
+            e.shared = true;
+        }
+        e.release();
+        return e.ctx;
+    }
+
+    /**
+     * Get the context for a descriptor, constructing it if necessary,
+     * and pin it until the returned lease is closed.
+     *
+     * An evicted context is destroyed when the last lease on it is
+     * closed, so, unlike with {@link #get}, its key material doesn't
+     * outlive its use.
+     *
+     * @param desc the description of the context
+     *
+     * @return     a lease on the context
+     */
+    public Lease acquire(final Descriptor desc) {
+        return new Lease(this.pin(desc));
+    }
+
+    private Entry pin(final Descriptor desc) {
+        final long now = this.ticker.getAsLong();
+
+        while (true) {
+            final boolean miss;
+            Entry e;
+
+            /*
+             * ConcurrentHashMap.computeIfAbsent locks the bin even when
+             * the key is present, so try a plain lookup first
+             */
+            e = this.map.get(desc);
+            miss = (e == null);
+            if (miss) {
+                e = this.map.computeIfAbsent(
+                    desc, d -> new Entry(d, this.builder.apply(d),
+                                         this.ticker.getAsLong()));
+            }
+
+            /*
+             * the entry may have been evicted, and its context destroyed,
+             * since it was looked up, in which case look it up again
+             */
+            if (e.retain()) {
+                e.accessed = now;
+                if (miss) {
+                    this.cleanUp(now);
+                }
+                return e;
+            }
+        }
+    }
+
+    /**
+     * Remove and destroy the context for a descriptor, if present.
+     *
+     * A context pinned by a lease is destroyed when the last lease on
+     * it is closed; any other context, including one returned by
+     * {@link #get}, is destroyed immediately, so the caller must know
+     * that no operation is still using it.
+     *
+     * @param desc the description of the context
+     */
+    public void invalidate(final Descriptor desc) {
+        final Entry e = this.map.get(desc);
+        if (e != null) {
+            this.wipe(e);
+        }
+    }
+
+    /**
+     * Remove and destroy all contexts held by the registry,
+     * as with {@link #invalidate}.
+     */
+    public void invalidateAll() {
+        for (Entry e : this.map.values()) {
+            this.wipe(e);
+        }
+    }
+
+    /**
+     * Evict any idle contexts and, if the registry is over capacity,
+     * the least recently used ones. This is done automatically whenever
+     * a context is added, so it only needs to be called to release idle
+     * contexts in the absence of new lookups.
+     */
+    public void cleanUp() {
+        this.cleanUp(this.ticker.getAsLong());
+    }
+
+    /**
+     * @return the number of contexts held by the registry
+     */
+    public int size() {
+        return this.map.size();
+    }
+
+    private void cleanUp(final long now) {
+        if (this.idle > 0) {
+            for (Entry e : this.map.values()) {
+                if (now - e.accessed > this.idle) {
+                    this.evict(e);
+                }
+            }
+        }
+
+        while (this.map.size() > this.capacity) {
+            Entry lru = null;
+
+            for (Entry e : this.map.values()) {
+                if (lru == null || e.accessed - lru.accessed < 0) {
+                    lru = e;
+                }
+            }
+
+            if (lru != null) {
+                this.evict(lru);
+            }
+        }
+    }
+
+    private void wipe(final Entry e) {
+        e.wipe = true;
+        this.evict(e);
+        /*
+         * if the entry was evicted in the meantime, its last reference
+         * may have been dropped before @wipe was set
+         */
+        if (e.refs.get() == 0 && !e.ctx.isDestroyed()) {
+            e.ctx.destroy();
+        }
+    }
+
+    private void evict(final Entry e) {
+        /*
+         * only the thread that succeeds in removing the entry
+         * drops the reference held by the map
+         */
+        if (this.map.remove(e.desc, e)) {
+            e.release();
+        }
+    }
+}
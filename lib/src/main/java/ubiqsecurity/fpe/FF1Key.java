@@ -0,0 +1,17 @@
+package ubiqsecurity.fpe;
+
+/**
+ * An expanded key for use with one or more FF1 contexts.
+ */
+public final class FF1Key extends FFXKey
+{
+    /**
+     * Expand a key for use with FF1.
+     *
+     * @param key a byte array containing the key. the length of
+     *            the array must be 16, 24, or 32
+     */
+    public FF1Key(final byte[] key) {
+        super(key);
+    }
+}
@@ -0,0 +1,393 @@
+package ubiqsecurity.fpe;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/*
+ * An FF1 context prepared for one input length and tweak.
+ *
+ * The comments below reference the steps of the algorithm described here:
+ *
+ * https://nvlpubs.nist.gov/nistpubs/SpecialPublications/NIST.SP.800-38Gr1-draft.pdf
+ *
+ * Rather than converting the numeral strings A and B to integers in
+ * every round, A and B are held as integers throughout, with the
+ * numerals converted only on the way in and on the way out. When
+ * radix**v is small enough, those integers are longs rather than
+ * BigIntegers.
+ */
+final class FF1Plan extends FFXPlan
+{
+    private final int u, v, b, d, r;
+
+    /* radix**u and radix**v */
+    private final BigInteger mu, mv;
+    private final long lmu, lmv;
+    private final int su, sv;
+    /* reciprocals of lmu and lmv for FFXOps.div() */
+    private final long rmu, rmv;
+
+    /*
+     * the static parts of Q and the encryption of P. as P is the
+     * first block of the input to PRF, its encryption is the value
+     * with which Q is chained in every round
+     */
+    private final byte[] Q;
+    private final byte[] EP;
+
+    FF1Plan(final FF1 ctx, final int n, final byte[] twk) {
+        super(ctx, n, twk);
+
+        final int radix = ctx.radix;
+        final byte[] P;
+
+        /* Step 1 */
+        this.u = n / 2;
+        this.v = n - this.u;
+
+        /* Step 3, 4 */
+        this.b = ((int)Math.ceil(
+                      (Math.log(radix) / Math.log(2)) * this.v) + 7) / 8;
+        this.d = 4 * ((this.b + 3) / 4) + 4;
+
+        this.r = ((this.d + 15) / 16) * 16;
+
+        this.mu = BigInteger.valueOf(radix).pow(this.u);
+        this.mv = (this.u == this.v)
+            ? this.mu : this.mu.multiply(BigInteger.valueOf(radix));
+
+        /*
+         * radix**v >= radix**u, so if the former is small enough
+         * for long arithmetic, then so is the latter
+         */
+        if (this.mv.bitLength() <= 55) {
+            this.lmu = this.mu.longValue();
+            this.lmv = this.mv.longValue();
+            this.su = FFX.step(this.lmu);
+            this.sv = FFX.step(this.lmv);
+            this.rmu = FFXOps.reciprocal(this.lmu);
+            this.rmv = FFXOps.reciprocal(this.lmv);
+        } else {
+            this.lmu = this.lmv = 0;
+            this.su = this.sv = 0;
+            this.rmu = this.rmv = 0;
+        }
+
+        /* Step 5 */
+        P = new byte[16];
+        P[0]  = 1;
+        P[1]  = 2;
+        P[2]  = 1;
+        P[3]  = (byte)(radix >> 16);
+        P[4]  = (byte)(radix >>  8);
+        P[5]  = (byte)(radix >>  0);
+        P[6]  = 10;
+        P[7]  = (byte)this.u;
+        P[8]  = (byte)(n >> 24);
+        P[9]  = (byte)(n >> 16);
+        P[10] = (byte)(n >>  8);
+        P[11] = (byte)(n >>  0);
+        P[12] = (byte)(twk.length >> 24);
+        P[13] = (byte)(twk.length >> 16);
+        P[14] = (byte)(twk.length >>  8);
+        P[15] = (byte)(twk.length >>  0);
+
+        this.EP = ctx.ciph(P);
+
+        /* Step 6i, the static parts */
+        this.Q = new byte[((twk.length + this.b + 1 + 15) / 16) * 16];
+        System.arraycopy(twk, 0, this.Q, 0, twk.length);
+        /* remainder of Q already initialized to 0 */
+    }
+
+    String backend() {
+        return (this.lmv != 0) ? "long" : "BigInteger";
+    }
+
+    void cipher(int[] X, final int off, final boolean encrypt,
+                final FFXMetrics.Timer t) {
+        this.cipher(X, off, encrypt, this.scratch(), t);
+    }
+
+    /* Q, with its static parts, and R */
+    byte[][] scratch() {
+        return new byte[][] { this.Q.clone(), new byte[this.r] };
+    }
+
+    void cipher(int[] X, final int off, final boolean encrypt,
+                final byte[][] s, final FFXMetrics.Timer t) {
+        if (this.lmv != 0) {
+            this.cipher(X, off, encrypt, s[0], s[1], t);
+        } else {
+            this.cipherBig(X, off, encrypt, s[0], s[1], t);
+        }
+    }
+
+    /*
+     * as cipher(int[], ...) for the value @x of the numerals. A and B
+     * are its quotient and remainder by radix**v, so no numerals are
+     * formed. an x less than radix**n that fits in a long always uses
+     * the long arithmetic, as radix**v is then at most about 2**40.
+     */
+    long cipher(final long x, final boolean encrypt,
+                final FFXMetrics.Timer t) {
+        final long hi, lo;
+        long A, B;
+
+        if (this.lmv == 0) {
+            return super.cipher(x, encrypt, t);
+        }
+
+        final byte[] Q = this.Q.clone();
+        final byte[] R = new byte[this.r];
+
+        /* Step 2 */
+        hi = FFXOps.div(x, this.lmv, this.rmv);
+        lo = x - hi * this.lmv;
+        if (encrypt) {
+            A = hi;
+            B = lo;
+        } else {
+            B = hi;
+            A = lo;
+        }
+
+        if (t != null) {
+            t.lap(FFXMetrics.CONVERT);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            final long c = this.round(A, B, i, encrypt, Q, R, t);
+
+            /* Step 6viii */
+            A = B;
+            /* Step 6vii, 6ix */
+            B = c;
+        }
+
+        /* Step 7 */
+        return encrypt ? A * this.lmv + B : B * this.lmv + A;
+    }
+
+    /*
+     * Step 6ii, 6iii
+     * compute R from Q, whose non-static parts have been set
+     */
+    private void prf(final byte[] R, final byte[] Q) {
+        System.arraycopy(this.EP, 0, R, 0, 16);
+        for (int j = 0; j < Q.length; j += 16) {
+            FFX.xor(R, 0, R, 0, Q, j, 16);
+            this.ctx.cipher.processBlock(R, 0, R, 0);
+        }
+
+        /*
+         * if r is greater than 16, fill the subsequent blocks
+         * with the result of ciph(R ^ 1), ciph(R ^ 2), ...
+         */
+        for (int j = 1; j < this.r / 16; j++) {
+            final int l = j * 16;
+
+            Arrays.fill(R, l, l + 12, (byte)0);
+            R[l + 12] = (byte)(j >> 24);
+            R[l + 13] = (byte)(j >> 16);
+            R[l + 14] = (byte)(j >>  8);
+            R[l + 15] = (byte)(j >>  0);
+
+            FFX.xor(R, l, R, 0, R, l, 16);
+
+            this.ctx.ciph(R, l, R, l);
+        }
+    }
+
+    private void cipher(final int[] X, final int off, final boolean encrypt,
+                        final byte[] Q, final byte[] R,
+                        final FFXMetrics.Timer t) {
+        long A, B;
+
+        /* Step 2 */
+        if (encrypt) {
+            A = this.ctx.numl(X, off, this.u, false);
+            B = this.ctx.numl(X, off + this.u, this.v, false);
+        } else {
+            B = this.ctx.numl(X, off, this.u, false);
+            A = this.ctx.numl(X, off + this.u, this.v, false);
+        }
+
+        if (t != null) {
+            t.lap(FFXMetrics.CONVERT);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            final long c = this.round(A, B, i, encrypt, Q, R, t);
+
+            /* Step 6viii */
+            A = B;
+            /* Step 6vii, 6ix */
+            B = c;
+        }
+
+        /* Step 7 */
+        if (encrypt) {
+            this.ctx.strl(A, X, off, this.u, false);
+            this.ctx.strl(B, X, off + this.u, this.v, false);
+        } else {
+            this.ctx.strl(B, X, off, this.u, false);
+            this.ctx.strl(A, X, off + this.u, this.v, false);
+        }
+        if (t != null) {
+            t.lap(FFXMetrics.CONVERT);
+        }
+    }
+
+    /*
+     * perform round @i of the long arithmetic, returning the new value
+     * of B. the caller shifts B into A.
+     */
+    private long round(final long A, final long B, final int i,
+                       final boolean encrypt, final byte[] Q, final byte[] R,
+                       final FFXMetrics.Timer t) {
+        /* Step 6v */
+        final boolean odd = ((i + (encrypt ? 1 : 0)) % 2) == 1;
+        final long m = odd ? this.lmu : this.lmv;
+
+        long c, y;
+
+        /* Step 6i, the non-static parts */
+        Q[Q.length - this.b - 1] = (byte)(encrypt ? i : (9 - i));
+        for (int k = 0; k < this.b; k++) {
+            Q[Q.length - 1 - k] = (byte)(B >>> (8 * k));
+        }
+
+        /* Step 6ii, 6iii */
+        this.prf(R, Q);
+        if (t != null) {
+            t.lap(FFXMetrics.PRF);
+        }
+
+        /*
+         * Step 6vi
+         * calculate A +/- y mod radix**m
+         * where y is the number formed by the first d bytes of R
+         */
+        y = FFX.mod(R, 0, this.d, m, odd ? this.su : this.sv,
+                    odd ? this.rmu : this.rmv);
+
+        /* A and y are both less than m */
+        if (encrypt) {
+            c = A + y;
+            if (c >= m) {
+                c -= m;
+            }
+        } else {
+            c = A - y;
+            if (c < 0) {
+                c += m;
+            }
+        }
+
+        if (t != null) {
+            t.lap(FFXMetrics.ARITHMETIC);
+        }
+
+        return c;
+    }
+
+    private void cipherBig(final int[] X, final int off, final boolean encrypt,
+                           final byte[] Q, final byte[] R,
+                           final FFXMetrics.Timer t) {
+        BigInteger A, B;
+
+        /* Step 2 */
+        if (encrypt) {
+            A = this.ctx.num(X, off, this.u, false);
+            B = this.ctx.num(X, off + this.u, this.v, false);
+        } else {
+            B = this.ctx.num(X, off, this.u, false);
+            A = this.ctx.num(X, off + this.u, this.v, false);
+        }
+
+        if (t != null) {
+            t.lap(FFXMetrics.CONVERT);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            /* Step 6v */
+            final int m = (((i + (encrypt ? 1 : 0)) % 2) == 1) ? this.u : this.v;
+
+            BigInteger c, y;
+            byte[] numb;
+
+            /* Step 6i, the non-static parts */
+            Q[Q.length - this.b - 1] = (byte)(encrypt ? i : (9 - i));
+
+            /*
+             * export the integer B as a byte array into Q
+             */
+            numb = B.toByteArray();
+            if (numb[0] == 0 && numb.length > 1) {
+                /*
+                 * Per the Java documentation, BigInteger.toByteArray always
+                 * returns enough bytes to contain a sign bit. For the purposes
+                 * of this function all numbers are unsigned; however, when the
+                 * most-significant bit is set in a number, the Java library
+                 * returns an extra most-significant byte that is set to 0.
+                 * That byte must be removed for the cipher to work correctly.
+                 */
+                numb = Arrays.copyOfRange(numb, 1, numb.length);
+            }
+            if (this.b <= numb.length) {
+                System.arraycopy(numb, 0, Q, Q.length - this.b, this.b);
+            } else {
+                /* pad on the left with zeros */
+                Arrays.fill(Q, Q.length - this.b,
+                            Q.length - numb.length,
+                            (byte)0);
+                System.arraycopy(numb, 0,
+                                 Q, Q.length - numb.length,
+                                 numb.length);
+            }
+
+            /* Step 6ii, 6iii */
+            this.prf(R, Q);
+            if (t != null) {
+                t.lap(FFXMetrics.PRF);
+            }
+
+            /*
+             * Step 6vi
+             * calculate A +/- y mod radix**m
+             * where y is the number formed by the first d bytes of R
+             */
+            y = new BigInteger(1, Arrays.copyOf(R, this.d));
+
+            if (encrypt) {
+                c = A.add(y);
+            } else {
+                c = A.subtract(y);
+            }
+
+            c = c.mod((m == this.u) ? this.mu : this.mv);
+
+            if (t != null) {
+                t.lap(FFXMetrics.ARITHMETIC);
+            }
+
+            /* Step 6viii */
+            A = B;
+            /* Step 6vii, 6ix */
+            B = c;
+        }
+
+        /* Step 7 */
+        if (encrypt) {
+            this.ctx.str(A, X, off, this.u, false);
+            this.ctx.str(B, X, off + this.u, this.v, false);
+        } else {
+            this.ctx.str(B, X, off, this.u, false);
+            this.ctx.str(A, X, off + this.u, this.v, false);
+        }
+        if (t != null) {
+            t.lap(FFXMetrics.CONVERT);
+        }
+    }
+}
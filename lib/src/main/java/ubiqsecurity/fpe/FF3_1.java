@@ -1,8 +1,5 @@
 package ubiqsecurity.fpe;
 
-import java.math.BigInteger;
-import java.util.Arrays;
-
 /**
  * FF3-1 algorithm for format-preserving encryption
  */
@@ -57,118 +54,37 @@ public class FF3_1 extends FFX
             radix, alpha);
   }
 
-
-    /*
-     * The comments below reference the steps of the algorithm described here:
+    /**
+     * Constructs a new context object for the FF3-1 algorithm using
+     * a key that may be shared with other contexts.
      *
-     * https://nvlpubs.nist.gov/nistpubs/SpecialPublications/NIST.SP.800-38Gr1-draft.pdf
+     * Destroying the context does not destroy the key.
+     *
+     * @param key     the expanded key
+     * @param twk     a byte array containing the "tweak" or iv. this value
+     *                may not be null, and the number of bytes must be 7
+     * @param radix   the radix of the alphabet used for the plain and cipher
+     *                text inputs/outputs
+     * @param alpha   the alphabet used for the plain and cipher text
      */
-    protected String cipher(final String X, byte[] twk, final boolean encrypt) {
-        /* Step 1 */
-        final int n = X.length();
-        final int v = n / 2, u = n - v;
-
-        String A, B;
-        byte[][] Tw;
-        byte[] P;
-
-        /* use the default tweak if none is given */
-        if (twk == null) {
-            twk = this.twk;
-        }
-
-        /* check text and tweak lengths */
-        if (n < this.txtmin || n > this.txtmax) {
-            throw new IllegalArgumentException("illegal input length");
-        } else if (twk.length < this.twkmin ||
-                   (this.twkmax > 0 && twk.length > this.twkmax)) {
-            throw new IllegalArgumentException("illegal tweak length");
-        }
-
-        /* Step 2 */
-        if (encrypt) {
-            A = X.substring(0, u);
-            B = X.substring(u);
-        } else {
-            B = X.substring(0, u);
-            A = X.substring(u);
-        }
-
-        /* Step 3 */
-        Tw = new byte[2][4];
-        System.arraycopy(twk, 0, Tw[0], 0, 3);
-        Tw[0][3] = (byte)(twk[3] & 0xf0);
-
-        System.arraycopy(twk, 4, Tw[1], 0, 3);
-        Tw[1][3] = (byte)((twk[3] & 0x0f) << 4);
-
-        P = new byte[16];
-
-        for (int i = 0; i < 8; i++) {
-            /* Step 4i */
-            final int m = (((i + (encrypt ? 1 : 0)) % 2) == 1) ? u : v;
-            BigInteger c, y;
-            byte[] numb;
-
-            /* Step 4i, 4ii */
-            System.arraycopy(Tw[(i + (encrypt ? 1 : 0)) % 2], 0, P, 0, 4);
-            /* W ^ i */
-            P[3] ^= encrypt ? i : (7 - i);
-
-            /*
-             * reverse B and convert the numeral string to an
-             * integer. then, export that integer as an array.
-             * store the array into the latter part of P
-             */
-            c = new BigInteger(FFX.rev(B), this.radix);
-            numb = c.toByteArray();
-            if (numb[0] == 0 && numb.length > 1) {
-                /*
-                 * Per the Java documentation, BigInteger.toByteArray always
-                 * returns enough bytes to contain a sign bit. For the purposes
-                 * of this function all numbers are unsigned; however, when the
-                 * most-significant bit is set in a number, the Java library
-                 * returns an extra most-significant byte that is set to 0.
-                 * That byte must be removed for the cipher to work correctly.
-                 */
-                numb = Arrays.copyOfRange(numb, 1, numb.length);
-            }
-            if (12 <= numb.length) {
-                System.arraycopy(numb, 0, P, 4, 12);
-            } else {
-                /* zero pad on the left */
-                Arrays.fill(P, 4, P.length - numb.length, (byte)0);
-                System.arraycopy(
-                    numb, 0, P, P.length - numb.length, numb.length);
-            }
-
-            /* Step 4iv */
-            P = FFX.rev(this.ciph(FFX.rev(P)));
-
-            /*
-             * Step 4v
-             * calculate reverse(A) +/- y mode radix**m
-             * where y is the number formed by the byte array P
-             */
-            y = new BigInteger(P);
-            y = y.mod(BigInteger.ONE.shiftLeft(16 * 8));
+    public FF3_1(final FF3_1Key key, final byte[] twk,
+                 final int radix, final String alpha) {
+        super(key, false,
+              twk, (long)(192.0 / (Math.log(radix) / Math.log(2))),
+              7, 7,
+              radix, alpha);
+    }
 
-            c = new BigInteger(FFX.rev(A), this.radix);
-            if (encrypt) {
-                c = c.add(y);
-            } else {
-                c = c.subtract(y);
-            }
+    public FF3_1(final FF3_1Key key, final byte[] twk, final int radix) {
+        this(key, twk, radix, FFX.DEFAULT_ALPHABET);
+    }
 
-            c = c.mod(BigInteger.valueOf(this.radix).pow(m));
 
-            /* Step 4vii */
-            A = B;
-            /* Step 4vi */
-            B = FFX.rev(FFX.str(m, this.radix, c));
-        }
+    FFXPlan plan(final int n, final byte[] twk) {
+        return new FF3_1Plan(this, n, twk);
+    }
 
-        /* Step 5 */
-        return encrypt ? (A + B) : (B + A);
+    String algorithm() {
+        return "FF3-1";
     }
 }
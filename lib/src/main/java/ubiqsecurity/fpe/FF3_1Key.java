@@ -0,0 +1,22 @@
+package ubiqsecurity.fpe;
+
+/**
+ * An expanded key for use with one or more FF3-1 contexts.
+ *
+ * FF3-1 encrypts with the reverse of the key given to it, so an
+ * FF3_1Key is not interchangeable with an {@link FF1Key} even when
+ * both are constructed from the same bytes.
+ */
+public final class FF3_1Key extends FFXKey
+{
+    /**
+     * Expand a key for use with FF3-1.
+     *
+     * @param key a byte array containing the key. the length of
+     *            the array must be 16, 24, or 32
+     */
+    public FF3_1Key(final byte[] key) {
+        /* note that the key is reversed for FF3-1 */
+        super(FFX.rev(key));
+    }
+}
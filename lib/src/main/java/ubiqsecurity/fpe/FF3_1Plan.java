@@ -0,0 +1,289 @@
+package ubiqsecurity.fpe;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/*
+ * An FF3-1 context prepared for one input length and tweak.
+ *
+ * The comments below reference the steps of the algorithm described here:
+ *
+ * https://nvlpubs.nist.gov/nistpubs/SpecialPublications/NIST.SP.800-38Gr1-draft.pdf
+ *
+ * The algorithm operates on the integer values of the reversed numeral
+ * strings A and B. Those integers are held throughout, with the numerals
+ * converted only on the way in and on the way out. When radix**u is small
+ * enough, those integers are longs rather than BigIntegers.
+ */
+final class FF3_1Plan extends FFXPlan
+{
+    private final int u, v;
+
+    /* radix**u and radix**v */
+    private final BigInteger mu, mv;
+    private final long lmu, lmv;
+    private final int su, sv;
+    /* reciprocals of lmu and lmv for FFXOps.div() */
+    private final long rmu, rmv;
+
+    /* the left and right halves of the tweak, TL and TR */
+    private final byte[][] Tw;
+
+    FF3_1Plan(final FF3_1 ctx, final int n, final byte[] twk) {
+        super(ctx, n, twk);
+
+        final int radix = ctx.radix;
+
+        /* Step 1 */
+        this.v = n / 2;
+        this.u = n - this.v;
+
+        this.mv = BigInteger.valueOf(radix).pow(this.v);
+        this.mu = (this.u == this.v)
+            ? this.mv : this.mv.multiply(BigInteger.valueOf(radix));
+
+        /*
+         * radix**u >= radix**v, so if the former is small enough
+         * for long arithmetic, then so is the latter
+         */
+        if (this.mu.bitLength() <= 55) {
+            this.lmu = this.mu.longValue();
+            this.lmv = this.mv.longValue();
+            this.su = FFX.step(this.lmu);
+            this.sv = FFX.step(this.lmv);
+            this.rmu = FFXOps.reciprocal(this.lmu);
+            this.rmv = FFXOps.reciprocal(this.lmv);
+        } else {
+            this.lmu = this.lmv = 0;
+            this.su = this.sv = 0;
+            this.rmu = this.rmv = 0;
+        }
+
+        /* Step 3 */
+        this.Tw = new byte[2][4];
+        System.arraycopy(twk, 0, this.Tw[0], 0, 3);
+        this.Tw[0][3] = (byte)(twk[3] & 0xf0);
+
+        System.arraycopy(twk, 4, this.Tw[1], 0, 3);
+        this.Tw[1][3] = (byte)((twk[3] & 0x0f) << 4);
+    }
+
+    String backend() {
+        return (this.lmu != 0) ? "long" : "BigInteger";
+    }
+
+    void cipher(int[] X, final int off, final boolean encrypt,
+                final FFXMetrics.Timer t) {
+        this.cipher(X, off, encrypt, this.scratch(), t);
+    }
+
+    /* P and S */
+    byte[][] scratch() {
+        return new byte[][] { new byte[16], new byte[16] };
+    }
+
+    void cipher(int[] X, final int off, final boolean encrypt,
+                final byte[][] s, final FFXMetrics.Timer t) {
+        if (this.lmu != 0) {
+            this.cipher(X, off, encrypt, s[0], s[1], t);
+        } else {
+            this.cipherBig(X, off, encrypt, s[0], s[1], t);
+        }
+    }
+
+    /*
+     * Step 4iv
+     * P = REV(CIPH(REV(P))), using @S as a temporary
+     */
+    private void ciph(final byte[] P, final byte[] S) {
+        FFX.rev(S, P);
+        this.ctx.ciph(S, 0, S, 0);
+        FFX.rev(P, S);
+    }
+
+    private void cipher(final int[] X, final int off, final boolean encrypt,
+                        final byte[] P, final byte[] S,
+                        final FFXMetrics.Timer t) {
+        long A, B;
+
+        /* Step 2 */
+        if (encrypt) {
+            A = this.ctx.numl(X, off, this.u, true);
+            B = this.ctx.numl(X, off + this.u, this.v, true);
+        } else {
+            B = this.ctx.numl(X, off, this.u, true);
+            A = this.ctx.numl(X, off + this.u, this.v, true);
+        }
+
+        if (t != null) {
+            t.lap(FFXMetrics.CONVERT);
+        }
+
+        for (int i = 0; i < 8; i++) {
+            /* Step 4i */
+            final boolean odd = ((i + (encrypt ? 1 : 0)) % 2) == 1;
+            final long m = odd ? this.lmu : this.lmv;
+
+            long c, y;
+
+            /* Step 4i, 4ii */
+            System.arraycopy(this.Tw[(i + (encrypt ? 1 : 0)) % 2], 0, P, 0, 4);
+            /* W ^ i */
+            P[3] ^= encrypt ? i : (7 - i);
+
+            /*
+             * store the integer value of reversed B
+             * into the latter part of P
+             */
+            for (int k = 0; k < 12; k++) {
+                P[15 - k] = (byte)((k < 8) ? (B >>> (8 * k)) : 0);
+            }
+
+            /* Step 4iv */
+            this.ciph(P, S);
+            if (t != null) {
+                t.lap(FFXMetrics.PRF);
+            }
+
+            /*
+             * Step 4v
+             * calculate reverse(A) +/- y mode radix**m
+             * where y is the number formed by the byte array P
+             */
+            y = FFX.mod(P, 0, 16, m, odd ? this.su : this.sv,
+                        odd ? this.rmu : this.rmv);
+
+            /* A and y are both less than m */
+            if (encrypt) {
+                c = A + y;
+                if (c >= m) {
+                    c -= m;
+                }
+            } else {
+                c = A - y;
+                if (c < 0) {
+                    c += m;
+                }
+            }
+
+            if (t != null) {
+                t.lap(FFXMetrics.ARITHMETIC);
+            }
+
+            /* Step 4vii */
+            A = B;
+            /* Step 4vi */
+            B = c;
+        }
+
+        /* Step 5 */
+        if (encrypt) {
+            this.ctx.strl(A, X, off, this.u, true);
+            this.ctx.strl(B, X, off + this.u, this.v, true);
+        } else {
+            this.ctx.strl(B, X, off, this.u, true);
+            this.ctx.strl(A, X, off + this.u, this.v, true);
+        }
+        if (t != null) {
+            t.lap(FFXMetrics.CONVERT);
+        }
+    }
+
+    private void cipherBig(final int[] X, final int off, final boolean encrypt,
+                           final byte[] P, final byte[] S,
+                           final FFXMetrics.Timer t) {
+        BigInteger A, B;
+
+        /* Step 2 */
+        if (encrypt) {
+            A = this.ctx.num(X, off, this.u, true);
+            B = this.ctx.num(X, off + this.u, this.v, true);
+        } else {
+            B = this.ctx.num(X, off, this.u, true);
+            A = this.ctx.num(X, off + this.u, this.v, true);
+        }
+
+        if (t != null) {
+            t.lap(FFXMetrics.CONVERT);
+        }
+
+        for (int i = 0; i < 8; i++) {
+            /* Step 4i */
+            final int m = (((i + (encrypt ? 1 : 0)) % 2) == 1) ? this.u : this.v;
+            BigInteger c, y;
+            byte[] numb;
+
+            /* Step 4i, 4ii */
+            System.arraycopy(this.Tw[(i + (encrypt ? 1 : 0)) % 2], 0, P, 0, 4);
+            /* W ^ i */
+            P[3] ^= encrypt ? i : (7 - i);
+
+            /*
+             * export the integer value of reversed B as an
+             * array. store the array into the latter part of P
+             */
+            numb = B.toByteArray();
+            if (numb[0] == 0 && numb.length > 1) {
+                /*
+                 * Per the Java documentation, BigInteger.toByteArray always
+                 * returns enough bytes to contain a sign bit. For the purposes
+                 * of this function all numbers are unsigned; however, when the
+                 * most-significant bit is set in a number, the Java library
+                 * returns an extra most-significant byte that is set to 0.
+                 * That byte must be removed for the cipher to work correctly.
+                 */
+                numb = Arrays.copyOfRange(numb, 1, numb.length);
+            }
+            if (12 <= numb.length) {
+                System.arraycopy(numb, 0, P, 4, 12);
+            } else {
+                /* zero pad on the left */
+                Arrays.fill(P, 4, P.length - numb.length, (byte)0);
+                System.arraycopy(
+                    numb, 0, P, P.length - numb.length, numb.length);
+            }
+
+            /* Step 4iv */
+            this.ciph(P, S);
+            if (t != null) {
+                t.lap(FFXMetrics.PRF);
+            }
+
+            /*
+             * Step 4v
+             * calculate reverse(A) +/- y mode radix**m
+             * where y is the number formed by the byte array P
+             */
+            y = new BigInteger(1, P);
+
+            if (encrypt) {
+                c = A.add(y);
+            } else {
+                c = A.subtract(y);
+            }
+
+            c = c.mod((m == this.u) ? this.mu : this.mv);
+
+            if (t != null) {
+                t.lap(FFXMetrics.ARITHMETIC);
+            }
+
+            /* Step 4vii */
+            A = B;
+            /* Step 4vi */
+            B = c;
+        }
+
+        /* Step 5 */
+        if (encrypt) {
+            this.ctx.str(A, X, off, this.u, true);
+            this.ctx.str(B, X, off + this.u, this.v, true);
+        } else {
+            this.ctx.str(B, X, off, this.u, true);
+            this.ctx.str(A, X, off + this.u, this.v, true);
+        }
+        if (t != null) {
+            t.lap(FFXMetrics.CONVERT);
+        }
+    }
+}
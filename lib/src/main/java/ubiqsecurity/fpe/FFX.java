@@ -1,42 +1,82 @@
 package ubiqsecurity.fpe;
 
+import java.lang.reflect.Field;
+
 import java.math.BigInteger;
 
 import java.util.Arrays;
 
-import javax.crypto.Cipher;
+import javax.security.auth.Destroyable;
 
-import org.bouncycastle.crypto.modes.CBCBlockCipher;
-import org.bouncycastle.crypto.engines.AESEngine;
-import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.BlockCipher;
 
-abstract class FFX
+/**
+ * Common base for the FF1 and FF3-1 format-preserving encryption contexts.
+ *
+ * A context holds no per-operation state, so a single instance may be
+ * shared by any number of threads. Once a context is destroyed, its key
+ * schedule is overwritten and any further use of it fails.
+ *
+ * Contexts constructed from an {@link FFXKey} share that key's schedule
+ * rather than expanding a copy of their own, making them considerably
+ * smaller when many formats are used with the same key.
+ */
+public abstract class FFX implements Destroyable
 {
 
     public static final String DEFAULT_ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyz";
 
-    protected CBCBlockCipher cipher;
+    protected BlockCipher cipher;
     protected int radix;
     protected long txtmin, txtmax;
     protected long twkmin, twkmax;
     protected byte[] twk;
     protected String alpha;
+    final Alphabet alphabet;
+    private final FFXKey key;
+    private final boolean owner;
+    private volatile boolean destroyed;
+
+    /*
+     * numerals are converted to and from integers @chunk at a time
+     * using long arithmetic. @chunkpow is radix**chunk, the largest
+     * power of the radix that fits in a long
+     */
+    private final int chunk;
+    private final BigInteger chunkpow;
+
+    /* the reciprocal of the radix, for FFXOps.div() */
+    private final long rradix;
+
+    /*
+     * plans for the default tweak are cached by length, for lengths
+     * below PLANS, in an array allocated on first use. the plan most
+     * recently used with any other tweak or length is kept in @last.
+     * plans are immutable, so they are safe to share through the array
+     */
+    private static final int PLANS = 64;
+    private volatile FFXPlan[] plans;
+    private volatile FFXPlan last;
+    private volatile FFXMetrics.Series series;
 
     protected FFX(final byte[] key, final byte[] twk,
                   final long txtmax,
                   final long twkmin, final long twkmax,
                   final int radix, final String alpha) {
-        long txtmin;
+        this(new FFXKey(key), true,
+             twk, txtmax, twkmin, twkmax, radix, alpha);
+    }
 
-        /* all 3 key sizes of AES are supported */
-        switch (key.length) {
-        case 16:
-        case 24:
-        case 32:
-            break;
-        default:
-            throw new IllegalArgumentException("key size error");
-        }
+    /*
+     * @owner indicates whether the key belongs to this context alone,
+     * in which case destroying the context also destroys the key
+     */
+    FFX(final FFXKey key, final boolean owner,
+        final byte[] twk,
+        final long txtmax,
+        final long twkmin, final long twkmax,
+        final int radix, final String alpha) {
+        long txtmin;
 
         /*
          * FF1 and FF3-1 support a radix up to 65536, but the
@@ -71,16 +111,23 @@ abstract class FFX
             throw new IllegalArgumentException("invalid tweak length");
         }
 
-        /*
-         * the underlying cipher for FF1 and FF3-1 is AES in CBC mode.
-         * by not specifying the IV, the IV is set to 0's which is
-         * what is called for in these algorithms
-         */
-        this.cipher = new CBCBlockCipher(new AESEngine());
-        this.cipher.init(true, new KeyParameter(key));
+        this.key = key;
+        this.owner = owner;
+        this.cipher = key.cipher;
 
         this.radix = radix;
         this.alpha = alpha;
+        this.alphabet = Alphabet.of(alpha);
+
+        int k = 0;
+        long p = 1;
+        while (p <= Long.MAX_VALUE / radix) {
+            p *= radix;
+            k++;
+        }
+        this.chunk = k;
+        this.chunkpow = BigInteger.valueOf(p);
+        this.rradix = FFXOps.reciprocal(radix);
 
         this.txtmin = txtmin;
         this.txtmax = txtmax;
@@ -91,8 +138,358 @@ abstract class FFX
         this.twk = Arrays.copyOf(twk, twk.length);
     }
 
-    abstract protected String cipher(
-        final String X, byte [] twk, final boolean encrypt);
+    /*
+     * construct the plan for inputs of length @n processed with the
+     * tweak @twk. the lengths must already have been checked
+     */
+    abstract FFXPlan plan(final int n, final byte[] twk);
+
+    /*
+     * the name of the algorithm, under which metrics are recorded
+     */
+    abstract String algorithm();
+
+    /*
+     * get the series in @m to which this context's operations are
+     * recorded. the series is looked up once and then kept, unless
+     * different metrics have since been installed
+     */
+    FFXMetrics.Series series(final FFXMetrics m) {
+        FFXMetrics.Series s = this.series;
+        if (s == null || s.owner != m) {
+            s = m.series(this.algorithm(), this.radix);
+            this.series = s;
+        }
+        return s;
+    }
+
+    /*
+     * get the plan for inputs of length @n processed with the tweak
+     * @twk, constructing and caching it if it isn't already cached
+     */
+    FFXPlan planFor(final int n, final byte[] twk) {
+        final FFXPlan p = this.cached(n, twk);
+        return (p != null) ? p : this.cache(this.plan(n, twk));
+    }
+
+    /*
+     * get the cached plan for inputs of length @n processed
+     * with the tweak @twk, or null if there isn't one
+     */
+    private FFXPlan cached(final int n, final byte[] twk) {
+        final FFXPlan p;
+
+        if (n < PLANS && (twk == this.twk || Arrays.equals(twk, this.twk))) {
+            final FFXPlan[] plans = this.plans;
+            return (plans != null) ? plans[n] : null;
+        }
+
+        p = this.last;
+        return (p != null && p.matches(n, twk)) ? p : null;
+    }
+
+    private FFXPlan cache(final FFXPlan p) {
+        if (p.n < PLANS && Arrays.equals(p.twk, this.twk)) {
+            FFXPlan[] plans = this.plans;
+            if (plans == null) {
+                plans = new FFXPlan[PLANS];
+                this.plans = plans;
+            }
+            plans[p.n] = p;
+        } else {
+            this.last = p;
+        }
+        return p;
+    }
+
+    /*
+     * encrypt or decrypt, in place, the @n numerals of @X beginning
+     * at @off. each numeral must be less than the radix, and the
+     * lengths of the input and the tweak must already have been
+     * checked.
+     */
+    void cipher(int[] X, final int off, final int n,
+                final byte[] twk, final boolean encrypt) {
+        this.planFor(n, twk).cipher(X, off, encrypt);
+    }
+
+    protected String cipher(final String X, byte[] twk, final boolean encrypt) {
+        final FFXMetrics m = FFXMetrics.installed();
+        final long start = (m != null) ? System.nanoTime() : 0;
+        final FFXMetrics.Timer t = (m != null) ? m.timer(start) : null;
+        final Object e = FFXEvents.begin();
+        final int n = X.length();
+        final int[] N = new int[n];
+        final boolean hit;
+        FFXPlan p;
+        final String Y;
+
+        /* use the default tweak if none is supplied */
+        twk = this.check(n, twk);
+
+        this.numerals(X, N, 0);
+        p = this.cached(n, twk);
+        hit = (p != null);
+        if (!hit) {
+            p = this.cache(this.plan(n, twk));
+        }
+        p.cipher(N, 0, encrypt, t);
+        Y = this.string(N, 0, n);
+
+        if (m != null) {
+            m.record(this.series(m), encrypt, n, start, t);
+        }
+        if (e != null) {
+            FFXEvents.commit(e, p, encrypt, hit);
+        }
+
+        return Y;
+    }
+
+    /*
+     * check the length of an input and of the tweak with which it is
+     * to be processed, returning an FFXResult status code
+     */
+    int status(final int n, final byte[] twk) {
+        if (n < this.txtmin || n > this.txtmax) {
+            return FFXResult.INVALID_LENGTH;
+        } else if (twk.length < this.twkmin ||
+                   (this.twkmax > 0 && twk.length > this.twkmax)) {
+            return FFXResult.INVALID_TWEAK_LENGTH;
+        }
+        return FFXResult.OK;
+    }
+
+    /*
+     * check the length of an input and of the tweak with which it is
+     * to be processed, returning that tweak or, if it is null, the
+     * default tweak
+     */
+    byte[] check(final int n, final byte[] twk) {
+        final byte[] T = (twk != null) ? twk : this.twk;
+
+        switch (this.status(n, T)) {
+        case FFXResult.INVALID_LENGTH:
+            throw new IllegalArgumentException("invalid input length");
+        case FFXResult.INVALID_TWEAK_LENGTH:
+            throw new IllegalArgumentException("invalid tweak length");
+        }
+
+        return T;
+    }
+
+    /*
+     * convert the characters of @X to numerals, storing them in @N
+     * beginning at @off. returns false if @X contains a character
+     * that isn't a member of the alphabet.
+     */
+    boolean convert(final CharSequence X, final int[] N, final int off) {
+        for (int i = 0; i < X.length(); i++) {
+            final int d = this.alphabet.digit(X.charAt(i));
+            if (d < 0 || d >= this.radix) {
+                return false;
+            }
+            N[off + i] = d;
+        }
+        return true;
+    }
+
+    /*
+     * convert the characters of @X to numerals, storing
+     * them in @N beginning at @off
+     */
+    void numerals(final CharSequence X, final int[] N, final int off) {
+        if (!this.convert(X, N, off)) {
+            throw new IllegalArgumentException("invalid character");
+        }
+    }
+
+    /*
+     * convert the @n numerals in @N, beginning at @off, to a string
+     */
+    String string(final int[] N, final int off, final int n) {
+        final char[] c = new char[n];
+        for (int i = 0; i < n; i++) {
+            c[i] = this.alphabet.character(N[off + i]);
+        }
+        return new String(c);
+    }
+
+    /*
+     * compute the integer value of the @len numerals of @X beginning
+     * at @off. the first numeral is the most significant unless @rev
+     * is set, in which case the last numeral is the most significant.
+     */
+    BigInteger num(final int[] X, final int off, final int len,
+                   final boolean rev) {
+        BigInteger r = null;
+        long acc = 0, pow = 1;
+
+        for (int i = 0; i < len; i++) {
+            acc = acc * this.radix + X[rev ? off + len - 1 - i : off + i];
+            pow *= this.radix;
+
+            if ((i + 1) % this.chunk == 0) {
+                r = (r == null)
+                    ? BigInteger.valueOf(acc)
+                    : r.multiply(this.chunkpow).add(BigInteger.valueOf(acc));
+                acc = 0;
+                pow = 1;
+            }
+        }
+
+        if (r == null) {
+            return BigInteger.valueOf(acc);
+        } else if (pow > 1) {
+            r = r.multiply(BigInteger.valueOf(pow)).add(BigInteger.valueOf(acc));
+        }
+        return r;
+    }
+
+    /*
+     * store the integer @c as @len numerals into @X beginning at @off.
+     * the first numeral is the most significant unless @rev is set.
+     * @c must be less than radix**len.
+     */
+    void str(BigInteger c, final int[] X, final int off, final int len,
+             final boolean rev) {
+        int i = 0;
+
+        /* peel off the low order numerals a chunk at a time */
+        while (c.bitLength() >= 63) {
+            final BigInteger[] qr = c.divideAndRemainder(this.chunkpow);
+            long r = qr[1].longValue();
+
+            for (int j = 0; j < this.chunk; j++, i++) {
+                final long q = FFXOps.div(r, this.radix, this.rradix);
+                X[rev ? off + i : off + len - 1 - i] = (int)(r - q * this.radix);
+                r = q;
+            }
+
+            c = qr[0];
+        }
+
+        for (long r = c.longValue(); i < len; i++) {
+            final long q = FFXOps.div(r, this.radix, this.rradix);
+            X[rev ? off + i : off + len - 1 - i] = (int)(r - q * this.radix);
+            r = q;
+        }
+    }
+
+    /*
+     * compute the value of the @len numerals of @X beginning at @off
+     * as with num(), for numerals whose value fits in a long
+     */
+    long numl(final int[] X, final int off, final int len,
+              final boolean rev) {
+        long acc = 0;
+        for (int i = 0; i < len; i++) {
+            acc = acc * this.radix + X[rev ? off + len - 1 - i : off + i];
+        }
+        return acc;
+    }
+
+    /*
+     * store the integer @c as @len numerals into @X as with str()
+     */
+    void strl(long c, final int[] X, final int off, final int len,
+              final boolean rev) {
+        for (int i = 0; i < len; i++) {
+            final long q = FFXOps.div(c, this.radix, this.rradix);
+            X[rev ? off + i : off + len - 1 - i] = (int)(c - q * this.radix);
+            c = q;
+        }
+    }
+
+    /*
+     * return the number of bytes that can be shifted into a residue
+     * modulo @m at once without overflowing a long, or 0 if @m is
+     * too large for mod() to be used at all
+     */
+    static int step(final long m) {
+        return (63 - (64 - Long.numberOfLeadingZeros(m))) / 8;
+    }
+
+    /*
+     * compute the unsigned, big-endian integer formed by the @len bytes
+     * of @src beginning at @off, modulo @m. @step is the value returned
+     * by step() for @m and must be at least 1, and @rm is the value
+     * returned by FFXOps.reciprocal() for @m.
+     */
+    static long mod(final byte[] src, final int off, final int len,
+                    final long m, final int step, final long rm) {
+        long r = 0;
+
+        for (int i = 0; i < len; i += step) {
+            final int k = Math.min(step, len - i);
+            long w = 0;
+
+            for (int j = 0; j < k; j++) {
+                w = (w << 8) | (src[off + i + j] & 0xff);
+            }
+
+            w |= r << (8 * k);
+            r = w - FFXOps.div(w, m, rm) * m;
+        }
+
+        return r;
+    }
+
+    /**
+     * Destroy the context, overwriting the default tweak and, unless
+     * the context was constructed with a shared {@link FFXKey}, the key
+     * schedule. Subsequent encryptions and decryptions with the context
+     * throw {@link IllegalStateException}.
+     */
+    @Override
+    public void destroy() {
+        this.destroyed = true;
+        this.plans = null;
+        this.last = null;
+        if (this.owner) {
+            this.key.destroy();
+        }
+        Arrays.fill(this.twk, (byte)0);
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return this.destroyed || this.key.isDestroyed();
+    }
+
+    /*
+     * fail if the context has been destroyed. this is checked both
+     * before and after an operation so that a destruction that races
+     * with an operation causes that operation to fail rather than to
+     * return output computed from a partially wiped key
+     */
+    protected void checkDestroyed() {
+        if (this.isDestroyed()) {
+            throw new IllegalStateException("context destroyed");
+        }
+    }
+
+    /*
+     * overwrite the expanded key held by an aes engine. bouncy castle
+     * offers no way to clear it, so the field is cleared reflectively.
+     * when that isn't permitted (e.g. the provider is loaded as a named
+     * module), the schedule is left for the garbage collector
+     */
+    static void wipe(final BlockCipher engine) {
+        try {
+            final Field f = engine.getClass().getDeclaredField("WorkingKey");
+            f.setAccessible(true);
+
+            final int[][] W = (int[][])f.get(engine);
+            if (W != null) {
+                for (int[] w : W) {
+                    Arrays.fill(w, 0);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            /* nothing more can be done */
+        }
+    }
 
     /*
      * perform an aes-cbc encryption (with an IV of 0) of @src, storing
@@ -115,10 +512,18 @@ abstract class FFX
         // block size and will terminate the look.  In othercases, len will
         // be the size of the src but len - soff will terminate that.  however
         // cannot easily combine both checks into a single math equation.
+        //
+        // @dst holds the chaining value. With an IV of 0, the first block
+        // is simply encrypted; each subsequent block is xor'd into the
+        // previous output before being encrypted.
         for (int i = 0; i < len && i < src.length - soff; i += blksz) {
-            this.cipher.processBlock(src, soff + i, dst, doff);
+            if (i > 0) {
+                FFX.xor(dst, doff, dst, doff, src, soff + i, blksz);
+                this.cipher.processBlock(dst, doff, dst, doff);
+            } else {
+                this.cipher.processBlock(src, soff, dst, doff);
+            }
         }
-        this.cipher.reset();
     }
 
     /*
@@ -146,17 +551,7 @@ abstract class FFX
      * to the same location but may not otherwise overlap
      */
     public static void rev(byte[] dst, final byte[] src) {
-        int i;
-
-        for (i = 0; i < src.length / 2; i++) {
-            final byte t = src[i];
-            dst[i] = src[src.length - i - 1];
-            dst[src.length - i - 1] = t;
-        }
-
-        if (src.length % 2 == 1) {
-            dst[i] = src[i];
-        }
+        FFXOps.rev(dst, src);
     }
 
     /*
@@ -185,9 +580,7 @@ abstract class FFX
                            final byte[] s1, final int s1off,
                            final byte[] s2, final int s2off,
                            final int len) {
-        for (int i = 0; i < len; i++) {
-            d[doff + i] = (byte)(s1[s1off + i] ^ s2[s2off + i]);
-        }
+        FFXOps.xor(d, doff, s1, s1off, s2, s2off, len);
     }
 
     /*
@@ -246,6 +639,303 @@ abstract class FFX
     return ret;
   }
 
+    /**
+     * Check whether a string is a valid input to the context, i.e.
+     * that its length is within the allowed range and that each of its
+     * characters is a member of the alphabet. No encryption is done.
+     *
+     * @param X the string to be checked
+     *
+     * @return  {@link FFXResult#OK} if the string is valid or a status
+     *          code from {@link FFXResult} describing why it is not
+     */
+    public int validate(final CharSequence X) {
+        final int n = X.length();
+
+        if (n < this.txtmin || n > this.txtmax) {
+            return FFXResult.INVALID_LENGTH;
+        }
+
+        for (int i = 0; i < n; i++) {
+            final int d = this.alphabet.digit(X.charAt(i));
+            if (d < 0 || d >= this.radix) {
+                return FFXResult.INVALID_CHARACTER;
+            }
+        }
+
+        return FFXResult.OK;
+    }
+
+    /**
+     * Encrypt a string, reporting failure through a status code rather
+     * than by throwing an exception. This is intended for bulk inputs in
+     * which invalid values are expected, where the cost of constructing
+     * exceptions would otherwise dominate.
+     *
+     * @param X      the plain text to be encrypted
+     * @param twk    the tweak used to perturb the encryption or null
+     *               to use the default tweak
+     * @param result receives the status and, if successful, the cipher text
+     *
+     * @return       true if the encryption succeeded
+     */
+    public boolean tryEncrypt(final CharSequence X, final byte[] twk,
+                              final FFXResult result) {
+        return this.tryCipher(X, twk, true, result);
+    }
+
+    public boolean tryEncrypt(final CharSequence X, final FFXResult result) {
+        return this.tryEncrypt(X, null, result);
+    }
+
+    /**
+     * Decrypt a string, reporting failure through a status code rather
+     * than by throwing an exception.
+     *
+     * @param X      the cipher text to be decrypted
+     * @param twk    the tweak used to perturb the encryption or null
+     *               to use the default tweak
+     * @param result receives the status and, if successful, the plain text
+     *
+     * @return       true if the decryption succeeded
+     */
+    public boolean tryDecrypt(final CharSequence X, final byte[] twk,
+                              final FFXResult result) {
+        return this.tryCipher(X, twk, false, result);
+    }
+
+    public boolean tryDecrypt(final CharSequence X, final FFXResult result) {
+        return this.tryDecrypt(X, null, result);
+    }
+
+    private boolean tryCipher(final CharSequence X, final byte[] twk,
+                              final boolean encrypt, final FFXResult result) {
+        final FFXMetrics m = FFXMetrics.installed();
+        final long start = (m != null) ? System.nanoTime() : 0;
+        final FFXMetrics.Timer t = (m != null) ? m.timer(start) : null;
+        final Object e = FFXEvents.begin();
+        final byte[] T = (twk != null) ? twk : this.twk;
+        final int n = X.length();
+        final int[] N;
+        final boolean hit;
+        FFXPlan p;
+        final String Y;
+        int status;
+
+        if (this.isDestroyed()) {
+            return result.set(FFXResult.DESTROYED, null);
+        }
+
+        status = this.status(n, T);
+        if (status != FFXResult.OK) {
+            return result.set(status, null);
+        }
+
+        N = result.numerals(n);
+        if (!this.convert(X, N, 0)) {
+            return result.set(FFXResult.INVALID_CHARACTER, null);
+        }
+
+        p = this.cached(n, T);
+        hit = (p != null);
+        if (!hit) {
+            p = this.cache(this.plan(n, T));
+        }
+        p.cipher(N, 0, encrypt, t);
+        Y = this.string(N, 0, n);
+
+        if (this.isDestroyed()) {
+            return result.set(FFXResult.DESTROYED, null);
+        }
+        if (m != null) {
+            m.record(this.series(m), encrypt, n, start, t);
+        }
+        if (e != null) {
+            FFXEvents.commit(e, p, encrypt, hit);
+        }
+        return result.set(FFXResult.OK, Y);
+    }
+
+    /**
+     * Decrypt a string with one context and encrypt the result with
+     * another, as when rotating keys.
+     *
+     * The plain text is never converted to a string. It is held only
+     * as numerals in a temporary buffer and, during the rounds, in the
+     * algorithms' scratch buffers, all of which are zeroed before this
+     * function returns. If the contexts use different alphabets, each
+     * character of the plain text must be a member of both alphabets.
+     *
+     * @param oldCtx the context with which @X was encrypted
+     * @param newCtx the context with which to encrypt the plain text
+     * @param X      the cipher text to be re-encrypted
+     * @param oldTwk the tweak with which @X was encrypted or null
+     *               to use the default tweak of @oldCtx
+     * @param newTwk the tweak with which to encrypt the plain text
+     *               or null to use the default tweak of @newCtx
+     *
+     * @return       the new cipher text
+     */
+    public static String reencrypt(final FFX oldCtx, final FFX newCtx,
+                                   final String X,
+                                   final byte[] oldTwk, final byte[] newTwk) {
+        final Reencryption r = new Reencryption(oldCtx, newCtx,
+                                                oldTwk, newTwk, X.length());
+        try {
+            return r.run(X);
+        } finally {
+            r.wipe();
+        }
+    }
+
+    public static String reencrypt(final FFX oldCtx, final FFX newCtx,
+                                   final String X) {
+        return reencrypt(oldCtx, newCtx, X, null, null);
+    }
+
+    /**
+     * Re-encrypt many strings, as with
+     * {@link #reencrypt(FFX, FFX, String, byte[], byte[])}.
+     * The same tweaks are used for all of the strings.
+     *
+     * @param oldCtx the context with which the strings were encrypted
+     * @param newCtx the context with which to encrypt the plain texts
+     * @param X      the cipher texts to be re-encrypted
+     * @param oldTwk the tweak with which @X was encrypted or null
+     *               to use the default tweak of @oldCtx
+     * @param newTwk the tweak with which to encrypt the plain texts
+     *               or null to use the default tweak of @newCtx
+     *
+     * @return       the new cipher texts, in the same order as @X
+     */
+    public static String[] reencrypt(final FFX oldCtx, final FFX newCtx,
+                                     final String[] X,
+                                     final byte[] oldTwk, final byte[] newTwk) {
+        final String[] Y = new String[X.length];
+        int max = 0;
+
+        for (String x : X) {
+            max = Math.max(max, x.length());
+        }
+
+        /* a single set of buffers serves for all of the inputs */
+        final Reencryption r = new Reencryption(oldCtx, newCtx,
+                                                oldTwk, newTwk, max);
+        try {
+            for (int i = 0; i < X.length; i++) {
+                Y[i] = r.run(X[i]);
+            }
+        } finally {
+            r.wipe();
+        }
+
+        return Y;
+    }
+
+    /*
+     * the buffers used to re-encrypt strings of up to a given length:
+     * the numerals and, for each length encountered, the plans of both
+     * contexts and their scratch buffers, which are reused for all of
+     * the strings of that length. everything that holds the plain text
+     * is zeroed by wipe()
+     */
+    private static final class Reencryption
+    {
+        private final FFX oldCtx, newCtx;
+        private final byte[] oldTwk, newTwk;
+        private final int[] N;
+        private final FFXPlan[] oldPlans, newPlans;
+        private final byte[][][] oldScratch, newScratch;
+
+        Reencryption(final FFX oldCtx, final FFX newCtx,
+                     final byte[] oldTwk, final byte[] newTwk,
+                     final int max) {
+            this.oldCtx = oldCtx;
+            this.newCtx = newCtx;
+            this.oldTwk = oldTwk;
+            this.newTwk = newTwk;
+            this.N = new int[max];
+            this.oldPlans = new FFXPlan[max + 1];
+            this.newPlans = new FFXPlan[max + 1];
+            this.oldScratch = new byte[max + 1][][];
+            this.newScratch = new byte[max + 1][][];
+        }
+
+        String run(final String X) {
+            final FFXMetrics m = FFXMetrics.installed();
+            final FFX oldCtx = this.oldCtx, newCtx = this.newCtx;
+            final int[] N = this.N;
+            final int n = X.length();
+            final String Y;
+            long start = (m != null) ? System.nanoTime() : 0;
+
+            oldCtx.checkDestroyed();
+            newCtx.checkDestroyed();
+
+            if (this.oldPlans[n] == null) {
+                this.oldPlans[n] = oldCtx.planFor(
+                    n, oldCtx.check(n, this.oldTwk));
+                this.newPlans[n] = newCtx.planFor(
+                    n, newCtx.check(n, this.newTwk));
+                this.oldScratch[n] = this.oldPlans[n].scratch();
+                this.newScratch[n] = this.newPlans[n].scratch();
+            }
+
+            oldCtx.numerals(X, N, 0);
+            this.oldPlans[n].cipher(N, 0, false, this.oldScratch[n], null);
+
+            if (m != null) {
+                m.record(oldCtx.series(m), false, n, start, null);
+                start = System.nanoTime();
+            }
+
+            /*
+             * the plain text, as numerals of the old alphabet, must be
+             * translated into numerals of the new alphabet unless the
+             * two are the same
+             */
+            if (oldCtx.radix != newCtx.radix ||
+                !oldCtx.alpha.equals(newCtx.alpha)) {
+                for (int i = 0; i < n; i++) {
+                    final int d = newCtx.alphabet.digit(
+                        oldCtx.alphabet.character(N[i]));
+                    if (d < 0 || d >= newCtx.radix) {
+                        throw new IllegalArgumentException("invalid character");
+                    }
+                    N[i] = d;
+                }
+            }
+
+            this.newPlans[n].cipher(N, 0, true, this.newScratch[n], null);
+            Y = newCtx.string(N, 0, n);
+
+            if (m != null) {
+                m.record(newCtx.series(m), true, n, start, null);
+            }
+
+            oldCtx.checkDestroyed();
+            newCtx.checkDestroyed();
+
+            return Y;
+        }
+
+        void wipe() {
+            Arrays.fill(this.N, 0);
+            wipe(this.oldScratch);
+            wipe(this.newScratch);
+        }
+
+        private static void wipe(final byte[][][] scratch) {
+            for (byte[][] s : scratch) {
+                if (s != null) {
+                    for (byte[] b : s) {
+                        Arrays.fill(b, (byte)0);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Encrypt a string, returning a cipher text using the same alphabet.
      *
@@ -258,7 +948,13 @@ abstract class FFX
      * @return    the encryption of the plain text, the cipher text
      */
     public String encrypt(String X, byte[] twk) {
-        return this.cipher(X, twk, true);
+        final String Y;
+
+        this.checkDestroyed();
+        Y = this.cipher(X, twk, true);
+        this.checkDestroyed();
+
+        return Y;
     }
 
     /**
@@ -287,7 +983,13 @@ abstract class FFX
      * @return    the decryption of the cipher text, the plain text
      */
     public String decrypt(String X, byte[] twk) {
-        return this.cipher(X, twk, false);
+        final String Y;
+
+        this.checkDestroyed();
+        Y = this.cipher(X, twk, false);
+        this.checkDestroyed();
+
+        return Y;
     }
 
     /**
@@ -303,4 +1005,482 @@ abstract class FFX
     public String decrypt(String X) {
         return this.decrypt(X, null);
     }
+
+    /**
+     * Encrypt, in place, a sequence of numerals.
+     *
+     * Numerals are the values of the characters of a string in the
+     * context's alphabet, i.e. integers from 0 to radix - 1. Operating
+     * on numerals allows callers that don't hold their data as strings,
+     * such as those reading bytes from files, to avoid converting to and
+     * from strings.
+     *
+     * @param X   the numerals of the plain text, which are replaced by
+     *            those of the cipher text
+     * @param off the index of the first numeral in @X
+     * @param n   the number of numerals
+     * @param twk the tweak used to perturb the encryption or null to
+     *            use the default tweak
+     */
+    public void encrypt(final int[] X, final int off, final int n,
+                        final byte[] twk) {
+        this.cipherNumerals(X, off, n, twk, true);
+    }
+
+    /**
+     * Decrypt, in place, a sequence of numerals.
+     *
+     * @param X   the numerals of the cipher text, which are replaced by
+     *            those of the plain text
+     * @param off the index of the first numeral in @X
+     * @param n   the number of numerals
+     * @param twk the tweak used to perturb the encryption or null to
+     *            use the default tweak
+     *
+     * @see #encrypt(int[], int, int, byte[])
+     */
+    public void decrypt(final int[] X, final int off, final int n,
+                        final byte[] twk) {
+        this.cipherNumerals(X, off, n, twk, false);
+    }
+
+    /*
+     * as with cipher(int[], ...), but checking the length, the tweak,
+     * and the numerals, as this is the public numeral interface
+     */
+    private void cipherNumerals(final int[] X, final int off, final int n,
+                                byte[] twk, final boolean encrypt) {
+        final FFXMetrics m = FFXMetrics.installed();
+        final long start = (m != null) ? System.nanoTime() : 0;
+        final FFXMetrics.Timer t = (m != null) ? m.timer(start) : null;
+
+        this.checkDestroyed();
+
+        twk = this.check(n, twk);
+        for (int i = 0; i < n; i++) {
+            if (X[off + i] < 0 || X[off + i] >= this.radix) {
+                throw new IllegalArgumentException("invalid numeral");
+            }
+        }
+
+        this.planFor(n, twk).cipher(X, off, encrypt, t);
+        this.checkDestroyed();
+
+        if (m != null) {
+            m.record(this.series(m), encrypt, n, start, t);
+        }
+    }
+
+    /**
+     * Encrypt an integer as the value of a sequence of numerals.
+     *
+     * The integer is treated as @n numerals, with leading zeros, in the
+     * context's radix, and the result is the integer value of the
+     * numerals of the cipher text. No characters or strings are formed,
+     * so identifiers held as integers, such as account or customer
+     * numbers, can be encrypted without converting them to text and
+     * back. For example, with a radix of 10 and @n of 9, the result is
+     * the same as that of encrypting the input written with 9 digits.
+     *
+     * @param x   the plain text, from 0 to radix<sup>n</sup> - 1
+     * @param n   the number of numerals. radix<sup>n</sup> must not
+     *            exceed Long.MAX_VALUE
+     * @param twk the tweak used to perturb the encryption or null to
+     *            use the default tweak
+     *
+     * @return    the cipher text, from 0 to radix<sup>n</sup> - 1
+     */
+    public long encrypt(final long x, final int n, final byte[] twk) {
+        return this.cipherLong(x, n, twk, true, Long.MAX_VALUE);
+    }
+
+    /**
+     * Decrypt an integer as the value of a sequence of numerals.
+     *
+     * @param x   the cipher text, from 0 to radix<sup>n</sup> - 1
+     * @param n   the number of numerals
+     * @param twk the tweak used to perturb the encryption or null to
+     *            use the default tweak
+     *
+     * @return    the plain text
+     *
+     * @see #encrypt(long, int, byte[])
+     */
+    public long decrypt(final long x, final int n, final byte[] twk) {
+        return this.cipherLong(x, n, twk, false, Long.MAX_VALUE);
+    }
+
+    /**
+     * Encrypt, in place, a sequence of integers, each as the
+     * value of @n numerals
+     *
+     * @param X   the plain texts, which are replaced by the cipher texts
+     * @param off the index of the first integer in @X
+     * @param len the number of integers
+     * @param n   the number of numerals
+     * @param twk the tweak used to perturb the encryption or null to
+     *            use the default tweak
+     *
+     * @see #encrypt(long, int, byte[])
+     */
+    public void encrypt(final long[] X, final int off, final int len,
+                        final int n, final byte[] twk) {
+        this.cipherLongs(X, off, len, n, twk, true);
+    }
+
+    /**
+     * Decrypt, in place, a sequence of integers, each as the
+     * value of @n numerals
+     *
+     * @param X   the cipher texts, which are replaced by the plain texts
+     * @param off the index of the first integer in @X
+     * @param len the number of integers
+     * @param n   the number of numerals
+     * @param twk the tweak used to perturb the encryption or null to
+     *            use the default tweak
+     *
+     * @see #encrypt(long, int, byte[])
+     */
+    public void decrypt(final long[] X, final int off, final int len,
+                        final int n, final byte[] twk) {
+        this.cipherLongs(X, off, len, n, twk, false);
+    }
+
+    /**
+     * Encrypt an integer as the value of a sequence of numerals.
+     *
+     * @param x   the plain text, from 0 to radix<sup>n</sup> - 1
+     * @param n   the number of numerals. radix<sup>n</sup> must not
+     *            exceed Integer.MAX_VALUE + 1
+     * @param twk the tweak used to perturb the encryption or null to
+     *            use the default tweak
+     *
+     * @return    the cipher text, from 0 to radix<sup>n</sup> - 1
+     *
+     * @see #encrypt(long, int, byte[])
+     */
+    public int encrypt(final int x, final int n, final byte[] twk) {
+        return (int)this.cipherLong(x, n, twk, true, 1L << 31);
+    }
+
+    /**
+     * Decrypt an integer as the value of a sequence of numerals.
+     *
+     * @param x   the cipher text, from 0 to radix<sup>n</sup> - 1
+     * @param n   the number of numerals
+     * @param twk the tweak used to perturb the encryption or null to
+     *            use the default tweak
+     *
+     * @return    the plain text
+     *
+     * @see #encrypt(int, int, byte[])
+     */
+    public int decrypt(final int x, final int n, final byte[] twk) {
+        return (int)this.cipherLong(x, n, twk, false, 1L << 31);
+    }
+
+    /*
+     * get the plan with which to process integers of @n numerals,
+     * checking that radix**n is at most @bound
+     */
+    private FFXPlan planLong(final int n, final byte[] twk, final long bound) {
+        final FFXPlan p = this.planFor(n, this.check(n, twk));
+
+        if (p.size == 0 || p.size > bound) {
+            throw new IllegalArgumentException("invalid input length");
+        }
+        return p;
+    }
+
+    private long cipherLong(final long x, final int n, final byte[] twk,
+                            final boolean encrypt, final long bound) {
+        final FFXMetrics m = FFXMetrics.installed();
+        final long start = (m != null) ? System.nanoTime() : 0;
+        final FFXMetrics.Timer t = (m != null) ? m.timer(start) : null;
+        final FFXPlan p;
+        final long y;
+
+        this.checkDestroyed();
+
+        p = this.planLong(n, twk, bound);
+        if (x < 0 || x >= p.size) {
+            throw new IllegalArgumentException("invalid input");
+        }
+
+        y = p.cipher(x, encrypt, t);
+        this.checkDestroyed();
+
+        if (m != null) {
+            m.record(this.series(m), encrypt, n, start, t);
+        }
+
+        return y;
+    }
+
+    private void cipherLongs(final long[] X, final int off, final int len,
+                             final int n, final byte[] twk,
+                             final boolean encrypt) {
+        final FFXMetrics m = FFXMetrics.installed();
+        final FFXPlan p;
+
+        if (off < 0 || len < 0 || off > X.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        this.checkDestroyed();
+
+        /* the plan is fetched once for the whole sequence */
+        p = this.planLong(n, twk, Long.MAX_VALUE);
+        for (int i = off; i < off + len; i++) {
+            if (X[i] < 0 || X[i] >= p.size) {
+                throw new IllegalArgumentException("invalid input");
+            }
+        }
+
+        for (int i = off; i < off + len; i++) {
+            final long start = (m != null) ? System.nanoTime() : 0;
+            final FFXMetrics.Timer t = (m != null) ? m.timer(start) : null;
+
+            X[i] = p.cipher(X[i], encrypt, t);
+            if (m != null) {
+                m.record(this.series(m), encrypt, n, start, t);
+            }
+        }
+
+        this.checkDestroyed();
+    }
+
+    /*
+     * the number of bytes needed to hold any integer less than @domain
+     */
+    static int bytes(final BigInteger domain) {
+        return (domain.subtract(BigInteger.ONE).bitLength() + 7) / 8;
+    }
+
+    /**
+     * Get the length of the packed form of values of a given length
+     *
+     * @param n the length of the values
+     *
+     * @return  the number of bytes needed to hold any integer less
+     *          than radix<sup>n</sup>
+     *
+     * @see #encryptPacked(CharSequence, byte[])
+     */
+    public int packedLength(final int n) {
+        return bytes(BigInteger.valueOf(this.radix).pow(n));
+    }
+
+    /**
+     * Encrypt a string, returning the cipher text in packed form.
+     *
+     * The packed form is the integer value of the numerals of the cipher
+     * text, stored big-endian in the fixed number of bytes given by
+     * {@link #packedLength(int)}. For example, a 16 digit decimal cipher
+     * text is packed into 7 bytes. Packing makes the cipher texts smaller
+     * to store and skips converting them to characters.
+     *
+     * @param X   the plain text
+     * @param twk the tweak used to perturb the encryption or null to
+     *            use the default tweak
+     *
+     * @return    the cipher text in packed form
+     */
+    public byte[] encryptPacked(final CharSequence X, final byte[] twk) {
+        return this.pack(X, twk, null, 0);
+    }
+
+    /**
+     * Encrypt a string, writing the cipher text in packed form
+     * into a buffer
+     *
+     * @param X   the plain text
+     * @param twk the tweak used to perturb the encryption or null to
+     *            use the default tweak
+     * @param dst the buffer into which the cipher text is written
+     * @param off the position in @dst at which to write the cipher text
+     *
+     * @see #encryptPacked(CharSequence, byte[])
+     */
+    public void encryptPacked(final CharSequence X, final byte[] twk,
+                              final byte[] dst, final int off) {
+        if (dst == null) {
+            throw new NullPointerException();
+        }
+        this.pack(X, twk, dst, off);
+    }
+
+    /**
+     * Decrypt a cipher text in packed form, returning the plain text
+     *
+     * @param src the buffer holding the cipher text
+     * @param off the position of the cipher text in @src
+     * @param n   the length of the plain text. the packed cipher text
+     *            occupies {@link #packedLength(int)} bytes
+     * @param twk the tweak used to perturb the encryption or null to
+     *            use the default tweak
+     *
+     * @return    the plain text
+     *
+     * @see #encryptPacked(CharSequence, byte[])
+     */
+    public String decryptPacked(final byte[] src, final int off, final int n,
+                                final byte[] twk) {
+        final FFXMetrics m = FFXMetrics.installed();
+        final long start = (m != null) ? System.nanoTime() : 0;
+        final FFXMetrics.Timer t = (m != null) ? m.timer(start) : null;
+        final int[] N = new int[n];
+        final FFXPlan p;
+        final String Y;
+
+        this.checkDestroyed();
+
+        p = this.planFor(n, this.check(n, twk));
+        if (off < 0 || off > src.length - p.bytes) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (p.size != 0) {
+            long x = 0;
+
+            for (int i = 0; i < p.bytes; i++) {
+                x = (x << 8) | (src[off + i] & 0xff);
+            }
+            if (x < 0 || x >= p.size) {
+                throw new IllegalArgumentException("invalid input");
+            }
+
+            this.strl(p.cipher(x, false, t), N, 0, n, false);
+        } else {
+            final BigInteger x = new BigInteger(
+                1, Arrays.copyOfRange(src, off, off + p.bytes));
+
+            if (x.compareTo(p.domain) >= 0) {
+                throw new IllegalArgumentException("invalid input");
+            }
+
+            this.str(x, N, 0, n, false);
+            p.cipher(N, 0, false, t);
+        }
+
+        Y = this.string(N, 0, n);
+        this.checkDestroyed();
+
+        if (m != null) {
+            m.record(this.series(m), false, n, start, t);
+        }
+
+        return Y;
+    }
+
+    /**
+     * Encrypt a string, returning the integer value of
+     * the numerals of the cipher text
+     *
+     * @param X   the plain text. radix<sup>n</sup>, where n is its
+     *            length, must not exceed Long.MAX_VALUE
+     * @param twk the tweak used to perturb the encryption or null to
+     *            use the default tweak
+     *
+     * @return    the cipher text, from 0 to radix<sup>n</sup> - 1
+     *
+     * @see #encrypt(long, int, byte[])
+     */
+    public long encryptToLong(final CharSequence X, final byte[] twk) {
+        final FFXMetrics m = FFXMetrics.installed();
+        final long start = (m != null) ? System.nanoTime() : 0;
+        final FFXMetrics.Timer t = (m != null) ? m.timer(start) : null;
+        final int n = X.length();
+        final int[] N = new int[n];
+        final FFXPlan p;
+        final long y;
+
+        this.checkDestroyed();
+
+        p = this.planLong(n, twk, Long.MAX_VALUE);
+        this.numerals(X, N, 0);
+        y = p.cipher(this.numl(N, 0, n, false), true, t);
+        this.checkDestroyed();
+
+        if (m != null) {
+            m.record(this.series(m), true, n, start, t);
+        }
+
+        return y;
+    }
+
+    /**
+     * Decrypt the integer value of the numerals of a cipher
+     * text, returning the plain text
+     *
+     * @param x   the cipher text, from 0 to radix<sup>n</sup> - 1
+     * @param n   the length of the plain text
+     * @param twk the tweak used to perturb the encryption or null to
+     *            use the default tweak
+     *
+     * @return    the plain text
+     *
+     * @see #encryptToLong(CharSequence, byte[])
+     */
+    public String decryptFromLong(final long x, final int n, final byte[] twk) {
+        final int[] N = new int[n];
+
+        this.strl(this.cipherLong(x, n, twk, false, Long.MAX_VALUE),
+                  N, 0, n, false);
+        return this.string(N, 0, n);
+    }
+
+    /*
+     * encrypt @X, writing its packed form into @dst at @off,
+     * or into a new array if @dst is null
+     */
+    private byte[] pack(final CharSequence X, final byte[] twk,
+                        byte[] dst, final int off) {
+        final FFXMetrics m = FFXMetrics.installed();
+        final long start = (m != null) ? System.nanoTime() : 0;
+        final FFXMetrics.Timer t = (m != null) ? m.timer(start) : null;
+        final int n = X.length();
+        final int[] N = new int[n];
+        final FFXPlan p;
+
+        this.checkDestroyed();
+
+        p = this.planFor(n, this.check(n, twk));
+        if (dst == null) {
+            dst = new byte[p.bytes];
+        } else if (off < 0 || off > dst.length - p.bytes) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        this.numerals(X, N, 0);
+
+        if (p.size != 0) {
+            long y = p.cipher(this.numl(N, 0, n, false), true, t);
+
+            for (int i = p.bytes - 1; i >= 0; i--, y >>>= 8) {
+                dst[off + i] = (byte)y;
+            }
+        } else {
+            final byte[] y;
+
+            p.cipher(N, 0, true, t);
+            y = this.num(N, 0, n, false).toByteArray();
+
+            /* drop the sign byte, if any, and pad on the left with zeros */
+            if (y.length >= p.bytes) {
+                System.arraycopy(y, y.length - p.bytes, dst, off, p.bytes);
+            } else {
+                Arrays.fill(dst, off, off + p.bytes - y.length, (byte)0);
+                System.arraycopy(y, 0, dst, off + p.bytes - y.length, y.length);
+            }
+        }
+
+        this.checkDestroyed();
+
+        if (m != null) {
+            m.record(this.series(m), true, n, start, t);
+        }
+
+        return dst;
+    }
 }
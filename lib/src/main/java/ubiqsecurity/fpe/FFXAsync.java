@@ -0,0 +1,101 @@
+package ubiqsecurity.fpe;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Asynchronous encryption and decryption with a context.
+ *
+ * Each operation is submitted to an executor, and its result, or the
+ * exception that it threw, is delivered through a
+ * {@link CompletableFuture}. Unless an executor is supplied, operations
+ * run in virtual threads, one per operation, on Java 21 and later, and
+ * in the common fork-join pool on earlier releases.
+ *
+ * Contexts keep no per-thread state. The few buffers needed by an
+ * operation are allocated by it and become garbage when it completes,
+ * so running operations in many short-lived threads, virtual or not,
+ * doesn't cause buffers to accumulate per thread.
+ *
+ * Tweaks are copied when an operation is submitted, so the caller may
+ * reuse a tweak's array before the operation completes.
+ */
+public final class FFXAsync
+{
+    private final FFX ctx;
+    private final Executor executor;
+
+    /**
+     * Construct an asynchronous wrapper that uses the default executor
+     *
+     * @param ctx the context with which to encrypt and decrypt
+     */
+    public FFXAsync(final FFX ctx) {
+        this(ctx, FFXExecutors.standard());
+    }
+
+    /**
+     * Construct an asynchronous wrapper
+     *
+     * @param ctx      the context with which to encrypt and decrypt
+     * @param executor the executor in which to run the operations
+     */
+    public FFXAsync(final FFX ctx, final Executor executor) {
+        if (ctx == null || executor == null) {
+            throw new NullPointerException();
+        }
+
+        this.ctx = ctx;
+        this.executor = executor;
+    }
+
+    /**
+     * @return the context used by the wrapper
+     */
+    public FFX context() {
+        return this.ctx;
+    }
+
+    /**
+     * Encrypt a string asynchronously.
+     *
+     * @param X   the plain text to be encrypted
+     * @param twk the tweak used to perturb the encryption or null
+     *            to use the default tweak of the context
+     *
+     * @return    a future completed with the cipher text or with the
+     *            exception that the encryption threw
+     */
+    public CompletableFuture<String> encryptAsync(final String X,
+                                                  final byte[] twk) {
+        final byte[] T = (twk != null) ? Arrays.copyOf(twk, twk.length) : null;
+        return CompletableFuture.supplyAsync(
+            () -> this.ctx.encrypt(X, T), this.executor);
+    }
+
+    public CompletableFuture<String> encryptAsync(final String X) {
+        return this.encryptAsync(X, null);
+    }
+
+    /**
+     * Decrypt a string asynchronously.
+     *
+     * @param X   the cipher text to be decrypted
+     * @param twk the tweak used to perturb the encryption or null
+     *            to use the default tweak of the context
+     *
+     * @return    a future completed with the plain text or with the
+     *            exception that the decryption threw
+     */
+    public CompletableFuture<String> decryptAsync(final String X,
+                                                  final byte[] twk) {
+        final byte[] T = (twk != null) ? Arrays.copyOf(twk, twk.length) : null;
+        return CompletableFuture.supplyAsync(
+            () -> this.ctx.decrypt(X, T), this.executor);
+    }
+
+    public CompletableFuture<String> decryptAsync(final String X) {
+        return this.decryptAsync(X, null);
+    }
+}
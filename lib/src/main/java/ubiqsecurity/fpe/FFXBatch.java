@@ -0,0 +1,302 @@
+package ubiqsecurity.fpe;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Encryption and decryption of columns of strings held as buffers, in
+ * the layout used by Apache Arrow for its variable-length string type.
+ *
+ * A column of n rows consists of:
+ * <ul>
+ * <li>an offsets buffer of n + 1 little-endian 32-bit integers, the i'th
+ *     value of the column occupying the bytes of the data buffer from
+ *     offset i to offset i + 1</li>
+ * <li>a data buffer holding the bytes of the values, one byte per
+ *     character</li>
+ * <li>optionally, a validity bitmap, in which bit i, counting from the
+ *     least significant bit of the first byte, is clear if the i'th value
+ *     is null</li>
+ * </ul>
+ * Each buffer may be on the heap or direct, and is read from or written
+ * to starting at its position, which isn't changed. As encryption
+ * doesn't change the lengths of values, the output column has the same
+ * offsets and validity as the input: the offsets are copied to the
+ * output offsets buffer, if one is given, and the input bitmap applies
+ * to the output as is. Null values are copied without being processed.
+ *
+ * The characters of the context's alphabet must be ASCII, so that each
+ * character of a UTF-8 value is a byte. Values are converted from bytes
+ * to numerals and back directly, and the buffers and the parameters for
+ * each length of value are allocated once per batch, or once per range
+ * of rows when the batch is split, rather than once per value.
+ *
+ * When constructed with an executor, batches are split into ranges of
+ * rows that are processed in parallel. The input and output data
+ * buffers may be the same buffer.
+ */
+public final class FFXBatch
+{
+    /* batches are split into ranges of at least this many rows */
+    private static final int MIN_RANGE = 1024;
+
+    private final FFX ctx;
+    private final Executor executor;
+    private final int parallelism;
+
+    /**
+     * Construct a batch processor that processes each batch
+     * in the calling thread
+     *
+     * @param ctx the context with which to encrypt and decrypt. the
+     *            characters of its alphabet must be ASCII
+     */
+    public FFXBatch(final FFX ctx) {
+        this(ctx, null, 1);
+    }
+
+    /**
+     * Construct a batch processor that splits batches into
+     * ranges of rows that are processed in parallel
+     *
+     * @param ctx         the context with which to encrypt and decrypt.
+     *                    the characters of its alphabet must be ASCII
+     * @param executor    the executor in which to process the ranges
+     * @param parallelism the largest number of ranges into which
+     *                    a batch is split
+     */
+    public FFXBatch(final FFX ctx, final Executor executor,
+                    final int parallelism) {
+        if (ctx == null || (executor == null && parallelism > 1)) {
+            throw new NullPointerException();
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("invalid parallelism");
+        }
+        for (int i = 0; i < ctx.radix; i++) {
+            if (ctx.alphabet.character(i) >= 0x80) {
+                throw new IllegalArgumentException("alphabet isn't ASCII");
+            }
+        }
+
+        this.ctx = ctx;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the context used by the batch processor
+     */
+    public FFX context() {
+        return this.ctx;
+    }
+
+    /**
+     * Encrypt a column
+     *
+     * @param rows       the number of rows in the column
+     * @param validity   the validity bitmap or null if no value is null
+     * @param offsets    the offsets of the values in @data
+     * @param data       the plain texts
+     * @param outOffsets the buffer into which the offsets of the cipher
+     *                   texts are written, or null to not write them
+     * @param outData    the buffer into which the cipher texts are
+     *                   written, at the same offsets as the plain texts
+     * @param twk        the tweak used to perturb the encryption or null
+     *                   to use the default tweak
+     *
+     * @throws IllegalArgumentException if a value is not valid for the
+     *         context. the contents of the output are then undefined
+     */
+    public void encrypt(final int rows, final ByteBuffer validity,
+                        final ByteBuffer offsets, final ByteBuffer data,
+                        final ByteBuffer outOffsets, final ByteBuffer outData,
+                        final byte[] twk) {
+        this.cipher(rows, validity, offsets, data, outOffsets, outData,
+                    twk, true);
+    }
+
+    /**
+     * Decrypt a column
+     *
+     * @param rows       the number of rows in the column
+     * @param validity   the validity bitmap or null if no value is null
+     * @param offsets    the offsets of the values in @data
+     * @param data       the cipher texts
+     * @param outOffsets the buffer into which the offsets of the plain
+     *                   texts are written, or null to not write them
+     * @param outData    the buffer into which the plain texts are
+     *                   written, at the same offsets as the cipher texts
+     * @param twk        the tweak used to perturb the encryption or null
+     *                   to use the default tweak
+     *
+     * @throws IllegalArgumentException if a value is not valid for the
+     *         context. the contents of the output are then undefined
+     *
+     * @see #encrypt(int, ByteBuffer, ByteBuffer, ByteBuffer, ByteBuffer,
+     *               ByteBuffer, byte[])
+     */
+    public void decrypt(final int rows, final ByteBuffer validity,
+                        final ByteBuffer offsets, final ByteBuffer data,
+                        final ByteBuffer outOffsets, final ByteBuffer outData,
+                        final byte[] twk) {
+        this.cipher(rows, validity, offsets, data, outOffsets, outData,
+                    twk, false);
+    }
+
+    private void cipher(final int rows, final ByteBuffer validity,
+                        final ByteBuffer offsets, final ByteBuffer data,
+                        final ByteBuffer outOffsets, final ByteBuffer outData,
+                        final byte[] twk, final boolean encrypt) {
+        /*
+         * slices are indexed from the buffers' positions, and the
+         * offsets are read in Arrow's byte order, whatever the order
+         * of the caller's buffer
+         */
+        final ByteBuffer V = (validity != null) ? validity.slice() : null;
+        final ByteBuffer O = offsets.slice().order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer D = data.slice();
+        final ByteBuffer OD = outData.slice();
+        final int ranges;
+
+        if (rows < 0 || O.capacity() < 4 * (rows + 1L) ||
+            (V != null && V.capacity() < (rows + 7L) / 8)) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (rows > 0 &&
+            (O.getInt(0) < 0 || O.getInt(4 * rows) > D.capacity() ||
+             O.getInt(4 * rows) > OD.capacity())) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        this.ctx.checkDestroyed();
+
+        if (outOffsets != null) {
+            final ByteBuffer OO =
+                outOffsets.slice().order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i <= rows; i++) {
+                OO.putInt(4 * i, O.getInt(4 * i));
+            }
+        }
+
+        ranges = Math.min(this.parallelism, Math.max(rows / MIN_RANGE, 1));
+        if (ranges == 1) {
+            new Range(V, O, D, OD, twk, encrypt).run(0, rows);
+        } else {
+            final CompletableFuture<?>[] f = new CompletableFuture<?>[ranges];
+
+            for (int r = 0; r < ranges; r++) {
+                final int lo = (int)((long)rows * r / ranges);
+                final int hi = (int)((long)rows * (r + 1) / ranges);
+
+                /* each range has its own views of the buffers */
+                f[r] = CompletableFuture.runAsync(
+                    () -> new Range(
+                        (V != null) ? V.duplicate() : null,
+                        O.duplicate().order(ByteOrder.LITTLE_ENDIAN),
+                        D.duplicate(), OD.duplicate(),
+                        twk, encrypt).run(lo, hi),
+                    this.executor);
+            }
+
+            try {
+                CompletableFuture.allOf(f).join();
+            } catch (final CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException)e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        this.ctx.checkDestroyed();
+    }
+
+    /*
+     * the processing of a range of rows of a batch, with the numerals,
+     * plans, and temporary buffers that it allocates once, indexed by
+     * the lengths of the values
+     */
+    private final class Range
+    {
+        private final ByteBuffer V, O, D, OD;
+        private final byte[] twk;
+        private final boolean encrypt;
+
+        private int[] N = new int[0];
+        private FFXPlan[] plans = new FFXPlan[0];
+        private byte[][][] scratch = new byte[0][][];
+
+        Range(final ByteBuffer V, final ByteBuffer O,
+              final ByteBuffer D, final ByteBuffer OD,
+              final byte[] twk, final boolean encrypt) {
+            this.V = V;
+            this.O = O;
+            this.D = D;
+            this.OD = OD;
+            this.twk = twk;
+            this.encrypt = encrypt;
+        }
+
+        void run(final int lo, final int hi) {
+            final FFX ctx = FFXBatch.this.ctx;
+            final FFXMetrics m = FFXMetrics.installed();
+
+            for (int i = lo; i < hi; i++) {
+                final int off = this.O.getInt(4 * i);
+                final int n = this.O.getInt(4 * i + 4) - off;
+                final long start = (m != null) ? System.nanoTime() : 0;
+
+                if (n < 0) {
+                    throw new IllegalArgumentException("invalid offsets");
+                }
+
+                if (this.V != null &&
+                    (this.V.get(i >>> 3) & (1 << (i & 7))) == 0) {
+                    /* a null value is copied as is */
+                    for (int j = 0; j < n; j++) {
+                        this.OD.put(off + j, this.D.get(off + j));
+                    }
+                    continue;
+                }
+
+                if (n >= this.plans.length) {
+                    final int len = Math.max(n + 1, 2 * this.plans.length);
+
+                    this.N = new int[len];
+                    this.plans = Arrays.copyOf(this.plans, len);
+                    this.scratch = Arrays.copyOf(this.scratch, len);
+                }
+                if (this.plans[n] == null) {
+                    this.plans[n] = ctx.plan(n, ctx.check(n, this.twk));
+                    this.scratch[n] = this.plans[n].scratch();
+                }
+
+                for (int j = 0; j < n; j++) {
+                    final int d = ctx.alphabet.digit(
+                        (char)(this.D.get(off + j) & 0xff));
+                    if (d < 0 || d >= ctx.radix) {
+                        throw new IllegalArgumentException("invalid character");
+                    }
+                    this.N[j] = d;
+                }
+
+                this.plans[n].cipher(this.N, 0, this.encrypt,
+                                     this.scratch[n], null);
+
+                for (int j = 0; j < n; j++) {
+                    this.OD.put(off + j,
+                                (byte)ctx.alphabet.character(this.N[j]));
+                }
+
+                if (m != null) {
+                    m.record(ctx.series(m), this.encrypt, n, start, null);
+                }
+            }
+        }
+    }
+}
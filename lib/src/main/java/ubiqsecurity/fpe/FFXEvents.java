@@ -0,0 +1,30 @@
+package ubiqsecurity.fpe;
+
+/*
+ * emits JDK Flight Recorder events for encryptions and decryptions.
+ *
+ * JFR is not available on Java 8, so this version of the class does
+ * nothing. the version in src/main/java11 replaces it, via the
+ * multi-release jar, when the library is run on Java 11 or later.
+ */
+final class FFXEvents
+{
+    private FFXEvents() {
+    }
+
+    /*
+     * begin timing an operation, returning the event to be committed
+     * when the operation completes, or null if events are disabled
+     */
+    static Object begin() {
+        return null;
+    }
+
+    /*
+     * complete the event @e for an operation performed via the plan
+     * @p. @hit indicates whether the plan was already cached
+     */
+    static void commit(final Object e, final FFXPlan p,
+                       final boolean encrypt, final boolean hit) {
+    }
+}
@@ -0,0 +1,22 @@
+package ubiqsecurity.fpe;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * supplies the executor used for asynchronous operations when the
+ * caller doesn't supply one.
+ *
+ * this version returns the common fork-join pool. the version in
+ * src/main/java21 replaces it, via the multi-release jar, with one
+ * that runs each operation in a virtual thread.
+ */
+final class FFXExecutors
+{
+    private FFXExecutors() {
+    }
+
+    static Executor standard() {
+        return ForkJoinPool.commonPool();
+    }
+}
@@ -0,0 +1,62 @@
+package ubiqsecurity.fpe;
+
+import javax.security.auth.Destroyable;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+/**
+ * An expanded AES key that can be shared by many contexts.
+ *
+ * The key schedule is computed once, when the key is constructed, and
+ * is never modified afterward, so any number of contexts (for example,
+ * one per radix or alphabet) and threads may use it at the same time.
+ * Destroying the key overwrites the schedule, after which every context
+ * constructed with it fails.
+ *
+ * @see FF1Key
+ * @see FF3_1Key
+ */
+public class FFXKey implements Destroyable
+{
+    final BlockCipher cipher;
+    private volatile boolean destroyed;
+
+    FFXKey(final byte[] key) {
+        /* all 3 key sizes of AES are supported */
+        switch (key.length) {
+        case 16:
+        case 24:
+        case 32:
+            break;
+        default:
+            throw new IllegalArgumentException("key size error");
+        }
+
+        /*
+         * the underlying cipher for FF1 and FF3-1 is AES in CBC mode
+         * with an IV of 0's. the chaining is done by FFX.prf() so that
+         * the engine, whose state is fixed after initialization, can be
+         * used by several threads at once.
+         */
+        this.cipher = new AESEngine();
+        this.cipher.init(true, new KeyParameter(key));
+    }
+
+    /**
+     * Destroy the key, overwriting its schedule. Subsequent
+     * encryptions and decryptions with any context using the
+     * key throw {@link IllegalStateException}.
+     */
+    @Override
+    public void destroy() {
+        this.destroyed = true;
+        FFX.wipe(this.cipher);
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return this.destroyed;
+    }
+}
@@ -0,0 +1,158 @@
+package ubiqsecurity.fpe;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A list of plain texts that decrypts each element of a list of cipher
+ * texts when it is first accessed.
+ *
+ * Constructing the list decrypts nothing, so presenting a page of a
+ * large result set costs only the decryption of the rows on that page.
+ * Each plain text is kept once it has been decrypted, so accessing it
+ * again costs nothing. A range of elements can be decrypted ahead of
+ * being accessed, for instance the next page, in the background with
+ * {@link #prefetch(int, int)}.
+ *
+ * The list is unmodifiable, and its size is that of the list of cipher
+ * texts, which must not change while the list is used. Null cipher
+ * texts decrypt to null. The list may be used by any number of threads
+ * at once; an element accessed by several threads before its plain text
+ * is kept may be decrypted by more than one of them.
+ */
+public final class FFXLazyList extends AbstractList<String>
+    implements RandomAccess
+{
+    private final FFX ctx;
+    private final List<? extends CharSequence> X;
+    private final byte[] twk;
+    private final Executor executor;
+
+    private final AtomicReferenceArray<String> Y;
+    private final AtomicInteger decrypted = new AtomicInteger();
+
+    /**
+     * Construct a list that prefetches with the default executor
+     *
+     * @param ctx the context with which to decrypt
+     * @param X   the cipher texts
+     * @param twk the tweak used to perturb the encryption or null to
+     *            use the default tweak
+     */
+    public FFXLazyList(final FFX ctx, final List<? extends CharSequence> X,
+                       final byte[] twk) {
+        this(ctx, X, twk, FFXExecutors.standard());
+    }
+
+    /**
+     * Construct a list
+     *
+     * @param ctx      the context with which to decrypt
+     * @param X        the cipher texts
+     * @param twk      the tweak used to perturb the encryption or null
+     *                 to use the default tweak
+     * @param executor the executor in which to prefetch
+     */
+    public FFXLazyList(final FFX ctx, final List<? extends CharSequence> X,
+                       final byte[] twk, final Executor executor) {
+        if (ctx == null || X == null || executor == null) {
+            throw new NullPointerException();
+        }
+
+        this.ctx = ctx;
+        this.X = X;
+        this.twk = (twk != null) ? Arrays.copyOf(twk, twk.length) : null;
+        this.executor = executor;
+        this.Y = new AtomicReferenceArray<>(X.size());
+    }
+
+    /**
+     * @return the context used by the list
+     */
+    public FFX context() {
+        return this.ctx;
+    }
+
+    @Override
+    public int size() {
+        return this.Y.length();
+    }
+
+    /**
+     * Get the plain text of an element, decrypting it if it hasn't
+     * already been decrypted
+     *
+     * @param i the index of the element
+     *
+     * @return  the plain text
+     *
+     * @throws IllegalArgumentException if the cipher text is invalid
+     */
+    @Override
+    public String get(final int i) {
+        final String y = this.Y.get(i);
+        return (y != null) ? y : this.decrypt(i);
+    }
+
+    /**
+     * @param i the index of an element
+     *
+     * @return  whether the element's plain text is kept
+     */
+    public boolean isDecrypted(final int i) {
+        return this.Y.get(i) != null || this.X.get(i) == null;
+    }
+
+    /**
+     * @return the number of elements whose plain texts are kept
+     */
+    public int decrypted() {
+        return this.decrypted.get();
+    }
+
+    /**
+     * Decrypt, in the background, the elements in a range
+     * that haven't already been decrypted
+     *
+     * @param from the index of the first element
+     * @param to   the index after the last element
+     *
+     * @return     a future completed when the elements have been
+     *             decrypted, or with the exception thrown by the
+     *             decryption of an invalid cipher text
+     */
+    public CompletableFuture<Void> prefetch(final int from, final int to) {
+        if (from < 0 || to > this.size() || from > to) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        return CompletableFuture.runAsync(
+            () -> {
+                for (int i = from; i < to; i++) {
+                    this.get(i);
+                }
+            }, this.executor);
+    }
+
+    private String decrypt(final int i) {
+        final CharSequence x = this.X.get(i);
+        final String y;
+
+        if (x == null) {
+            return null;
+        }
+
+        y = this.ctx.decrypt(x.toString(), this.twk);
+        if (this.Y.compareAndSet(i, null, y)) {
+            this.decrypted.incrementAndGet();
+            return y;
+        }
+        return this.Y.get(i);
+    }
+}
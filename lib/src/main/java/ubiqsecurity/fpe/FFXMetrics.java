@@ -0,0 +1,312 @@
+package ubiqsecurity.fpe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms describing the encryptions and decryptions
+ * performed by all contexts.
+ *
+ * Metrics are disabled until an instance is installed with
+ * {@link #install(FFXMetrics)}; until then, the cost to each operation is
+ * a single read of a static field. Once installed, each operation updates
+ * a handful of {@link LongAdder}s belonging to the algorithm and radix of
+ * the context:
+ * <ul>
+ * <li>the number of encryptions and decryptions</li>
+ * <li>a histogram of input lengths</li>
+ * <li>a histogram of latencies</li>
+ * <li>for a sample of operations, the time spent converting between
+ *     characters, numerals, and integers, in the AES-based PRF, and in
+ *     modular arithmetic</li>
+ * </ul>
+ * The metrics are exported via {@link #snapshot()}, from which they may
+ * be forwarded to any monitoring system.
+ */
+public final class FFXMetrics
+{
+    /** Time spent converting between characters, numerals, and integers */
+    public static final int CONVERT = 0;
+    /** Time spent in the AES-based PRF */
+    public static final int PRF = 1;
+    /** Time spent in modular arithmetic */
+    public static final int ARITHMETIC = 2;
+
+    /**
+     * The number of buckets in the length histogram. Bucket i counts
+     * inputs of length i, except for the last, which counts all inputs
+     * of that length or longer.
+     */
+    public static final int LENGTH_BUCKETS = 65;
+    /**
+     * The number of buckets in the latency histogram. Bucket i counts
+     * operations taking at least 2**i but less than 2**(i+1) nanoseconds;
+     * bucket 0 also counts operations that took less than 1 nanosecond.
+     */
+    public static final int LATENCY_BUCKETS = 40;
+
+    private static final int PHASES = 3;
+
+    private static volatile FFXMetrics installed;
+
+    /*
+     * accumulates the time spent in each phase
+     * of an operation selected for sampling
+     */
+    static final class Timer
+    {
+        private final long[] phase = new long[PHASES];
+        private long last;
+
+        Timer(final long start) {
+            this.last = start;
+        }
+
+        /*
+         * attribute the time since the last call to @p
+         */
+        void lap(final int p) {
+            final long now = System.nanoTime();
+            this.phase[p] += now - this.last;
+            this.last = now;
+        }
+    }
+
+    /*
+     * the metrics for one algorithm and radix
+     */
+    static final class Series
+    {
+        final FFXMetrics owner;
+        final String algorithm;
+        final int radix;
+
+        final LongAdder encrypts = new LongAdder();
+        final LongAdder decrypts = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder sampled = new LongAdder();
+        final LongAdder[] lengths = adders(LENGTH_BUCKETS);
+        final LongAdder[] latencies = adders(LATENCY_BUCKETS);
+        final LongAdder[] phases = adders(PHASES);
+
+        Series(final FFXMetrics owner, final String algorithm, final int radix) {
+            this.owner = owner;
+            this.algorithm = algorithm;
+            this.radix = radix;
+        }
+
+        private static LongAdder[] adders(final int n) {
+            final LongAdder[] a = new LongAdder[n];
+            for (int i = 0; i < n; i++) {
+                a[i] = new LongAdder();
+            }
+            return a;
+        }
+
+        private static long[] sum(final LongAdder[] a) {
+            final long[] s = new long[a.length];
+            for (int i = 0; i < a.length; i++) {
+                s[i] = a[i].sum();
+            }
+            return s;
+        }
+    }
+
+    /**
+     * The metrics for one algorithm and radix at a point in time
+     */
+    public static final class Snapshot
+    {
+        private final String algorithm;
+        private final int radix;
+        private final long encrypts, decrypts, nanos, sampled;
+        private final long[] lengths, latencies, phases;
+
+        private Snapshot(final Series s) {
+            this.algorithm = s.algorithm;
+            this.radix = s.radix;
+            this.encrypts = s.encrypts.sum();
+            this.decrypts = s.decrypts.sum();
+            this.nanos = s.nanos.sum();
+            this.sampled = s.sampled.sum();
+            this.lengths = Series.sum(s.lengths);
+            this.latencies = Series.sum(s.latencies);
+            this.phases = Series.sum(s.phases);
+        }
+
+        /**
+         * @return the name of the algorithm, "FF1" or "FF3-1"
+         */
+        public String algorithm() {
+            return this.algorithm;
+        }
+
+        /**
+         * @return the radix
+         */
+        public int radix() {
+            return this.radix;
+        }
+
+        /**
+         * @return the number of encryptions
+         */
+        public long encrypts() {
+            return this.encrypts;
+        }
+
+        /**
+         * @return the number of decryptions
+         */
+        public long decrypts() {
+            return this.decrypts;
+        }
+
+        /**
+         * @return the total time, in nanoseconds, spent in all operations
+         */
+        public long nanos() {
+            return this.nanos;
+        }
+
+        /**
+         * @return the counts of inputs by length;
+         *         see {@link FFXMetrics#LENGTH_BUCKETS}
+         */
+        public long[] lengths() {
+            return this.lengths.clone();
+        }
+
+        /**
+         * @return the counts of operations by latency;
+         *         see {@link FFXMetrics#LATENCY_BUCKETS}
+         */
+        public long[] latencies() {
+            return this.latencies.clone();
+        }
+
+        /**
+         * @return the number of operations for which the
+         *         time spent in each phase was measured
+         */
+        public long sampled() {
+            return this.sampled;
+        }
+
+        /**
+         * @param phase one of {@link FFXMetrics#CONVERT},
+         *              {@link FFXMetrics#PRF}, or
+         *              {@link FFXMetrics#ARITHMETIC}
+         *
+         * @return      the total time, in nanoseconds, spent in the given
+         *              phase by the sampled operations
+         */
+        public long phaseNanos(final int phase) {
+            return this.phases[phase];
+        }
+    }
+
+    private final ConcurrentHashMap<String, Series> series;
+    private final int sample;
+
+    /**
+     * Construct metrics that measure the phases of 1 in 64 operations
+     */
+    public FFXMetrics() {
+        this(64);
+    }
+
+    /**
+     * Construct metrics
+     *
+     * @param sample the time spent in each phase is measured for 1 in
+     *               @sample operations, or for every operation if 1
+     */
+    public FFXMetrics(final int sample) {
+        if (sample < 1) {
+            throw new IllegalArgumentException("invalid sample rate");
+        }
+
+        this.series = new ConcurrentHashMap<>();
+        this.sample = sample;
+    }
+
+    /**
+     * Begin recording metrics for all contexts into @m, replacing any
+     * previously installed metrics.
+     *
+     * @param m the metrics, or null to stop recording
+     */
+    public static void install(final FFXMetrics m) {
+        installed = m;
+    }
+
+    /**
+     * @return the installed metrics, or null if none are installed
+     */
+    public static FFXMetrics installed() {
+        return installed;
+    }
+
+    /**
+     * @return the current values of the metrics, one per
+     *         algorithm and radix for which operations were recorded
+     */
+    public List<Snapshot> snapshot() {
+        final List<Snapshot> l = new ArrayList<>();
+        for (Series s : this.series.values()) {
+            l.add(new Snapshot(s));
+        }
+        return Collections.unmodifiableList(l);
+    }
+
+    /*
+     * return the series for an algorithm and radix. this is called
+     * once per context, which caches the result
+     */
+    Series series(final String algorithm, final int radix) {
+        return this.series.computeIfAbsent(
+            algorithm + "/" + radix, k -> new Series(this, algorithm, radix));
+    }
+
+    /*
+     * return a timer for an operation beginning at @start if that
+     * operation is sampled, or null otherwise
+     */
+    Timer timer(final long start) {
+        if (this.sample > 1 &&
+            ThreadLocalRandom.current().nextInt(this.sample) != 0) {
+            return null;
+        }
+        return new Timer(start);
+    }
+
+    /*
+     * record an operation on an input of length @n that began at
+     * @start. @t, if not null, is the operation's timer, to which
+     * any time since its last lap is attributed as conversion.
+     */
+    void record(final Series s, final boolean encrypt, final int n,
+                final long start, final Timer t) {
+        final long now = System.nanoTime();
+        final long nanos = now - start;
+
+        (encrypt ? s.encrypts : s.decrypts).increment();
+        s.nanos.add(nanos);
+        s.lengths[Math.min(n, LENGTH_BUCKETS - 1)].increment();
+        s.latencies[Math.min(63 - Long.numberOfLeadingZeros(Math.max(nanos, 1)),
+                             LATENCY_BUCKETS - 1)].increment();
+
+        if (t != null) {
+            t.phase[CONVERT] += now - t.last;
+            s.sampled.increment();
+            for (int i = 0; i < PHASES; i++) {
+                s.phases[i].add(t.phase[i]);
+            }
+        }
+    }
+}
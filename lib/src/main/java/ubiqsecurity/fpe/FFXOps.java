@@ -0,0 +1,64 @@
+package ubiqsecurity.fpe;
+
+/*
+ * the innermost loops of the algorithms: exclusive-or and reversal of
+ * byte arrays, and the division of longs by a divisor that is fixed
+ * for the lifetime of a context or plan.
+ *
+ * this version uses only Java 8 APIs. the version in src/main/java17
+ * replaces it, via the multi-release jar, when the library runs on
+ * Java 17 or later. the two must produce identical results.
+ */
+final class FFXOps
+{
+    private FFXOps() {
+    }
+
+    /*
+     * perform an exclusive-or of @len bytes of @s1 and @s2, storing
+     * the result in @d. @d may be the same as either source, but may
+     * not otherwise overlap them
+     */
+    static void xor(final byte[] d, final int doff,
+                    final byte[] s1, final int s1off,
+                    final byte[] s2, final int s2off,
+                    final int len) {
+        for (int i = 0; i < len; i++) {
+            d[doff + i] = (byte)(s1[s1off + i] ^ s2[s2off + i]);
+        }
+    }
+
+    /*
+     * reverse the bytes of @src into @dst. @dst and @src may
+     * point to the same location but may not otherwise overlap
+     */
+    static void rev(final byte[] dst, final byte[] src) {
+        int i;
+
+        for (i = 0; i < src.length / 2; i++) {
+            final byte t = src[i];
+            dst[i] = src[src.length - i - 1];
+            dst[src.length - i - 1] = t;
+        }
+
+        if (src.length % 2 == 1) {
+            dst[i] = src[i];
+        }
+    }
+
+    /*
+     * return a value that allows div() to divide by @d without a
+     * division instruction, or 0 if that is not possible for @d
+     */
+    static long reciprocal(final long d) {
+        return 0;
+    }
+
+    /*
+     * return @x / @d, where @x is not negative, @d is positive,
+     * and @r is the value returned by reciprocal() for @d
+     */
+    static long div(final long x, final long d, final long r) {
+        return x / d;
+    }
+}
@@ -0,0 +1,86 @@
+package ubiqsecurity.fpe;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/*
+ * the parameters of a context for inputs of one length and one tweak:
+ * everything that the algorithm derives from the radix, the length of
+ * the input, and the tweak. contexts construct plans on demand and
+ * cache them (see FFX.planFor), so that runs of inputs of the same
+ * length and tweak don't recompute them. a plan is immutable and may
+ * be shared by any number of threads.
+ */
+abstract class FFXPlan
+{
+    final FFX ctx;
+    final int n;
+    final byte[] twk;
+    /* radix**n, also as a long, or 0 if it doesn't fit in one */
+    final BigInteger domain;
+    final long size;
+    /* the number of bytes needed to hold any value less than radix**n */
+    final int bytes;
+
+    FFXPlan(final FFX ctx, final int n, final byte[] twk) {
+        this.ctx = ctx;
+        this.n = n;
+        this.twk = Arrays.copyOf(twk, twk.length);
+
+        this.domain = BigInteger.valueOf(ctx.radix).pow(n);
+        this.size = (this.domain.bitLength() < 64) ? this.domain.longValue() : 0;
+        this.bytes = FFX.bytes(this.domain);
+    }
+
+    /*
+     * encrypt or decrypt, in place, the numerals of @X beginning at @off.
+     * the number of numerals is the length for which the plan was
+     * prepared. the time spent in each phase of the operation is
+     * attributed to @t, if @t is not null
+     */
+    abstract void cipher(int[] X, final int off, final boolean encrypt,
+                         final FFXMetrics.Timer t);
+
+    /*
+     * allocate the temporary buffers used by an operation. callers that
+     * process many values with the plan may allocate them once and pass
+     * them to the following function, which is otherwise the same as
+     * the one above. the buffers may not be used by two operations at
+     * the same time
+     */
+    abstract byte[][] scratch();
+
+    abstract void cipher(int[] X, final int off, final boolean encrypt,
+                         final byte[][] s, final FFXMetrics.Timer t);
+
+    /*
+     * encrypt or decrypt the integer @x, which is less than @size, as
+     * the value of its numerals. algorithms that can split the integer
+     * arithmetically override this; the default converts to numerals
+     */
+    long cipher(final long x, final boolean encrypt,
+                final FFXMetrics.Timer t) {
+        final int[] X = new int[this.n];
+
+        this.ctx.strl(x, X, 0, this.n, false);
+        this.cipher(X, 0, encrypt, t);
+        return this.ctx.numl(X, 0, this.n, false);
+    }
+
+    /*
+     * the arithmetic used by the plan, "long" or "BigInteger"
+     */
+    abstract String backend();
+
+    void cipher(int[] X, final int off, final boolean encrypt) {
+        this.cipher(X, off, encrypt, null);
+    }
+
+    /*
+     * determine whether the plan is the one for inputs of
+     * length @n that are processed with the tweak @twk
+     */
+    boolean matches(final int n, final byte[] twk) {
+        return this.n == n && Arrays.equals(this.twk, twk);
+    }
+}
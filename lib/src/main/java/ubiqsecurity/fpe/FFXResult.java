@@ -0,0 +1,94 @@
+package ubiqsecurity.fpe;
+
+import java.util.Arrays;
+
+/**
+ * The outcome of an encryption or decryption that reports failure by
+ * status rather than by exception.
+ *
+ * A result is meant to be reused for many operations by one thread.
+ * Along with the status and the output of the most recent operation, it
+ * holds the scratch space used by those operations, so that scratch
+ * space isn't allocated anew for every input. That space holds the
+ * plain text, as numerals, during an operation and is zeroed when the
+ * operation completes, whether or not it succeeds. The output itself is
+ * held until the next operation or until {@link #clear} is called.
+ *
+ * @see FFX#tryEncrypt(CharSequence, byte[], FFXResult)
+ * @see FFX#tryDecrypt(CharSequence, byte[], FFXResult)
+ */
+public final class FFXResult
+{
+    /** The operation succeeded */
+    public static final int OK = 0;
+    /** The length of the input is outside of the allowed range */
+    public static final int INVALID_LENGTH = 1;
+    /** The length of the tweak is outside of the allowed range */
+    public static final int INVALID_TWEAK_LENGTH = 2;
+    /** The input contains a character that isn't in the alphabet */
+    public static final int INVALID_CHARACTER = 3;
+    /** The context has been destroyed */
+    public static final int DESTROYED = 4;
+
+    private int status;
+    private String value;
+    private int[] numerals = new int[0];
+    /* the number of numerals used by the operation in progress */
+    private int used;
+
+    /**
+     * @return the status of the most recent operation
+     */
+    public int status() {
+        return this.status;
+    }
+
+    /**
+     * @return true if the most recent operation succeeded
+     */
+    public boolean ok() {
+        return this.status == OK;
+    }
+
+    /**
+     * @return the output of the most recent operation,
+     *         or null if it failed
+     */
+    public String value() {
+        return this.value;
+    }
+
+    /**
+     * Forget the output of the most recent operation, e.g. a plain text
+     * that is no longer needed. The string itself can't be overwritten,
+     * but is no longer reachable through the result.
+     */
+    public void clear() {
+        this.status = OK;
+        this.value = null;
+        Arrays.fill(this.numerals, 0);
+    }
+
+    /*
+     * record the outcome of an operation, which is done with the
+     * numerals, so they are zeroed
+     */
+    boolean set(final int status, final String value) {
+        Arrays.fill(this.numerals, 0, this.used, 0);
+        this.used = 0;
+        this.status = status;
+        this.value = value;
+        return status == OK;
+    }
+
+    /*
+     * return a buffer of at least @n numerals
+     */
+    int[] numerals(final int n) {
+        if (this.numerals.length < n) {
+            this.numerals = new int[n];
+        }
+        this.used = n;
+        return this.numerals;
+    }
+}
@@ -0,0 +1,384 @@
+package ubiqsecurity.fpe;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * Warm-up and self-test of the library's code paths.
+ *
+ * Right after a process starts, encryption and decryption run in the
+ * interpreter or in code compiled without full optimization, and take
+ * many times longer than they do once the JIT compiler has finished with
+ * them. A warm-up performs synthetic round trips, each an encryption and
+ * a decryption of random input, with a list of contexts at representative
+ * lengths, so that the compiler finishes its work before real traffic
+ * arrives.
+ *
+ * Before and after the round trips, known-answer vectors for FF1 and
+ * FF3-1 are checked, so that a fault in the compiled code is detected as
+ * well as one in the interpreted code. Each round trip must also return
+ * its input. Either failure completes the warm-up with an
+ * IllegalStateException.
+ *
+ * Round trips run in batches. Compilation is considered to have settled
+ * once the total time spent by the JIT compiler, as reported by the
+ * {@link CompilationMXBean}, has grown by less than a millisecond over
+ * several consecutive batches. That total is for the whole JVM, so
+ * compilation of the application's own code, e.g. while it starts up
+ * alongside the warm-up, delays the point at which the library's code
+ * is considered settled; it is an upper bound rather than an exact
+ * measure. A listener may be told at the moment compilation settles,
+ * and may stop the warm-up there rather than performing all of its
+ * round trips. Operations performed by a warm-up are recorded by any
+ * installed {@link FFXMetrics}.
+ */
+public final class FFXWarmup
+{
+    /* the number of round trips per context and length in a batch */
+    private static final int BATCH = 64;
+    /* the number of quiet batches after which compilation has settled */
+    private static final int QUIET = 10;
+    /* the lengths used when none are given, within each context's limits */
+    private static final int[] LENGTHS = { 6, 9, 16, 32, 64 };
+
+    /*
+     * known answers: algorithm, key, tweak, radix, plain and cipher text.
+     * the FF1 vectors are from NIST's samples
+     */
+    private static final Object[][] VECTORS = {
+        { "FF1", "2b7e151628aed2a6abf7158809cf4f3c", "", 10,
+          "0123456789", "2433477484" },
+        { "FF1", "2b7e151628aed2a6abf7158809cf4f3c", "39383736353433323130", 10,
+          "0123456789", "6124200773" },
+        { "FF1", "2b7e151628aed2a6abf7158809cf4f3c", "3737373770717273373737", 36,
+          "0123456789abcdefghi", "a9tv40mll9kdu509eum" },
+        { "FF1", "2b7e151628aed2a6abf7158809cf4f3cef4359d8d580aa4f", "", 10,
+          "0123456789", "2830668132" },
+        { "FF3-1", "ef4359d8d580aa4f7f036d6f04fc6a94", "00000000000000", 10,
+          "890121234567890000", "075870132022772250" },
+        { "FF3-1", "ef4359d8d580aa4f7f036d6f04fc6a94", "37373737707172", 36,
+          "89012123456789abcde", "dwb01mx9aa2lmi3hrfm" },
+    };
+
+    /**
+     * The outcome of a warm-up
+     */
+    public static final class Report
+    {
+        private final long roundTrips, nanos, compilationMillis;
+        private final long settledAfter;
+        private final double firstBatchNanos, lastBatchNanos;
+
+        private Report(final long roundTrips, final long nanos,
+                       final long compilationMillis, final long settledAfter,
+                       final double firstBatchNanos,
+                       final double lastBatchNanos) {
+            this.roundTrips = roundTrips;
+            this.nanos = nanos;
+            this.compilationMillis = compilationMillis;
+            this.settledAfter = settledAfter;
+            this.firstBatchNanos = firstBatchNanos;
+            this.lastBatchNanos = lastBatchNanos;
+        }
+
+        /**
+         * @return the number of round trips performed
+         */
+        public long roundTrips() {
+            return this.roundTrips;
+        }
+
+        /**
+         * @return the time taken by the warm-up, in nanoseconds
+         */
+        public long nanos() {
+            return this.nanos;
+        }
+
+        /**
+         * @return the total time spent by the JIT compiler since the
+         *         process started, in milliseconds, or -1 if the JVM
+         *         doesn't report it
+         */
+        public long compilationMillis() {
+            return this.compilationMillis;
+        }
+
+        /**
+         * @return whether compilation settled during the warm-up
+         */
+        public boolean settled() {
+            return this.settledAfter >= 0;
+        }
+
+        /**
+         * @return the number of round trips after which compilation
+         *         settled, or -1 if it didn't
+         */
+        public long settledAfter() {
+            return this.settledAfter;
+        }
+
+        /**
+         * @return the average time of a round trip in the first batch,
+         *         in nanoseconds
+         */
+        public double firstBatchNanos() {
+            return this.firstBatchNanos;
+        }
+
+        /**
+         * @return the average time of a round trip in the last batch,
+         *         in nanoseconds
+         */
+        public double lastBatchNanos() {
+            return this.lastBatchNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "roundTrips=%d nanos=%d compilationMillis=%d " +
+                "settledAfter=%d firstBatchNanos=%.0f lastBatchNanos=%.0f",
+                this.roundTrips, this.nanos, this.compilationMillis,
+                this.settledAfter, this.firstBatchNanos, this.lastBatchNanos);
+        }
+    }
+
+    private FFXWarmup() {
+    }
+
+    /**
+     * Warm up in a background thread
+     *
+     * @param contexts   the contexts with which to perform round trips
+     * @param roundTrips the number of round trips to perform with each
+     *                   context at each length
+     * @param lengths    the lengths of the inputs. if none are given,
+     *                   lengths from 6 to 64 are used, limited to those
+     *                   allowed by each context
+     *
+     * @return           a future completed with the report when the
+     *                   warm-up finishes, or with the exception that
+     *                   caused it to fail
+     */
+    public static CompletableFuture<Report> start(
+        final List<? extends FFX> contexts, final int roundTrips,
+        final int... lengths) {
+        return start(contexts, roundTrips, null, lengths);
+    }
+
+    /**
+     * Warm up in a background thread, telling a listener when
+     * compilation settles
+     *
+     * @param contexts   the contexts with which to perform round trips
+     * @param roundTrips the maximum number of round trips to perform with
+     *                   each context at each length
+     * @param settled    called in the background thread, at the moment
+     *                   compilation settles, with a report of the warm-up
+     *                   so far. the warm-up stops there if it returns
+     *                   true. it isn't called if compilation doesn't
+     *                   settle. may be null
+     * @param lengths    the lengths of the inputs, as for
+     *                   {@link #start(List, int, int...)}
+     *
+     * @return           a future completed with the report when the
+     *                   warm-up finishes, or with the exception that
+     *                   caused it to fail
+     */
+    public static CompletableFuture<Report> start(
+        final List<? extends FFX> contexts, final int roundTrips,
+        final Predicate<? super Report> settled, final int... lengths) {
+        final List<FFX> C = new ArrayList<>(contexts);
+        final CompletableFuture<Report> f = new CompletableFuture<>();
+        final Thread t = new Thread(() -> {
+                try {
+                    f.complete(run(C, roundTrips, settled, lengths));
+                } catch (final Throwable e) {
+                    f.completeExceptionally(e);
+                }
+            }, "ubiq-fpe-warmup");
+
+        /* a warm-up must not keep the process from exiting */
+        t.setDaemon(true);
+        t.start();
+
+        return f;
+    }
+
+    /**
+     * Warm up in the calling thread
+     *
+     * @param contexts   the contexts with which to perform round trips
+     * @param roundTrips the number of round trips to perform with each
+     *                   context at each length
+     * @param lengths    the lengths of the inputs, as for
+     *                   {@link #start(List, int, int...)}
+     *
+     * @return           the report
+     *
+     * @throws IllegalStateException if a known-answer vector or a round
+     *         trip doesn't produce the expected result
+     */
+    public static Report run(final List<? extends FFX> contexts,
+                             final int roundTrips, final int... lengths) {
+        return run(contexts, roundTrips, null, lengths);
+    }
+
+    /**
+     * Warm up in the calling thread, telling a listener when
+     * compilation settles
+     *
+     * @param contexts   the contexts with which to perform round trips
+     * @param roundTrips the maximum number of round trips to perform with
+     *                   each context at each length
+     * @param settled    the listener, as for
+     *                   {@link #start(List, int, Predicate, int...)}
+     * @param lengths    the lengths of the inputs, as for
+     *                   {@link #start(List, int, int...)}
+     *
+     * @return           the report
+     *
+     * @throws IllegalStateException if a known-answer vector or a round
+     *         trip doesn't produce the expected result
+     */
+    public static Report run(final List<? extends FFX> contexts,
+                             final int roundTrips,
+                             final Predicate<? super Report> settled,
+                             final int... lengths) {
+        final CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+        final boolean timed = jit != null &&
+            jit.isCompilationTimeMonitoringSupported();
+        final Random rng = new Random();
+        final long start = System.nanoTime();
+        long compiled = timed ? jit.getTotalCompilationTime() : -1;
+        long done = 0, after = -1;
+        double first = 0, last = 0;
+        int quiet = 0;
+
+        if (roundTrips < 0) {
+            throw new IllegalArgumentException("invalid number of round trips");
+        }
+
+        selfTest();
+
+        for (int b = 0; b < roundTrips; b += BATCH) {
+            final int n = Math.min(BATCH, roundTrips - b);
+            final long t0 = System.nanoTime();
+            long batch = 0;
+
+            for (final FFX ctx : contexts) {
+                for (final int len : lengths(ctx, lengths)) {
+                    for (int i = 0; i < n; i++) {
+                        roundTrip(ctx, len, rng);
+                    }
+                    batch += n;
+                }
+            }
+
+            done += batch;
+            last = (batch > 0) ? (double)(System.nanoTime() - t0) / batch : 0;
+            if (b == 0) {
+                first = last;
+            }
+
+            if (timed) {
+                final long c = jit.getTotalCompilationTime();
+
+                quiet = (c - compiled < 1) ? quiet + 1 : 0;
+                compiled = c;
+                if (quiet >= QUIET && after < 0) {
+                    after = done;
+                    if (settled != null &&
+                        settled.test(new Report(done, System.nanoTime() - start,
+                                                c, after, first, last))) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        selfTest();
+
+        return new Report(done, System.nanoTime() - start,
+                          timed ? jit.getTotalCompilationTime() : -1,
+                          after, first, last);
+    }
+
+    /**
+     * Check the known-answer vectors
+     *
+     * @throws IllegalStateException if a vector doesn't
+     *         produce the expected result
+     */
+    public static void selfTest() {
+        for (final Object[] v : VECTORS) {
+            final byte[] key = hex((String)v[1]);
+            final byte[] twk = hex((String)v[2]);
+            final int radix = (Integer)v[3];
+            final FFX ctx = v[0].equals("FF1")
+                ? new FF1(key, twk, 0, 0, radix)
+                : new FF3_1(key, twk, radix);
+
+            try {
+                if (!ctx.encrypt((String)v[4]).equals(v[5]) ||
+                    !ctx.decrypt((String)v[5]).equals(v[4])) {
+                    throw new IllegalStateException(
+                        "self-test failed: " + v[0] + " " + v[5]);
+                }
+            } finally {
+                ctx.destroy();
+            }
+        }
+    }
+
+    /*
+     * the lengths at which to warm up @ctx: @given, or the
+     * default lengths that @ctx allows
+     */
+    private static int[] lengths(final FFX ctx, final int[] given) {
+        final int[] L = (given != null && given.length > 0) ? given : LENGTHS;
+        final int[] R = new int[L.length];
+        int k = 0;
+
+        for (final int n : L) {
+            if (L != LENGTHS || (n >= ctx.txtmin && n <= ctx.txtmax)) {
+                R[k++] = n;
+            }
+        }
+
+        /* every context allows its minimum length */
+        return (k > 0) ? Arrays.copyOf(R, k)
+            : new int[] { (int)ctx.txtmin };
+    }
+
+    private static void roundTrip(final FFX ctx, final int n,
+                                  final Random rng) {
+        final char[] c = new char[n];
+        final String PT;
+
+        for (int i = 0; i < n; i++) {
+            c[i] = ctx.alphabet.character(rng.nextInt(ctx.radix));
+        }
+        PT = new String(c);
+
+        if (!ctx.decrypt(ctx.encrypt(PT)).equals(PT)) {
+            throw new IllegalStateException("round trip failed: " + PT);
+        }
+    }
+
+    private static byte[] hex(final String s) {
+        final byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte)Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+        }
+        return b;
+    }
+}
@@ -0,0 +1,319 @@
+package ubiqsecurity.fpe;
+
+/**
+ * A format, such as that of a social security number, in which some
+ * characters are encrypted and the rest are fixed.
+ *
+ * A template is a string in which each of the following characters
+ * stands for a character to be encrypted, and any other character
+ * stands for itself:
+ * <ul>
+ * <li>{@code d} or {@code 9}: a digit</li>
+ * <li>{@code A}: an uppercase letter, A to Z</li>
+ * <li>{@code a}: a lowercase letter, a to z</li>
+ * <li>{@code *}: any character of the context's alphabet</li>
+ * </ul>
+ * A backslash causes the character following it to stand for itself.
+ * For example, a social security number has the template
+ * {@code ddd-dd-dddd} and a phone number {@code (999) 999-9999}.
+ *
+ * The characters to be encrypted are converted to numerals, encrypted
+ * together by a single operation of the context, and written, along
+ * with the fixed characters, into a single output buffer. Inputs are
+ * checked against the template: fixed characters must be present, and
+ * encrypted characters must belong to their class. As the cipher text
+ * must also match the template, each class in the template, other than
+ * {@code *}, must consist of exactly the characters of the context's
+ * alphabet; a template such as {@code ddd-dd-dddd} is used with a radix
+ * 10 context whose alphabet is the digits.
+ *
+ * Templates are immutable and may be used by any number of threads with
+ * any number of contexts. Compiling a template isn't cached, so a
+ * template should be compiled once and kept for as long as it is used.
+ */
+public final class FormatTemplate
+{
+    private static final String DIGITS = "0123456789";
+    private static final String UPPER = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final String LOWER = "abcdefghijklmnopqrstuvwxyz";
+
+    /* the classes, indexed by the values in @slot */
+    private static final String[] CLASSES = { null, DIGITS, UPPER, LOWER };
+    private static final int ANY = 0;
+
+    private final String template;
+    /*
+     * for each position of the format, the class of the character to
+     * be encrypted there, or -1 if the character is fixed, in which
+     * case @fixed holds it
+     */
+    private final byte[] slot;
+    private final char[] fixed;
+    private final int slots;
+    /* a bit set of the classes used by the template */
+    private final int classes;
+    /*
+     * the radix that a context must have to match the template, being
+     * the size of the classes used by it, or 0 if any radix matches
+     */
+    private final int radix;
+    /*
+     * the alphabet of the last context found to match the template.
+     * alphabets are shared by all contexts using the same characters,
+     * so a context with this alphabet and @radix needn't be checked.
+     */
+    private volatile Alphabet matched;
+
+    private FormatTemplate(final String template) {
+        int len = 0, slots = 0, classes = 0, radix = 0;
+
+        for (int i = 0; i < template.length(); i++, len++) {
+            if (template.charAt(i) == '\\') {
+                if (++i == template.length()) {
+                    throw new IllegalArgumentException("invalid template");
+                }
+            }
+        }
+
+        this.slot = new byte[len];
+        this.fixed = new char[len];
+
+        for (int i = 0, j = 0; i < template.length(); i++, j++) {
+            final char c = template.charAt(i);
+            final int s;
+
+            switch (c) {
+            case '\\':
+                this.fixed[j] = template.charAt(++i);
+                s = -1;
+                break;
+            case 'd': case '9':
+                s = 1;
+                break;
+            case 'A':
+                s = 2;
+                break;
+            case 'a':
+                s = 3;
+                break;
+            case '*':
+                s = ANY;
+                break;
+            default:
+                this.fixed[j] = c;
+                s = -1;
+                break;
+            }
+
+            this.slot[j] = (byte)s;
+            if (s >= 0) {
+                slots++;
+                classes |= 1 << s;
+                if (s != ANY) {
+                    radix = CLASSES[s].length();
+                }
+            }
+        }
+
+        this.template = template;
+        this.slots = slots;
+        this.classes = classes;
+        this.radix = radix;
+    }
+
+    /**
+     * Compile a template
+     *
+     * @param template the template
+     *
+     * @return         the compiled template
+     */
+    public static FormatTemplate compile(final String template) {
+        return new FormatTemplate(template);
+    }
+
+    /**
+     * @return the template from which this was compiled
+     */
+    public String template() {
+        return this.template;
+    }
+
+    /**
+     * @return the length of the inputs and outputs matching the template
+     */
+    public int length() {
+        return this.slot.length;
+    }
+
+    /**
+     * @return the number of characters that are encrypted
+     */
+    public int slots() {
+        return this.slots;
+    }
+
+    /**
+     * Encrypt an input matching the template, using the context's
+     * default tweak
+     *
+     * @param ctx the context with which to encrypt
+     * @param X   the plain text
+     *
+     * @return    the cipher text, which matches the template
+     */
+    public String encrypt(final FFX ctx, final CharSequence X) {
+        return this.encrypt(ctx, X, null);
+    }
+
+    /**
+     * Encrypt an input matching the template
+     *
+     * @param ctx the context with which to encrypt
+     * @param X   the plain text
+     * @param twk the tweak or null to use the context's default tweak
+     *
+     * @return    the cipher text, which matches the template
+     */
+    public String encrypt(final FFX ctx, final CharSequence X,
+                          final byte[] twk) {
+        final char[] Y = new char[this.slot.length];
+        this.cipher(ctx, X, twk, Y, 0, true);
+        return new String(Y);
+    }
+
+    /**
+     * Encrypt an input matching the template into a buffer
+     *
+     * @param ctx the context with which to encrypt
+     * @param X   the plain text
+     * @param twk the tweak or null to use the context's default tweak
+     * @param dst the buffer into which the cipher text is written
+     * @param off the position in @dst at which to write the cipher text
+     */
+    public void encrypt(final FFX ctx, final CharSequence X, final byte[] twk,
+                        final char[] dst, final int off) {
+        this.cipher(ctx, X, twk, dst, off, true);
+    }
+
+    /**
+     * Decrypt an input matching the template, using the context's
+     * default tweak
+     *
+     * @param ctx the context with which to decrypt
+     * @param X   the cipher text
+     *
+     * @return    the plain text
+     */
+    public String decrypt(final FFX ctx, final CharSequence X) {
+        return this.decrypt(ctx, X, null);
+    }
+
+    /**
+     * Decrypt an input matching the template
+     *
+     * @param ctx the context with which to decrypt
+     * @param X   the cipher text
+     * @param twk the tweak or null to use the context's default tweak
+     *
+     * @return    the plain text
+     */
+    public String decrypt(final FFX ctx, final CharSequence X,
+                          final byte[] twk) {
+        final char[] Y = new char[this.slot.length];
+        this.cipher(ctx, X, twk, Y, 0, false);
+        return new String(Y);
+    }
+
+    /**
+     * Decrypt an input matching the template into a buffer
+     *
+     * @param ctx the context with which to decrypt
+     * @param X   the cipher text
+     * @param twk the tweak or null to use the context's default tweak
+     * @param dst the buffer into which the plain text is written
+     * @param off the position in @dst at which to write the plain text
+     */
+    public void decrypt(final FFX ctx, final CharSequence X, final byte[] twk,
+                        final char[] dst, final int off) {
+        this.cipher(ctx, X, twk, dst, off, false);
+    }
+
+    /*
+     * check that each class used by the template consists
+     * of the characters of the context's alphabet
+     */
+    private void check(final FFX ctx) {
+        if (this.radix == 0 ||
+            (ctx.alphabet == this.matched && ctx.radix == this.radix)) {
+            return;
+        }
+
+        for (int c = 1; c < CLASSES.length; c++) {
+            if ((this.classes & (1 << c)) != 0) {
+                final String s = CLASSES[c];
+                boolean ok = (s.length() == ctx.radix);
+
+                for (int i = 0; ok && i < s.length(); i++) {
+                    final int d = ctx.alphabet.digit(s.charAt(i));
+                    ok = (d >= 0 && d < ctx.radix);
+                }
+
+                if (!ok) {
+                    throw new IllegalArgumentException(
+                        "template doesn't match the alphabet");
+                }
+            }
+        }
+
+        this.matched = ctx.alphabet;
+    }
+
+    private void cipher(final FFX ctx, final CharSequence X, final byte[] twk,
+                        final char[] dst, final int off,
+                        final boolean encrypt) {
+        final int[] N = new int[this.slots];
+
+        if (X.length() != this.slot.length) {
+            throw new IllegalArgumentException("invalid input length");
+        }
+        if (off < 0 || off > dst.length - this.slot.length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        this.check(ctx);
+
+        for (int i = 0, k = 0; i < this.slot.length; i++) {
+            final char c = X.charAt(i);
+            final int s = this.slot[i];
+
+            if (s < 0) {
+                if (c != this.fixed[i]) {
+                    throw new IllegalArgumentException("invalid character");
+                }
+            } else {
+                final int d = ctx.alphabet.digit(c);
+
+                /*
+                 * when the class is the alphabet, membership
+                 * in the alphabet is membership in the class
+                 */
+                if (d < 0 || d >= ctx.radix) {
+                    throw new IllegalArgumentException("invalid character");
+                }
+                N[k++] = d;
+            }
+        }
+
+        if (encrypt) {
+            ctx.encrypt(N, 0, this.slots, twk);
+        } else {
+            ctx.decrypt(N, 0, this.slots, twk);
+        }
+
+        for (int i = 0, k = 0; i < this.slot.length; i++) {
+            dst[off + i] = (this.slot[i] < 0)
+                ? this.fixed[i] : ctx.alphabet.character(N[k++]);
+        }
+    }
+}
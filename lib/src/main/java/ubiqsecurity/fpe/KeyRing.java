@@ -0,0 +1,237 @@
+package ubiqsecurity.fpe;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A set of contexts, identified by key id, of which one is active.
+ *
+ * New data is encrypted with the active key, while data encrypted
+ * with any key still in the ring can be decrypted. This allows keys to
+ * be rotated under load: a new key is added and activated, and the old
+ * key is retired once nothing encrypted under it remains.
+ *
+ * Every change to the ring publishes a new, immutable snapshot of it.
+ * Encryption and decryption read the current snapshot without locking
+ * and without allocating, and a change never waits for, or interrupts,
+ * operations already in progress. Because of this, a retired context
+ * is not destroyed by the ring; it is returned to the caller, who may
+ * destroy it once operations that began before the retirement are
+ * known to have completed.
+ *
+ * @param <T> the type of context held by the ring
+ */
+public class KeyRing<T extends FFX>
+{
+    /**
+     * A context and the id of the key that it uses
+     *
+     * @param <T> the type of context
+     */
+    public static final class Key<T extends FFX>
+    {
+        private final String id;
+        private final T ctx;
+
+        private Key(final String id, final T ctx) {
+            this.id = id;
+            this.ctx = ctx;
+        }
+
+        /**
+         * @return the id of the key
+         */
+        public String id() {
+            return this.id;
+        }
+
+        /**
+         * @return the context using the key
+         */
+        public T context() {
+            return this.ctx;
+        }
+    }
+
+    private static final class Snapshot<T extends FFX>
+    {
+        final Map<String, Key<T>> keys;
+        final Key<T> active;
+
+        Snapshot(final Map<String, Key<T>> keys, final Key<T> active) {
+            this.keys = keys;
+            this.active = active;
+        }
+    }
+
+    private final AtomicReference<Snapshot<T>> snapshot;
+
+    /**
+     * Construct an empty key ring
+     */
+    public KeyRing() {
+        this.snapshot = new AtomicReference<>(
+            new Snapshot<T>(Collections.<String, Key<T>>emptyMap(), null));
+    }
+
+    /**
+     * Add a key to the ring. The key does not become active.
+     *
+     * @param id  the id of the key
+     * @param ctx the context that uses the key
+     */
+    public void add(final String id, final T ctx) {
+        final Key<T> key = new Key<>(id, ctx);
+        Snapshot<T> cur, nxt;
+
+        if (id == null || ctx == null) {
+            throw new NullPointerException("invalid key");
+        }
+
+        do {
+            final Map<String, Key<T>> keys;
+
+            cur = this.snapshot.get();
+            if (cur.keys.containsKey(id)) {
+                throw new IllegalArgumentException("duplicate key id");
+            }
+
+            keys = new HashMap<>(cur.keys);
+            keys.put(id, key);
+            nxt = new Snapshot<>(Collections.unmodifiableMap(keys), cur.active);
+        } while (!this.snapshot.compareAndSet(cur, nxt));
+    }
+
+    /**
+     * Make a key in the ring the one used for encryption.
+     *
+     * @param id the id of the key
+     */
+    public void activate(final String id) {
+        Snapshot<T> cur, nxt;
+
+        do {
+            final Key<T> key;
+
+            cur = this.snapshot.get();
+            key = cur.keys.get(id);
+            if (key == null) {
+                throw new IllegalArgumentException("unknown key id");
+            }
+
+            nxt = new Snapshot<>(cur.keys, key);
+        } while (!this.snapshot.compareAndSet(cur, nxt));
+    }
+
+    /**
+     * Remove a key from the ring. The active key cannot be retired.
+     *
+     * Operations already using the key are allowed to complete.
+     * The context is not destroyed.
+     *
+     * @param id the id of the key
+     *
+     * @return   the context that used the key
+     */
+    public T retire(final String id) {
+        Snapshot<T> cur, nxt;
+        Key<T> key;
+
+        do {
+            final Map<String, Key<T>> keys;
+
+            cur = this.snapshot.get();
+            key = cur.keys.get(id);
+            if (key == null) {
+                throw new IllegalArgumentException("unknown key id");
+            } else if (key == cur.active) {
+                throw new IllegalStateException("cannot retire the active key");
+            }
+
+            keys = new HashMap<>(cur.keys);
+            keys.remove(id);
+            nxt = new Snapshot<>(Collections.unmodifiableMap(keys), cur.active);
+        } while (!this.snapshot.compareAndSet(cur, nxt));
+
+        return key.ctx;
+    }
+
+    /**
+     * Get the active key and its context. The id and context are
+     * read together, so the id always identifies the key actually
+     * used by the context, even while keys are being rotated.
+     *
+     * @return the active key
+     */
+    public Key<T> active() {
+        final Key<T> key = this.snapshot.get().active;
+        if (key == null) {
+            throw new IllegalStateException("no active key");
+        }
+        return key;
+    }
+
+    /**
+     * Get the context for a key in the ring.
+     *
+     * @param id the id of the key
+     *
+     * @return   the context or null if the key is not in the ring
+     */
+    public T get(final String id) {
+        final Key<T> key = this.snapshot.get().keys.get(id);
+        return key != null ? key.ctx : null;
+    }
+
+    /**
+     * @return the ids of the keys currently in the ring
+     */
+    public Set<String> ids() {
+        return this.snapshot.get().keys.keySet();
+    }
+
+    /**
+     * Encrypt a string with the active key.
+     *
+     * Callers that need to know which key was used should encrypt via
+     * the context returned by {@link #active()} instead.
+     *
+     * @param X   the plain text to be encrypted
+     * @param twk the tweak used to perturb the encryption or null
+     *            to use the default tweak of the active context
+     *
+     * @return    the cipher text
+     */
+    public String encrypt(final String X, final byte[] twk) {
+        return this.active().ctx.encrypt(X, twk);
+    }
+
+    public String encrypt(final String X) {
+        return this.encrypt(X, null);
+    }
+
+    /**
+     * Decrypt a string with any key in the ring.
+     *
+     * @param id  the id of the key used to encrypt the cipher text
+     * @param X   the cipher text to be decrypted
+     * @param twk the tweak used to perturb the encryption or null
+     *            to use the default tweak of the context
+     *
+     * @return    the plain text
+     */
+    public String decrypt(final String id, final String X, final byte[] twk) {
+        final T ctx = this.get(id);
+        if (ctx == null) {
+            throw new IllegalArgumentException("unknown key id");
+        }
+        return ctx.decrypt(X, twk);
+    }
+
+    public String decrypt(final String id, final String X) {
+        return this.decrypt(id, X, null);
+    }
+}
@@ -0,0 +1,272 @@
+package ubiqsecurity.fpe;
+
+import java.math.BigInteger;
+
+/**
+ * Encryption of values in which each position has an alphabet of its
+ * own, such as license plates of three letters followed by four digits.
+ *
+ * Rather than encrypting each run of positions separately, which
+ * reduces the size of the domain of each encryption, or encrypting
+ * with an alphabet common to all positions, which changes the format,
+ * the value is treated as a single integer in a mixed-radix system.
+ * With the alphabets of the positions having r<sub>0</sub>, r<sub>1</sub>,
+ * ..., r<sub>n-1</sub> characters, the value of the character with
+ * numeral d<sub>i</sub> in position i is d<sub>i</sub> times the place
+ * value of that position, r<sub>i+1</sub> &times; ... &times;
+ * r<sub>n-1</sub>, and the domain is the integers less than
+ * M = r<sub>0</sub> &times; ... &times; r<sub>n-1</sub>.
+ *
+ * The integer is encrypted, as a string of bits, by FF1 with a radix of
+ * 2 and the smallest length whose domain contains M values. If the
+ * result is not less than M, it is encrypted again, until it is; as the
+ * bits' domain is less than twice as large as M, fewer than two
+ * encryptions are needed on average. Decryption walks back the same
+ * way. The domain must contain at least 1,000,000 values.
+ *
+ * The place values are computed when the instance is constructed. The
+ * instance may be used by any number of threads at once.
+ */
+public final class MixedRadix
+{
+    /* the domain, M, must be at least this large */
+    private static final int MIN_DOMAIN = 1000000;
+
+    private final FF1 ctx;
+    private final Alphabet[] alphabets;
+    private final int[] radices;
+    /* the number of bits encrypted by FF1 */
+    private final int bits;
+    private final BigInteger size;
+
+    /*
+     * the domain and the place values, as longs if M < 2**62 (so that
+     * the bits' domain is at most 2**62), and as BigIntegers otherwise
+     */
+    private final long lsize;
+    private final long[] lplace;
+    private final BigInteger[] bplace;
+
+    /**
+     * Construct a mixed-radix encryptor
+     *
+     * @param key       the key
+     * @param twk       the default tweak
+     * @param alphabets the alphabet of each position. an alphabet may
+     *                  not contain any character more than once
+     */
+    public MixedRadix(final byte[] key, final byte[] twk,
+                      final String... alphabets) {
+        this(new FF1Key(key), twk, alphabets);
+    }
+
+    /**
+     * Construct a mixed-radix encryptor that shares an expanded key
+     *
+     * @param key       the key
+     * @param twk       the default tweak
+     * @param alphabets the alphabet of each position. an alphabet may
+     *                  not contain any character more than once
+     */
+    public MixedRadix(final FF1Key key, final byte[] twk,
+                      final String... alphabets) {
+        final int n = alphabets.length;
+        BigInteger M = BigInteger.ONE;
+
+        this.alphabets = new Alphabet[n];
+        this.radices = new int[n];
+        this.bplace = new BigInteger[n];
+
+        for (int i = n - 1; i >= 0; i--) {
+            final String a = alphabets[i];
+
+            for (int j = 0; j < a.length(); j++) {
+                if (a.indexOf(a.charAt(j)) != j) {
+                    throw new IllegalArgumentException(
+                        "duplicate character in alphabet");
+                }
+            }
+            if (a.length() < 2) {
+                throw new IllegalArgumentException("invalid alphabet");
+            }
+
+            this.alphabets[i] = Alphabet.of(a);
+            this.radices[i] = a.length();
+            this.bplace[i] = M;
+            M = M.multiply(BigInteger.valueOf(a.length()));
+        }
+
+        if (M.compareTo(BigInteger.valueOf(MIN_DOMAIN)) < 0) {
+            throw new IllegalArgumentException("domain too small");
+        }
+
+        this.size = M;
+        this.bits = M.subtract(BigInteger.ONE).bitLength();
+
+        if (this.bits <= 62) {
+            this.lsize = M.longValue();
+            this.lplace = new long[n];
+            for (int i = 0; i < n; i++) {
+                this.lplace[i] = this.bplace[i].longValue();
+            }
+        } else {
+            this.lsize = 0;
+            this.lplace = null;
+        }
+
+        this.ctx = new FF1(key, twk, 0, 0, 2);
+    }
+
+    /**
+     * @return the length of the values
+     */
+    public int length() {
+        return this.radices.length;
+    }
+
+    /**
+     * @return the number of values in the domain, M
+     */
+    public BigInteger size() {
+        return this.size;
+    }
+
+    /**
+     * @return the average number of encryptions of the bits that are
+     *         needed to encrypt or decrypt a value: the size of the
+     *         bits' domain divided by M
+     */
+    public double expectedIterations() {
+        return Math.scalb(1.0, this.bits) / this.size.doubleValue();
+    }
+
+    /**
+     * Encrypt a value, using the default tweak
+     *
+     * @param X the plain text
+     *
+     * @return  the cipher text, in which each character belongs to
+     *          the alphabet of its position
+     */
+    public String encrypt(final CharSequence X) {
+        return this.cipher(X, null, true);
+    }
+
+    /**
+     * Encrypt a value
+     *
+     * @param X   the plain text
+     * @param twk the tweak or null to use the default tweak
+     *
+     * @return    the cipher text, in which each character belongs to
+     *            the alphabet of its position
+     */
+    public String encrypt(final CharSequence X, final byte[] twk) {
+        return this.cipher(X, twk, true);
+    }
+
+    /**
+     * Decrypt a value, using the default tweak
+     *
+     * @param X the cipher text
+     *
+     * @return  the plain text
+     */
+    public String decrypt(final CharSequence X) {
+        return this.cipher(X, null, false);
+    }
+
+    /**
+     * Decrypt a value
+     *
+     * @param X   the cipher text
+     * @param twk the tweak or null to use the default tweak
+     *
+     * @return    the plain text
+     */
+    public String decrypt(final CharSequence X, final byte[] twk) {
+        return this.cipher(X, twk, false);
+    }
+
+    /*
+     * the numeral of the character at @i of @X
+     */
+    private int digit(final CharSequence X, final int i) {
+        final int d = this.alphabets[i].digit(X.charAt(i));
+        if (d < 0 || d >= this.radices[i]) {
+            throw new IllegalArgumentException("invalid character");
+        }
+        return d;
+    }
+
+    private String cipher(final CharSequence X, final byte[] twk,
+                          final boolean encrypt) {
+        final int n = this.radices.length;
+        final int[] B = new int[this.bits];
+        final char[] Y = new char[n];
+
+        if (X.length() != n) {
+            throw new IllegalArgumentException("invalid input length");
+        }
+
+        if (this.lplace != null) {
+            long v = 0;
+
+            for (int i = 0; i < n; i++) {
+                v += this.digit(X, i) * this.lplace[i];
+            }
+
+            do {
+                for (int i = this.bits - 1; i >= 0; i--, v >>>= 1) {
+                    B[i] = (int)v & 1;
+                }
+                this.cipher(B, twk, encrypt);
+                for (int i = 0; i < this.bits; i++) {
+                    v = (v << 1) | B[i];
+                }
+            } while (v >= this.lsize);
+
+            for (int i = 0; i < n; i++) {
+                final long d = v / this.lplace[i];
+                v -= d * this.lplace[i];
+                Y[i] = this.alphabets[i].character((int)d);
+            }
+        } else {
+            BigInteger v = BigInteger.ZERO;
+
+            for (int i = 0; i < n; i++) {
+                v = v.add(this.bplace[i].multiply(
+                              BigInteger.valueOf(this.digit(X, i))));
+            }
+
+            do {
+                for (int i = 0; i < this.bits; i++) {
+                    B[this.bits - 1 - i] = v.testBit(i) ? 1 : 0;
+                }
+                this.cipher(B, twk, encrypt);
+                v = BigInteger.ZERO;
+                for (int i = 0; i < this.bits; i++) {
+                    if (B[i] != 0) {
+                        v = v.setBit(this.bits - 1 - i);
+                    }
+                }
+            } while (v.compareTo(this.size) >= 0);
+
+            for (int i = 0; i < n; i++) {
+                final BigInteger[] qr = v.divideAndRemainder(this.bplace[i]);
+                Y[i] = this.alphabets[i].character(qr[0].intValue());
+                v = qr[1];
+            }
+        }
+
+        return new String(Y);
+    }
+
+    private void cipher(final int[] B, final byte[] twk, final boolean encrypt) {
+        if (encrypt) {
+            this.ctx.encrypt(B, 0, B.length, twk);
+        } else {
+            this.ctx.decrypt(B, 0, B.length, twk);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package ubiqsecurity.fpe;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Encryption of payment card numbers that keeps them valid card numbers.
+ *
+ * The first six digits, which identify the issuer, and the last four
+ * digits are kept, and the digits between them are encrypted. As the
+ * result must also pass the Luhn check, the middle digits are
+ * re-encrypted until it does, a technique known as cycle-walking;
+ * decryption walks back the same way. As one in ten values of the
+ * middle digits passes the check, ten encryptions are needed on
+ * average. The walk always ends, at the latest when it returns to the
+ * input, which itself passes the check.
+ *
+ * The walk takes place on the numerals of the card number, with the
+ * parameters for its length prepared once and the contribution of the
+ * fixed digits to the check computed once, so each step costs little
+ * more than the encryption itself.
+ *
+ * As the middle digits must number at least the minimum length allowed
+ * by the context, which is 6 for a radix of 10, card numbers must have
+ * at least 16 digits.
+ */
+public final class PanCipher
+{
+    /** The number of leading digits that are kept */
+    public static final int BIN_LENGTH = 6;
+    /** The number of trailing digits that are kept */
+    public static final int LAST_LENGTH = 4;
+
+    /* the Luhn value of a digit that is doubled */
+    private static final int[] DOUBLED = { 0, 2, 4, 6, 8, 1, 3, 5, 7, 9 };
+
+    private final FFX ctx;
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder iterations = new LongAdder();
+
+    /**
+     * Construct a card number cipher
+     *
+     * @param ctx a context with a radix of 10 whose
+     *            alphabet begins with the digits
+     */
+    public PanCipher(final FFX ctx) {
+        if (ctx.radix != 10 || !ctx.alpha.startsWith("0123456789")) {
+            throw new IllegalArgumentException("invalid radix");
+        }
+        this.ctx = ctx;
+    }
+
+    /**
+     * @return the context used by the cipher
+     */
+    public FFX context() {
+        return this.ctx;
+    }
+
+    /**
+     * @return the average number of encryptions of the middle digits
+     *         needed per operation if their cipher texts are uniformly
+     *         distributed, which is 10
+     */
+    public static double expectedIterations() {
+        return 10.0;
+    }
+
+    /**
+     * @return the number of operations performed by this instance
+     */
+    public long operations() {
+        return this.operations.sum();
+    }
+
+    /**
+     * @return the average number of encryptions or decryptions of the
+     *         middle digits per operation performed by this instance, or
+     *         0 if none have been performed. it should be close to
+     *         {@link #expectedIterations()}
+     */
+    public double averageIterations() {
+        final long ops = this.operations.sum();
+        return (ops > 0) ? (double)this.iterations.sum() / ops : 0;
+    }
+
+    /**
+     * Encrypt a card number, using the context's default tweak
+     *
+     * @param X the card number, consisting of digits only
+     *
+     * @return  the encrypted card number
+     */
+    public String encrypt(final CharSequence X) {
+        return this.cipher(X, null, true);
+    }
+
+    /**
+     * Encrypt a card number
+     *
+     * @param X   the card number, consisting of digits only
+     * @param twk the tweak or null to use the context's default tweak
+     *
+     * @return    the encrypted card number
+     */
+    public String encrypt(final CharSequence X, final byte[] twk) {
+        return this.cipher(X, twk, true);
+    }
+
+    /**
+     * Decrypt a card number, using the context's default tweak
+     *
+     * @param X the encrypted card number
+     *
+     * @return  the card number
+     */
+    public String decrypt(final CharSequence X) {
+        return this.cipher(X, null, false);
+    }
+
+    /**
+     * Decrypt a card number
+     *
+     * @param X   the encrypted card number
+     * @param twk the tweak or null to use the context's default tweak
+     *
+     * @return    the card number
+     */
+    public String decrypt(final CharSequence X, final byte[] twk) {
+        return this.cipher(X, twk, false);
+    }
+
+    /*
+     * the sum of the Luhn values of the digits of @D from @i to @e,
+     * where @n is the length of @D. the check digit is the last, and
+     * every second digit from the one before it is doubled.
+     */
+    private static int luhn(final int[] D, int i, final int e, final int n) {
+        int sum = 0;
+
+        for (; i < e; i++) {
+            sum += ((n - i) % 2 == 0) ? DOUBLED[D[i]] : D[i];
+        }
+
+        return sum;
+    }
+
+    private String cipher(final CharSequence X, final byte[] twk,
+                          final boolean encrypt) {
+        final FFXMetrics m = FFXMetrics.installed();
+        final long start = (m != null) ? System.nanoTime() : 0;
+        final FFXMetrics.Timer t = (m != null) ? m.timer(start) : null;
+        final int n = X.length();
+        final int mid = n - BIN_LENGTH - LAST_LENGTH;
+        final int[] D = new int[n];
+        final int fixed;
+        final FFXPlan p;
+        final byte[][] s;
+        final String Y;
+        int it = 0;
+
+        this.ctx.checkDestroyed();
+
+        if (mid < 0) {
+            throw new IllegalArgumentException("invalid input length");
+        }
+        p = this.ctx.planFor(mid, this.ctx.check(mid, twk));
+
+        this.ctx.numerals(X, D, 0);
+        fixed = luhn(D, 0, BIN_LENGTH, n) + luhn(D, n - LAST_LENGTH, n, n);
+        if ((fixed + luhn(D, BIN_LENGTH, n - LAST_LENGTH, n)) % 10 != 0) {
+            throw new IllegalArgumentException("invalid check digit");
+        }
+
+        /* one set of scratch buffers serves for every step of the walk */
+        s = p.scratch();
+        do {
+            p.cipher(D, BIN_LENGTH, encrypt, s, t);
+            it++;
+        } while ((fixed + luhn(D, BIN_LENGTH, n - LAST_LENGTH, n)) % 10 != 0);
+
+        Y = this.ctx.string(D, 0, n);
+        this.ctx.checkDestroyed();
+
+        this.operations.increment();
+        this.iterations.add(it);
+        if (m != null) {
+            m.record(this.ctx.series(m), encrypt, n, start, t);
+        }
+
+        return Y;
+    }
+}
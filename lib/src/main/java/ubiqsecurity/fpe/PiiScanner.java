@@ -0,0 +1,426 @@
+package ubiqsecurity.fpe;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Finds personal data in text, such as logs, and encrypts or decrypts
+ * it where it stands.
+ *
+ * The scanner recognizes the following kinds of data, each by a small
+ * state machine rather than by a regular expression:
+ * <ul>
+ * <li>{@link Kind#PAN}: 13 to 19 digits, which may be separated into
+ *     groups by single spaces or dashes, that pass the Luhn check</li>
+ * <li>{@link Kind#SSN}: ddd-dd-dddd</li>
+ * <li>{@link Kind#PHONE}: ddd-ddd-dddd, ddd.ddd.dddd, ddd ddd dddd, or
+ *     (ddd) ddd-dddd, optionally preceded by +1 and a space</li>
+ * </ul>
+ * Data is recognized only if it isn't part of a longer word or number.
+ * The digits of recognized data are encrypted with a radix 10 context,
+ * and everything else, including the separators within the data, is
+ * copied through unchanged.
+ *
+ * The check digit of a card number is not encrypted but recomputed from
+ * the encrypted digits, so that encrypted card numbers also pass the Luhn
+ * check. As a result, scanning encrypted text with a scanner constructed
+ * to decrypt restores the original text exactly.
+ *
+ * Text is processed through a fixed-size buffer, so the memory used
+ * doesn't depend on the length of the text. A scanner may be used by
+ * any number of threads at once.
+ */
+public final class PiiScanner
+{
+    /**
+     * The kinds of data that can be recognized
+     */
+    public enum Kind
+    {
+        /** Payment card numbers */
+        PAN,
+        /** US social security numbers */
+        SSN,
+        /** North American phone numbers */
+        PHONE,
+    }
+
+    private static final int BUFFER = 8192;
+    /*
+     * the number of characters beyond the start of a match that the
+     * scanner may need to examine: 19 digits and 18 separators for
+     * the longest card number, and the character after it
+     */
+    private static final int LOOKAHEAD = 38;
+
+    private final FFX ctx;
+    private final boolean encrypt;
+    private final boolean pan, ssn, phone;
+
+    /**
+     * Construct a scanner that recognizes all kinds of data
+     *
+     * @param ctx     a context with a radix of 10, used with its
+     *                default tweak
+     * @param encrypt true to encrypt the recognized data,
+     *                false to decrypt it
+     */
+    public PiiScanner(final FFX ctx, final boolean encrypt) {
+        this(ctx, encrypt, EnumSet.allOf(Kind.class));
+    }
+
+    /**
+     * Construct a scanner
+     *
+     * @param ctx     a context with a radix of 10, used with its
+     *                default tweak
+     * @param encrypt true to encrypt the recognized data,
+     *                false to decrypt it
+     * @param kinds   the kinds of data to recognize
+     */
+    public PiiScanner(final FFX ctx, final boolean encrypt,
+                      final Set<Kind> kinds) {
+        if (ctx.radix != 10) {
+            throw new IllegalArgumentException("invalid radix");
+        }
+
+        this.ctx = ctx;
+        this.encrypt = encrypt;
+        this.pan = kinds.contains(Kind.PAN);
+        this.ssn = kinds.contains(Kind.SSN);
+        this.phone = kinds.contains(Kind.PHONE);
+    }
+
+    /* where the scanner reads text from and writes it to */
+    private interface Source
+    {
+        /* as Reader.read(char[], int, int) */
+        int read(char[] b, int off, int len) throws IOException;
+    }
+
+    private interface Sink
+    {
+        void write(char[] b, int off, int len) throws IOException;
+    }
+
+    /**
+     * Copy text from a reader to a writer, encrypting or decrypting the
+     * data that is recognized.
+     *
+     * @param in  the source of the text
+     * @param out the destination of the text. it is not flushed
+     *
+     * @return    the number of items of data recognized
+     *
+     * @throws IOException if reading or writing fails
+     */
+    public long scan(final Reader in, final Writer out) throws IOException {
+        return this.scan(in::read, out::write);
+    }
+
+    /**
+     * Copy bytes from one channel to another, encrypting or decrypting
+     * the data that is recognized.
+     *
+     * The bytes may be in any character set, such as UTF-8, in which
+     * digits, spaces, and punctuation are encoded as in ASCII and no
+     * other character contains those bytes.
+     *
+     * @param in  the source of the bytes
+     * @param out the destination of the bytes
+     *
+     * @return    the number of items of data recognized
+     *
+     * @throws IOException if reading or writing fails
+     */
+    public long scan(final ReadableByteChannel in,
+                     final WritableByteChannel out) throws IOException {
+        final ByteBuffer ib = ByteBuffer.allocate(BUFFER);
+        final ByteBuffer ob = ByteBuffer.allocate(BUFFER);
+
+        /* bytes are scanned as the characters with the same values */
+        return this.scan(
+            (b, off, len) -> {
+                final int n;
+
+                ib.clear().limit(Math.min(len, BUFFER));
+                n = in.read(ib);
+                for (int i = 0; i < n; i++) {
+                    b[off + i] = (char)(ib.get(i) & 0xff);
+                }
+                return n;
+            },
+            (b, off, len) -> {
+                while (len > 0) {
+                    final int n = Math.min(len, BUFFER);
+
+                    ob.clear();
+                    for (int i = 0; i < n; i++) {
+                        ob.put((byte)b[off + i]);
+                    }
+                    ob.flip();
+                    while (ob.hasRemaining()) {
+                        out.write(ob);
+                    }
+
+                    off += n;
+                    len -= n;
+                }
+            });
+    }
+
+    private long scan(final Source in, final Sink out) throws IOException {
+        final char[] b = new char[BUFFER];
+        final int[] X = new int[19];
+        final int[] at = new int[19];
+        /*
+         * b[0] holds the character before b[pos], so that the start of
+         * a match can be checked for a preceding letter or digit.
+         */
+        int pos = 1, len = 1;
+        boolean eof = false;
+        long matches = 0;
+
+        b[0] = ' ';
+
+        while (true) {
+            final int end;
+            int i;
+
+            if (!eof && len - pos <= LOOKAHEAD) {
+                System.arraycopy(b, pos - 1, b, 0, len - pos + 1);
+                len -= pos - 1;
+                pos = 1;
+
+                while (len < b.length) {
+                    final int n = in.read(b, len, b.length - len);
+                    if (n < 0) {
+                        eof = true;
+                        break;
+                    }
+                    len += n;
+                }
+            }
+
+            if (pos == len) {
+                break;
+            }
+
+            /* matches may begin anywhere that leaves room to examine them */
+            end = eof ? len : len - LOOKAHEAD;
+
+            for (i = pos; i < end; i++) {
+                final char c = b[i];
+                int m = -1;
+
+                if ((c < '0' || c > '9') && c != '(' && c != '+') {
+                    continue;
+                } else if (word(b[i - 1])) {
+                    continue;
+                }
+
+                if (this.ssn) {
+                    m = this.ssn(b, i, len, X, at);
+                }
+                if (m < 0 && this.phone) {
+                    m = this.phone(b, i, len, X, at);
+                }
+                if (m < 0 && this.pan) {
+                    m = this.pan(b, i, len, X, at);
+                }
+
+                if (m > 0) {
+                    matches++;
+                    i = m - 1;
+                }
+            }
+
+            out.write(b, pos, i - pos);
+            pos = i;
+        }
+
+        return matches;
+    }
+
+    private static boolean word(final char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static boolean digit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /*
+     * match @n digits of @b beginning at @i, which precedes @len,
+     * storing them in @X and their positions in @at, beginning at @k.
+     * returns the index after the digits, or -1 if they don't match
+     */
+    private static int digits(final char[] b, int i, final int len,
+                              final int n, final int[] X, final int[] at,
+                              int k) {
+        if (len - i < n) {
+            return -1;
+        }
+
+        for (final int e = i + n; i < e; i++, k++) {
+            if (!digit(b[i])) {
+                return -1;
+            }
+            X[k] = b[i] - '0';
+            at[k] = i;
+        }
+
+        return i;
+    }
+
+    /*
+     * return @i if it is the end of a match, that is if it
+     * is the end of the text or the character at @i is neither
+     * a letter nor a digit, or -1 if not
+     */
+    private static int boundary(final char[] b, final int i, final int len) {
+        return (i >= 0 && (i == len || !word(b[i]))) ? i : -1;
+    }
+
+    /* return @i if @b[@i] is @c or -1 if not */
+    private static int expect(final char[] b, final int i, final int len,
+                              final char c) {
+        return (i >= 0 && i < len && b[i] == c) ? i + 1 : -1;
+    }
+
+    /*
+     * encrypt or decrypt the @n digits in @X,
+     * storing them at the positions in @at
+     */
+    private void cipher(final char[] b, final int[] X, final int[] at,
+                        final int n) {
+        if (this.encrypt) {
+            this.ctx.encrypt(X, 0, n, null);
+        } else {
+            this.ctx.decrypt(X, 0, n, null);
+        }
+
+        for (int k = 0; k < n; k++) {
+            b[at[k]] = (char)('0' + X[k]);
+        }
+    }
+
+    private int ssn(final char[] b, int i, final int len,
+                    final int[] X, final int[] at) {
+        i = digits(b, i, len, 3, X, at, 0);
+        i = expect(b, i, len, '-');
+        i = (i < 0) ? -1 : digits(b, i, len, 2, X, at, 3);
+        i = expect(b, i, len, '-');
+        i = (i < 0) ? -1 : digits(b, i, len, 4, X, at, 5);
+        i = boundary(b, i, len);
+
+        if (i > 0) {
+            this.cipher(b, X, at, 9);
+        }
+        return i;
+    }
+
+    private int phone(final char[] b, int i, final int len,
+                      final int[] X, final int[] at) {
+        final char s;
+
+        if (b[i] == '+') {
+            i = expect(b, i + 1, len, '1');
+            i = expect(b, i, len, ' ');
+            if (i < 0) {
+                return -1;
+            }
+        }
+
+        if (i < len && b[i] == '(') {
+            /* (ddd) ddd-dddd */
+            i = digits(b, i + 1, len, 3, X, at, 0);
+            i = expect(b, i, len, ')');
+            i = expect(b, i, len, ' ');
+            s = '-';
+        } else {
+            /* ddd-ddd-dddd, with the same separator in both places */
+            i = digits(b, i, len, 3, X, at, 0);
+            if (i < 0 || i == len ||
+                (b[i] != '-' && b[i] != '.' && b[i] != ' ')) {
+                return -1;
+            }
+            s = b[i++];
+        }
+
+        i = (i < 0) ? -1 : digits(b, i, len, 3, X, at, 3);
+        i = expect(b, i, len, s);
+        i = (i < 0) ? -1 : digits(b, i, len, 4, X, at, 6);
+        i = boundary(b, i, len);
+
+        if (i > 0) {
+            this.cipher(b, X, at, 10);
+        }
+        return i;
+    }
+
+    private int pan(final char[] b, int i, final int len,
+                    final int[] X, final int[] at) {
+        char s = 0;
+        int n = 0;
+
+        if (!digit(b[i])) {
+            return -1;
+        }
+
+        /*
+         * take the longest run of digits, in which single separators,
+         * all the same, may appear between digits
+         */
+        while (i < len) {
+            if (digit(b[i])) {
+                if (n == 19) {
+                    return -1;
+                }
+                X[n] = b[i] - '0';
+                at[n++] = i++;
+            } else if (i + 1 < len && digit(b[i + 1]) &&
+                       (b[i] == s || (s == 0 && (b[i] == ' ' || b[i] == '-')))) {
+                s = b[i++];
+            } else {
+                break;
+            }
+        }
+
+        if (n < 13 || boundary(b, i, len) < 0 ||
+            check(X, n - 1) != X[n - 1]) {
+            return -1;
+        }
+
+        /*
+         * the check digit is recomputed from the other digits so
+         * that the result also passes the check and can be found,
+         * and reversed, by decrypting
+         */
+        this.cipher(b, X, at, n - 1);
+        X[n - 1] = check(X, n - 1);
+        b[at[n - 1]] = (char)('0' + X[n - 1]);
+
+        return i;
+    }
+
+    /*
+     * return the Luhn check digit for the @n digits of @X
+     */
+    static int check(final int[] X, final int n) {
+        int sum = 0;
+
+        for (int k = n - 1, dbl = 1; k >= 0; k--, dbl ^= 1) {
+            int d = X[k] << dbl;
+            sum += (d > 9) ? d - 9 : d;
+        }
+
+        return (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,91 @@
+package ubiqsecurity.fpe;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/*
+ * emits JDK Flight Recorder events for encryptions and decryptions.
+ *
+ * the library never starts Flight Recorder itself, which takes
+ * hundreds of milliseconds: until something else does, the cost to an
+ * operation is one check of a flag. once it is running, an event is
+ * created and discarded, usually without being allocated, unless a
+ * recording has the event enabled. when it is enabled, only operations
+ * lasting longer than the threshold (1 ms unless the recording's
+ * settings say otherwise) are committed to the recording.
+ */
+final class FFXEvents
+{
+    @Name("ubiqsecurity.fpe.Operation")
+    @Label("FPE Operation")
+    @Description("Encryption or decryption of a string")
+    @Category({ "Ubiq", "FPE" })
+    @Threshold("1 ms")
+    static final class Operation extends Event
+    {
+        @Label("Algorithm")
+        String algorithm;
+
+        @Label("Operation")
+        @Description("encrypt or decrypt")
+        String operation;
+
+        @Label("Radix")
+        int radix;
+
+        @Label("Length")
+        int length;
+
+        @Label("Tweak Length")
+        int tweakLength;
+
+        @Label("Backend")
+        @Description("The arithmetic used, long or BigInteger")
+        String backend;
+
+        @Label("Plan Cache Hit")
+        @Description("Whether the parameters for the length and tweak " +
+                     "were reused rather than computed")
+        boolean cacheHit;
+    }
+
+    private FFXEvents() {
+    }
+
+    static Object begin() {
+        final Operation e;
+
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+
+        e = new Operation();
+        if (!e.isEnabled()) {
+            return null;
+        }
+        e.begin();
+        return e;
+    }
+
+    static void commit(final Object o, final FFXPlan p,
+                       final boolean encrypt, final boolean hit) {
+        final Operation e = (Operation)o;
+
+        e.end();
+        if (e.shouldCommit()) {
+            e.algorithm = p.ctx.algorithm();
+            e.operation = encrypt ? "encrypt" : "decrypt";
+            e.radix = p.ctx.radix;
+            e.length = p.n;
+            e.tweakLength = p.twk.length;
+            e.backend = p.backend();
+            e.cacheHit = hit;
+            e.commit();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ubiqsecurity.fpe;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/*
+ * the innermost loops of the algorithms, using APIs newer than Java 8.
+ *
+ * byte arrays are processed a long at a time via a view var handle,
+ * and division by a fixed divisor is done with a multiplication by its
+ * reciprocal, Math.multiplyHigh being an intrinsic on the platforms
+ * where it matters. the results are identical to those of the Java 8
+ * version in src/main/java.
+ */
+final class FFXOps
+{
+    /*
+     * the byte order doesn't matter as long as loads and stores
+     * agree, so the native order is used to avoid swapping
+     */
+    private static final VarHandle LONGS =
+        MethodHandles.byteArrayViewVarHandle(long[].class,
+                                             ByteOrder.nativeOrder());
+
+    private FFXOps() {
+    }
+
+    static void xor(final byte[] d, final int doff,
+                    final byte[] s1, final int s1off,
+                    final byte[] s2, final int s2off,
+                    final int len) {
+        int i = 0;
+
+        for (; i + 8 <= len; i += 8) {
+            LONGS.set(d, doff + i,
+                      (long)LONGS.get(s1, s1off + i) ^
+                      (long)LONGS.get(s2, s2off + i));
+        }
+
+        for (; i < len; i++) {
+            d[doff + i] = (byte)(s1[s1off + i] ^ s2[s2off + i]);
+        }
+    }
+
+    static void rev(final byte[] dst, final byte[] src) {
+        int i = 0, j = src.length;
+
+        /* swap longs from either end, reversing the bytes of each */
+        for (; j - i >= 16; i += 8, j -= 8) {
+            final long a = (long)LONGS.get(src, i);
+            final long b = (long)LONGS.get(src, j - 8);
+            LONGS.set(dst, i, Long.reverseBytes(b));
+            LONGS.set(dst, j - 8, Long.reverseBytes(a));
+        }
+
+        for (j--; i < j; i++, j--) {
+            final byte t = src[i];
+            dst[i] = src[j];
+            dst[j] = t;
+        }
+
+        if (i == j) {
+            dst[i] = src[i];
+        }
+    }
+
+    /*
+     * the reciprocal is M = floor((2**64 - 1) / d), which fits in a
+     * signed long for d >= 2. M is within 1 of 2**64 / d, so for
+     * 0 <= x < 2**63, x * M / 2**64 is within 1/2 of x / d and its
+     * integer part is either the quotient or one less than it
+     */
+    static long reciprocal(final long d) {
+        return (d < 2) ? 0 : Long.divideUnsigned(-1L, d);
+    }
+
+    static long div(final long x, final long d, final long r) {
+        long q;
+
+        if (r == 0) {
+            return x / d;
+        }
+
+        q = Math.multiplyHigh(x, r);
+        if (x - q * d >= d) {
+            q++;
+        }
+        return q;
+    }
+}
@@ -0,0 +1,29 @@
+package ubiqsecurity.fpe;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * supplies the executor used for asynchronous operations when the
+ * caller doesn't supply one: each operation runs in a new virtual
+ * thread. operations never block while holding a monitor, so they
+ * don't pin their carrier threads.
+ */
+final class FFXExecutors
+{
+    /* created on first use, as most programs never need it */
+    private static final class Holder
+    {
+        static final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("ubiq-fpe-", 0).factory());
+    }
+
+    private FFXExecutors() {
+    }
+
+    static Executor standard() {
+        return Holder.executor;
+    }
+}
@@ -0,0 +1,430 @@
+package ubiqsecurity.fpe;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A {@link Flow.Processor} that encrypts or decrypts one field of each
+ * record passing through it.
+ *
+ * Records are requested from upstream in batches and processed by at
+ * most a fixed number of concurrent tasks on an executor. Results are
+ * published downstream in the order in which the records arrived and
+ * only as downstream demands them. The processor holds at most two
+ * batches of records at once, so when the subscriber is slow, the
+ * processor stops requesting records from upstream rather than
+ * buffering them.
+ *
+ * The field is read from each record by a getter and a record holding
+ * the result is produced by a setter, which may update the record in
+ * place and return it or return a new record. A record whose field is
+ * null is published unchanged. If the getter, the setter, or the
+ * operation throws, the upstream subscription is cancelled and the
+ * exception is published, in order, in place of the record.
+ *
+ * This class is available on Java 9 and later.
+ *
+ * @param <T> the type of the records
+ */
+public class FFXProcessor<T> implements Flow.Processor<T, T>
+{
+    /* a record whose processing failed */
+    private static final class Failure
+    {
+        final Throwable e;
+
+        Failure(final Throwable e) {
+            this.e = e;
+        }
+    }
+
+    private final FFX ctx;
+    private final boolean encrypt;
+    private final Function<? super T, String> getter;
+    private final BiFunction<? super T, String, ? extends T> setter;
+    private final int batch, parallelism;
+    private final Executor executor;
+
+    private final Object lock = new Object();
+
+    /*
+     * records received from upstream and their results, indexed by
+     * sequence number modulo their length. sequence numbers below
+     * @head have been published, those below @next have been claimed
+     * by a worker, and those below @tail have been received
+     */
+    private final Object[] in, out;
+    private long head, next, tail;
+
+    /* demand signalled upstream, but not yet satisfied */
+    private long requested;
+    /* demand signalled by downstream, but not yet satisfied */
+    private long demand;
+    private int workers;
+
+    private Flow.Subscription upstream;
+    private Flow.Subscriber<? super T> downstream;
+    private boolean completed, terminated;
+    private Throwable error;
+
+    private final AtomicInteger wip = new AtomicInteger();
+
+    /**
+     * Construct a processor
+     *
+     * @param ctx         the context with which to encrypt or decrypt
+     * @param encrypt     true to encrypt the field, false to decrypt it
+     * @param getter      returns the field of a record
+     * @param setter      returns the record with its field replaced
+     * @param batch       the number of records to request from upstream
+     *                    at a time. the processor holds at most twice
+     *                    this number of records
+     * @param parallelism the maximum number of records to be processed
+     *                    concurrently
+     * @param executor    the executor in which records are processed
+     */
+    public FFXProcessor(final FFX ctx, final boolean encrypt,
+                        final Function<? super T, String> getter,
+                        final BiFunction<? super T, String, ? extends T> setter,
+                        final int batch, final int parallelism,
+                        final Executor executor) {
+        if (ctx == null || getter == null || setter == null ||
+            executor == null) {
+            throw new NullPointerException();
+        }
+        if (batch < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("invalid batch size or parallelism");
+        }
+
+        this.ctx = ctx;
+        this.encrypt = encrypt;
+        this.getter = getter;
+        this.setter = setter;
+        this.batch = batch;
+        this.parallelism = parallelism;
+        this.executor = executor;
+
+        this.in = new Object[2 * batch];
+        this.out = new Object[2 * batch];
+    }
+
+    /**
+     * Construct a processor that requests 256 records at a time and
+     * processes them in the common fork-join pool, using as many
+     * tasks as the pool has threads
+     */
+    public FFXProcessor(final FFX ctx, final boolean encrypt,
+                        final Function<? super T, String> getter,
+                        final BiFunction<? super T, String, ? extends T> setter) {
+        this(ctx, encrypt, getter, setter,
+             256, ForkJoinPool.getCommonPoolParallelism(),
+             ForkJoinPool.commonPool());
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super T> s) {
+        boolean accepted = false;
+
+        Objects.requireNonNull(s);
+
+        synchronized (this.lock) {
+            if (this.downstream == null) {
+                this.downstream = s;
+                accepted = true;
+            }
+        }
+
+        if (!accepted) {
+            s.onSubscribe(new Flow.Subscription() {
+                    public void request(final long n) {
+                    }
+
+                    public void cancel() {
+                    }
+                });
+            s.onError(new IllegalStateException("already subscribed"));
+            return;
+        }
+
+        s.onSubscribe(new Flow.Subscription() {
+                public void request(final long n) {
+                    FFXProcessor.this.request(n);
+                }
+
+                public void cancel() {
+                    FFXProcessor.this.cancel();
+                }
+            });
+        this.drain();
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription s) {
+        boolean accepted = false;
+
+        synchronized (this.lock) {
+            if (this.upstream == null && !this.terminated) {
+                this.upstream = s;
+                accepted = true;
+            }
+        }
+
+        if (accepted) {
+            this.drain();
+        } else {
+            s.cancel();
+        }
+    }
+
+    @Override
+    public void onNext(final T item) {
+        boolean spawn = false;
+
+        Objects.requireNonNull(item);
+
+        synchronized (this.lock) {
+            if (this.terminated) {
+                return;
+            }
+
+            if (this.tail - this.head == this.in.length) {
+                /* upstream sent more than was requested */
+                this.error = new IllegalStateException("demand exceeded");
+            } else {
+                this.in[(int)(this.tail % this.in.length)] = item;
+                this.tail++;
+                this.requested--;
+
+                if (this.workers < this.parallelism) {
+                    this.workers++;
+                    spawn = true;
+                }
+            }
+        }
+
+        if (spawn) {
+            try {
+                this.executor.execute(this::work);
+            } catch (RejectedExecutionException e) {
+                synchronized (this.lock) {
+                    this.workers--;
+                    this.error = e;
+                }
+            }
+        }
+
+        this.drain();
+    }
+
+    @Override
+    public void onError(final Throwable e) {
+        Objects.requireNonNull(e);
+        synchronized (this.lock) {
+            if (this.error == null) {
+                this.error = e;
+            }
+        }
+        this.drain();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this.lock) {
+            this.completed = true;
+        }
+        this.drain();
+    }
+
+    private void request(final long n) {
+        synchronized (this.lock) {
+            if (n <= 0) {
+                if (this.error == null) {
+                    this.error = new IllegalArgumentException(
+                        "non-positive subscription request");
+                }
+            } else {
+                this.demand += n;
+                if (this.demand < 0) {
+                    this.demand = Long.MAX_VALUE;
+                }
+            }
+        }
+        this.drain();
+    }
+
+    private void cancel() {
+        final Flow.Subscription s;
+
+        synchronized (this.lock) {
+            s = this.terminate();
+        }
+
+        if (s != null) {
+            s.cancel();
+        }
+    }
+
+    /*
+     * mark the processor as terminated and drop the records it
+     * holds, returning the upstream subscription, if any, that the
+     * caller must cancel. called with the lock held
+     */
+    private Flow.Subscription terminate() {
+        final Flow.Subscription s = this.upstream;
+
+        this.terminated = true;
+        this.upstream = null;
+        this.head = this.next = this.tail;
+        Arrays.fill(this.in, null);
+        Arrays.fill(this.out, null);
+
+        return s;
+    }
+
+    /*
+     * process records until none remain unclaimed
+     */
+    private void work() {
+        for (;;) {
+            final int i;
+            final T item;
+            Object r;
+
+            synchronized (this.lock) {
+                if (this.terminated || this.next == this.tail) {
+                    this.workers--;
+                    return;
+                }
+
+                i = (int)(this.next % this.in.length);
+                this.next++;
+
+                @SuppressWarnings("unchecked")
+                final T t = (T)this.in[i];
+                item = t;
+            }
+
+            try {
+                final String X = this.getter.apply(item);
+
+                if (X == null) {
+                    r = item;
+                } else {
+                    r = Objects.requireNonNull(
+                        this.setter.apply(item,
+                                          this.encrypt
+                                          ? this.ctx.encrypt(X)
+                                          : this.ctx.decrypt(X)));
+                }
+            } catch (RuntimeException e) {
+                r = new Failure(e);
+            }
+
+            synchronized (this.lock) {
+                if (!this.terminated) {
+                    this.in[i] = null;
+                    this.out[i] = r;
+                }
+            }
+
+            this.drain();
+        }
+    }
+
+    /*
+     * publish, in order, whatever results downstream has demanded, and
+     * request more records from upstream when there is room for a
+     * batch. only one thread drains at a time; a thread that finds
+     * another draining leaves it to that thread to drain again
+     */
+    private void drain() {
+        int missed = 1;
+
+        if (this.wip.getAndIncrement() != 0) {
+            return;
+        }
+
+        do {
+            for (;;) {
+                final Flow.Subscriber<? super T> d;
+                Flow.Subscription refill = null, cancel = null;
+                Throwable err = null;
+                boolean complete = false;
+                Object r = null;
+                long n = 0;
+
+                synchronized (this.lock) {
+                    d = this.downstream;
+                    if (d == null || this.terminated) {
+                        break;
+                    }
+
+                    if (this.error != null) {
+                        err = this.error;
+                        cancel = this.terminate();
+                    } else if (this.head < this.tail && this.demand > 0 &&
+                               this.out[(int)(this.head % this.out.length)] != null) {
+                        final int i = (int)(this.head % this.out.length);
+
+                        r = this.out[i];
+                        this.out[i] = null;
+                        this.head++;
+                        this.demand--;
+
+                        if (r instanceof Failure) {
+                            err = ((Failure)r).e;
+                            cancel = this.terminate();
+                        }
+                    } else if (this.head == this.tail && this.completed) {
+                        complete = true;
+                        this.terminate();
+                    }
+
+                    if (!this.terminated && this.upstream != null) {
+                        final long free = this.in.length -
+                            (this.tail - this.head) - this.requested;
+
+                        if (free >= this.batch) {
+                            n = (free / this.batch) * this.batch;
+                            this.requested += n;
+                            refill = this.upstream;
+                        }
+                    }
+                }
+
+                if (cancel != null) {
+                    cancel.cancel();
+                }
+
+                if (err != null) {
+                    d.onError(err);
+                    break;
+                } else if (complete) {
+                    d.onComplete();
+                    break;
+                }
+
+                if (refill != null) {
+                    refill.request(n);
+                }
+
+                if (r != null) {
+                    @SuppressWarnings("unchecked")
+                    final T t = (T)r;
+                    d.onNext(t);
+                } else if (refill == null) {
+                    break;
+                }
+            }
+
+            missed = this.wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+}
@@ -0,0 +1,142 @@
+package ubiqsecurity.fpe;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/*
+ * measures the number of bytes allocated by each encryption and
+ * decryption of representative formats and fails if any exceeds its
+ * budget in allocation.properties.
+ *
+ * the budgets are deliberately a little above the measured values so
+ * that differences between JVMs and in the timing of JIT compilation
+ * don't cause failures. if a change reduces allocation, lower the
+ * budget so that the reduction isn't lost.
+ */
+public class AllocationTest
+{
+    /*
+     * operations are repeated until they're compiled, so that
+     * escape analysis has had a chance to remove allocations,
+     * and then measured over many iterations
+     */
+    private static final int WARMUP = 50000;
+    private static final int ITERATIONS = 20000;
+    private static final int ROUNDS = 3;
+
+    private static com.sun.management.ThreadMXBean mx;
+    private static Properties budget;
+
+    private final byte[] key = new byte[16];
+    private final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        final java.lang.management.ThreadMXBean tmx =
+            ManagementFactory.getThreadMXBean();
+
+        assumeTrue(tmx instanceof com.sun.management.ThreadMXBean);
+        mx = (com.sun.management.ThreadMXBean)tmx;
+        assumeTrue(mx.isThreadAllocatedMemorySupported());
+        mx.setThreadAllocatedMemoryEnabled(true);
+
+        budget = new Properties();
+        try (InputStream in =
+             AllocationTest.class.getResourceAsStream("allocation.properties")) {
+            budget.load(in);
+        }
+    }
+
+    private static String sink;
+
+    /*
+     * return the average number of bytes allocated by @op. the
+     * measurement is repeated, and the least value returned, so that
+     * a recompilation during one measurement doesn't skew the result
+     */
+    private static long measure(final Supplier<String> op) {
+        final long tid = Thread.currentThread().getId();
+        long least = Long.MAX_VALUE;
+
+        for (int i = 0; i < WARMUP; i++) {
+            sink = op.get();
+        }
+
+        for (int j = 0; j < ROUNDS; j++) {
+            final long before = mx.getThreadAllocatedBytes(tid);
+            for (int i = 0; i < ITERATIONS; i++) {
+                sink = op.get();
+            }
+            least = Math.min(least,
+                             (mx.getThreadAllocatedBytes(tid) - before) /
+                             ITERATIONS);
+        }
+
+        return least;
+    }
+
+    private static void check(final String name, final Supplier<String> op) {
+        final String b = budget.getProperty(name);
+        final long bytes = measure(op);
+
+        assertNotNull("no budget for " + name, b);
+        assertTrue(name + " allocated " + bytes +
+                   " bytes per operation; the budget is " + b,
+                   bytes <= Long.parseLong(b.trim()));
+    }
+
+    private void check(final String name, final FFX ctx, final String PT) {
+        final String CT = ctx.encrypt(PT);
+        final FFXResult res = new FFXResult();
+
+        check(name + ".encrypt", () -> ctx.encrypt(PT));
+        check(name + ".decrypt", () -> ctx.decrypt(CT));
+        check(name + ".try", () -> {
+                ctx.tryEncrypt(PT, res);
+                return res.value();
+            });
+    }
+
+    @Test
+    public void ff1_ssn() {
+        check("ff1.ssn", new FF1(key, twk, 0, 0, 10), "123456789");
+    }
+
+    @Test
+    public void ff1_pan() {
+        check("ff1.pan", new FF1(key, twk, 0, 0, 10), "4111111111111111");
+    }
+
+    @Test
+    public void ff1_alnum() {
+        check("ff1.alnum", new FF1(key, twk, 0, 0, 36),
+              "0123456789abcdefghij");
+    }
+
+    @Test
+    public void ff1_long() {
+        /* too large for long arithmetic */
+        check("ff1.long", new FF1(key, twk, 0, 0, 62,
+                                  "0123456789" +
+                                  "ABCDEFGHIJKLMNOPQRSTUVWXYZ" +
+                                  "abcdefghijklmnopqrstuvwxyz"),
+              "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcd");
+    }
+
+    @Test
+    public void ff3_1_ssn() {
+        check("ff3_1.ssn", new FF3_1(key, twk, 10), "123456789");
+    }
+
+    @Test
+    public void ff3_1_pan() {
+        check("ff3_1.pan", new FF3_1(key, twk, 10), "4111111111111111");
+    }
+}
@@ -0,0 +1,289 @@
+package ubiqsecurity.fpe;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ContextRegistryTest
+{
+    private final byte[] key = {
+        (byte)0x2b, (byte)0x7e, (byte)0x15, (byte)0x16,
+        (byte)0x28, (byte)0xae, (byte)0xd2, (byte)0xa6,
+        (byte)0xab, (byte)0xf7, (byte)0x15, (byte)0x88,
+        (byte)0x09, (byte)0xcf, (byte)0x4f, (byte)0x3c,
+    };
+
+    private final byte[] twk = {
+        (byte)0x39, (byte)0x38, (byte)0x37, (byte)0x36,
+        (byte)0x35, (byte)0x34, (byte)0x33,
+    };
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger builds = new AtomicInteger();
+
+    private ContextRegistry registry(final int capacity, final long idle) {
+        return new ContextRegistry(capacity, idle, TimeUnit.NANOSECONDS,
+                                   this.clock::get,
+                                   d -> {
+                                       this.builds.incrementAndGet();
+                                       return d.build();
+                                   });
+    }
+
+    @Test
+    public void hit() {
+        final ContextRegistry reg = registry(4, 0);
+        final FFX ctx;
+
+        ctx = reg.get(ContextRegistry.Descriptor.ff1(key, twk, 0, 0, 10));
+        assertTrue(ctx instanceof FF1);
+        assertEquals("6124200773", ctx.encrypt("0123456789", new byte[] {
+                    (byte)0x39, (byte)0x38, (byte)0x37, (byte)0x36,
+                    (byte)0x35, (byte)0x34, (byte)0x33, (byte)0x32,
+                    (byte)0x31, (byte)0x30, }));
+
+        /* an equal descriptor yields the same context */
+        assertSame(ctx,
+                   reg.get(ContextRegistry.Descriptor.ff1(
+                               Arrays.copyOf(key, key.length),
+                               twk, 0, 0, 10)));
+        assertEquals(1, reg.size());
+
+        assertNotSame(ctx,
+                      reg.get(ContextRegistry.Descriptor.ff1(
+                                  key, twk, 0, 0, 36)));
+        assertTrue(reg.get(ContextRegistry.Descriptor.ff3_1(key, twk, 10))
+                   instanceof FF3_1);
+        assertEquals(3, reg.size());
+    }
+
+    /* acquire the context for @d and release it immediately */
+    private static FFX touch(final ContextRegistry reg,
+                             final ContextRegistry.Descriptor d) {
+        try (ContextRegistry.Lease l = reg.acquire(d)) {
+            return l.context();
+        }
+    }
+
+    @Test
+    public void capacity() {
+        final ContextRegistry reg = registry(2, 0);
+        final ContextRegistry.Descriptor d1, d2, d3;
+        final FFX c1, c2, c3;
+
+        d1 = ContextRegistry.Descriptor.ff1(key, twk, 0, 0, 10);
+        d2 = ContextRegistry.Descriptor.ff1(key, twk, 0, 0, 16);
+        d3 = ContextRegistry.Descriptor.ff1(key, twk, 0, 0, 36);
+
+        c1 = touch(reg, d1);
+        clock.incrementAndGet();
+        c2 = touch(reg, d2);
+        clock.incrementAndGet();
+        /* touch the first so that the second is least recently used */
+        touch(reg, d1);
+        clock.incrementAndGet();
+        c3 = touch(reg, d3);
+
+        assertEquals(2, reg.size());
+        assertFalse(c1.isDestroyed());
+        assertTrue(c2.isDestroyed());
+        assertFalse(c3.isDestroyed());
+
+        assertThrows(IllegalStateException.class, () -> {
+                c2.encrypt("0123456789abcdef");
+            });
+        assertNotSame(c2, touch(reg, d2));
+    }
+
+    @Test
+    public void idle() {
+        final ContextRegistry reg = registry(8, 100);
+        final ContextRegistry.Descriptor d1, d2;
+        final FFX c1, c2;
+
+        d1 = ContextRegistry.Descriptor.ff1(key, twk, 0, 0, 10);
+        d2 = ContextRegistry.Descriptor.ff3_1(key, twk, 10);
+
+        c1 = touch(reg, d1);
+        clock.addAndGet(60);
+        c2 = touch(reg, d2);
+        clock.addAndGet(60);
+
+        reg.cleanUp();
+        assertTrue(c1.isDestroyed());
+        assertFalse(c2.isDestroyed());
+        assertEquals(1, reg.size());
+
+        reg.invalidateAll();
+        assertTrue(c2.isDestroyed());
+        assertEquals(0, reg.size());
+    }
+
+    @Test
+    public void shared() {
+        final ContextRegistry reg = registry(1, 0);
+        final ContextRegistry.Descriptor d1, d2;
+        final FFX c1;
+
+        d1 = ContextRegistry.Descriptor.ff1(key, twk, 0, 0, 10);
+        d2 = ContextRegistry.Descriptor.ff1(key, twk, 0, 0, 16);
+
+        /* a context returned by get() is evicted but not destroyed */
+        c1 = reg.get(d1);
+        clock.incrementAndGet();
+        reg.get(d2);
+
+        assertEquals(1, reg.size());
+        assertFalse(c1.isDestroyed());
+        assertEquals("6124200773", c1.encrypt("0123456789", new byte[] {
+                    (byte)0x39, (byte)0x38, (byte)0x37, (byte)0x36,
+                    (byte)0x35, (byte)0x34, (byte)0x33, (byte)0x32,
+                    (byte)0x31, (byte)0x30, }));
+        clock.incrementAndGet();
+        assertNotSame(c1, reg.get(d1));
+
+        /* but invalidation destroys it, even after a hit */
+        clock.incrementAndGet();
+        final FFX c2 = reg.get(d1);
+        assertSame(c2, reg.get(d1));
+        reg.invalidate(d1);
+        assertTrue(c2.isDestroyed());
+        assertEquals(0, reg.size());
+    }
+
+    @Test
+    public void pinned() {
+        final ContextRegistry reg = registry(8, 0);
+        final ContextRegistry.Descriptor d;
+        final ContextRegistry.Lease l1, l2;
+        final FFX ctx;
+
+        d = ContextRegistry.Descriptor.ff1(key, twk, 0, 0, 10);
+        l1 = reg.acquire(d);
+        l2 = reg.acquire(d);
+        ctx = l1.context();
+        assertSame(ctx, l2.context());
+
+        /* an evicted context is destroyed when its last lease is closed */
+        reg.invalidate(d);
+        assertEquals(0, reg.size());
+        assertFalse(ctx.isDestroyed());
+
+        l1.close();
+        l1.close();
+        assertFalse(ctx.isDestroyed());
+        assertThrows(IllegalStateException.class, () -> {
+                l1.context();
+            });
+
+        l2.close();
+        assertTrue(ctx.isDestroyed());
+        assertEquals(1, builds.get());
+    }
+
+    @Test
+    public void contention() throws Exception {
+        final ContextRegistry reg = registry(4, 0);
+        final ExecutorService pool = Executors.newFixedThreadPool(8);
+        final List<Callable<FFX>> tasks = new ArrayList<>();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            for (int i = 0; i < 64; i++) {
+                tasks.add(() -> {
+                        start.await();
+                        return reg.get(
+                            ContextRegistry.Descriptor.ff1(
+                                key, twk, 0, 0, 10));
+                    });
+            }
+
+            /* release all of the threads at once */
+            pool.submit(start::countDown);
+
+            FFX ctx = null;
+            for (Future<FFX> f : pool.invokeAll(tasks)) {
+                if (ctx == null) {
+                    ctx = f.get();
+                }
+                assertSame(ctx, f.get());
+            }
+            assertEquals(1, builds.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /*
+     * with more descriptors in use than the registry holds, contexts
+     * are evicted constantly, but never out from under a caller
+     */
+    private void churn(final boolean lease) throws Exception {
+        final ContextRegistry reg = registry(2, 0);
+        final ExecutorService pool = Executors.newFixedThreadPool(8);
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        final ContextRegistry.Descriptor[] d =
+            new ContextRegistry.Descriptor[8];
+        final String[] expect = new String[d.length];
+
+        for (int i = 0; i < d.length; i++) {
+            d[i] = ContextRegistry.Descriptor.ff1(key, twk, 0, 0, 10 + i);
+            expect[i] = d[i].build().encrypt("0123456789");
+        }
+
+        try {
+            for (int t = 0; t < 8; t++) {
+                final int k = t;
+
+                tasks.add(() -> {
+                        for (int i = 0; i < 2000; i++) {
+                            final int j = (i * 3 + k) % d.length;
+                            final String out;
+
+                            clock.incrementAndGet();
+                            if (lease) {
+                                try (ContextRegistry.Lease l =
+                                         reg.acquire(d[j])) {
+                                    out = l.context().encrypt("0123456789");
+                                }
+                            } else {
+                                out = reg.get(d[j]).encrypt("0123456789");
+                            }
+                            assertEquals(expect[j], out);
+                        }
+                        return null;
+                    });
+            }
+
+            /* rethrows the IllegalStateException of a destroyed context */
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+            assertTrue(reg.size() <= 2);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void churn() throws Exception {
+        churn(false);
+    }
+
+    @Test
+    public void churnLeased() throws Exception {
+        churn(true);
+    }
+}
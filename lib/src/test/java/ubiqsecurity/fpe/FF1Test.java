@@ -646,4 +646,69 @@ public class FF1Test
               "8ϾĵϺÎ1ϼ1óËĸA14430ϿCϺķϽϻĹ1245ķ2Ï2óô9",
               " ÊËÌÍÎÏðñòóôĵĶķĸĹϺϻϼϽϾϿ0123456789abcABC");
     }
+
+    /*
+     * vectors produced by earlier releases, covering inputs
+     * too large for the cipher to use long arithmetic
+     */
+    private final byte[] ckey = {
+        (byte)0x03, (byte)0x0a, (byte)0x11, (byte)0x18,
+        (byte)0x1f, (byte)0x26, (byte)0x2d, (byte)0x34,
+        (byte)0x3b, (byte)0x42, (byte)0x49, (byte)0x50,
+        (byte)0x57, (byte)0x5e, (byte)0x65, (byte)0x6c,
+        (byte)0x73, (byte)0x7a, (byte)0x81, (byte)0x88,
+        (byte)0x8f, (byte)0x96, (byte)0x9d, (byte)0xa4,
+        (byte)0xab, (byte)0xb2, (byte)0xb9, (byte)0xc0,
+        (byte)0xc7, (byte)0xce, (byte)0xd5, (byte)0xdc,
+    };
+    private final byte[] ctwk = { 1, 2, 3, 4, 5, 6, 7 };
+
+    @Test
+    public void compat1() {
+        test(ckey, ctwk,
+             "0123456789012345678901234567890123456789",
+             "6084429185796206758388015255074823369431", 10);
+    }
+
+    @Test
+    public void compat2() {
+        test(ckey, ctwk,
+             "0123456789abcdefghijklmnopqrst",
+             "quwq4shmj9slkgqcp128wrapmcvva2", 36);
+    }
+
+    @Test
+    public void compat3() {
+        test(ckey, ctwk, "01234567890123456", "50510833084326776", 10);
+        test(ckey, ctwk,
+             "012345678901234567890123456789012",
+             "466118899155827324834677625783493", 10);
+    }
+
+    @Test
+    public void compat4() {
+        test(ckey, ctwk,
+             "0110100101101001011010010110100101101001011010010110100101101001",
+             "1001001110100111010101101111011010101000100101001001010110010010",
+             2);
+    }
+
+    @Test
+    public void plans() {
+        final FF1 ctx = new FF1(Arrays.copyOf(this.key, 16), twk1, 0, 0, 10);
+
+        /* alternating tweaks and lengths use the right cached plans */
+        for (int i = 0; i < 2; i++) {
+            assertEquals("6124200773", ctx.encrypt(PT[0], twk2));
+            assertEquals("2433477484", ctx.encrypt(PT[0]));
+            assertEquals(PT[0] + "0",
+                         ctx.decrypt(ctx.encrypt(PT[0] + "0")));
+            assertEquals(PT[0], ctx.decrypt("6124200773", twk2));
+            assertEquals(PT[0], ctx.decrypt("2433477484"));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> {
+                ctx.encrypt("01234");
+            });
+    }
 }
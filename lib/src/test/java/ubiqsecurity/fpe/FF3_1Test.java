@@ -114,4 +114,60 @@ public class FF3_1Test
              this.twk3,
              PT[1], "0sxaooj0jjj5qqfomh8", 36);
     }
+
+    /*
+     * vectors produced by earlier releases, covering inputs
+     * too large for the cipher to use long arithmetic
+     */
+    private final byte[] ckey = {
+        (byte)0x03, (byte)0x0a, (byte)0x11, (byte)0x18,
+        (byte)0x1f, (byte)0x26, (byte)0x2d, (byte)0x34,
+        (byte)0x3b, (byte)0x42, (byte)0x49, (byte)0x50,
+        (byte)0x57, (byte)0x5e, (byte)0x65, (byte)0x6c,
+        (byte)0x73, (byte)0x7a, (byte)0x81, (byte)0x88,
+        (byte)0x8f, (byte)0x96, (byte)0x9d, (byte)0xa4,
+        (byte)0xab, (byte)0xb2, (byte)0xb9, (byte)0xc0,
+        (byte)0xc7, (byte)0xce, (byte)0xd5, (byte)0xdc,
+    };
+    private final byte[] ctwk = { 1, 2, 3, 4, 5, 6, 7 };
+
+    @Test
+    public void compat1() {
+        test(ckey, ctwk,
+             "0123456789012345678901234567890123456789",
+             "7812443412169117929048988670273344529411", 10);
+        test(ckey, ctwk,
+             "012345678901234567890123456789012345678901234567890123456",
+             "680767567357956480865865810316008988333919010251885682589", 10);
+    }
+
+    @Test
+    public void compat2() {
+        test(ckey, ctwk,
+             "0123456789abcdefghijklmnopqrst",
+             "5uinviam8srtvhrupxkf8e1zo2oca5", 36);
+    }
+
+    @Test
+    public void compat3() {
+        test(ckey, ctwk,
+             "0110100101101001011010010110100101101001",
+             "0100010110110101010100101110000000011000", 2);
+    }
+
+    @Test
+    public void plans() {
+        final FF3_1 ctx = new FF3_1(Arrays.copyOf(this.key, 16), twk1, 10);
+
+        /* alternating tweaks use the right cached plans */
+        for (int i = 0; i < 2; i++) {
+            assertEquals("251467746185412673", ctx.encrypt(PT[0], twk2));
+            assertEquals("075870132022772250", ctx.encrypt(PT[0]));
+            assertEquals(PT[0], ctx.decrypt("251467746185412673", twk2));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> {
+                ctx.encrypt(PT[0], new byte[8]);
+            });
+    }
 }
@@ -0,0 +1,82 @@
+package ubiqsecurity.fpe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FFXAsyncTest
+{
+    private final byte[] key = new byte[16];
+    private final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+
+    @Test
+    public void roundtrip() {
+        final FF1 ctx = new FF1(key, twk, 0, 0, 10);
+        final FFXAsync async = new FFXAsync(ctx);
+        final List<CompletableFuture<String>> l = new ArrayList<>();
+
+        assertSame(ctx, async.context());
+
+        for (int i = 0; i < 100; i++) {
+            final String PT = String.format("%010d", i);
+            l.add(async.encryptAsync(PT)
+                  .thenCompose(CT -> {
+                          assertEquals(ctx.encrypt(PT), CT);
+                          return async.decryptAsync(CT);
+                      }));
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(String.format("%010d", i), l.get(i).join());
+        }
+    }
+
+    @Test
+    public void tweak() {
+        final FF3_1 ctx = new FF3_1(key, twk, 10);
+        final byte[] t = { 7, 6, 5, 4, 3, 2, 1 };
+        final FFXAsync async = new FFXAsync(ctx, Runnable::run);
+        final CompletableFuture<String> f;
+
+        f = async.encryptAsync("0123456789", t);
+        /* the tweak was copied when the operation was submitted */
+        t[0] = 0;
+
+        assertEquals(ctx.encrypt("0123456789", new byte[] { 7, 6, 5, 4, 3, 2, 1 }),
+                     f.join());
+        assertNotEquals(ctx.encrypt("0123456789"), f.join());
+    }
+
+    @Test
+    public void executor() {
+        final AtomicInteger n = new AtomicInteger();
+        final FFXAsync async = new FFXAsync(
+            new FF1(key, twk, 0, 0, 10), r -> {
+                n.incrementAndGet();
+                r.run();
+            });
+
+        async.encryptAsync("0123456789").join();
+        async.decryptAsync("0123456789").join();
+        assertEquals(2, n.get());
+    }
+
+    @Test
+    public void failure() {
+        final FFXAsync async = new FFXAsync(new FF1(key, twk, 0, 0, 10));
+        final CompletionException e =
+            assertThrows(CompletionException.class, () -> {
+                    async.encryptAsync("0123x56789").join();
+                });
+
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+        assertThrows(NullPointerException.class, () -> {
+                new FFXAsync(null);
+            });
+    }
+}
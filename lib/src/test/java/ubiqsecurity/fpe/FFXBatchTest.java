@@ -0,0 +1,152 @@
+package ubiqsecurity.fpe;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FFXBatchTest
+{
+    private final byte[] key = new byte[16];
+    private final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+
+    /* a column of values of varying length, every seventh one null */
+    private static final class Column
+    {
+        final String[] values;
+        final ByteBuffer validity, offsets, data;
+
+        Column(final int rows, final boolean direct) {
+            final Random rng = new Random(rows);
+            final StringBuilder sb = new StringBuilder();
+
+            this.values = new String[rows];
+            this.validity = allocate((rows + 7) / 8, direct);
+            this.offsets = allocate(4 * (rows + 1), direct)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+            for (int i = 0; i < rows; i++) {
+                final int n = 6 + rng.nextInt(14);
+                final StringBuilder v = new StringBuilder();
+
+                for (int j = 0; j < n; j++) {
+                    v.append((char)('0' + rng.nextInt(10)));
+                }
+
+                this.values[i] = v.toString();
+                this.offsets.putInt(4 * i, sb.length());
+                sb.append(v);
+                if (i % 7 != 3) {
+                    this.validity.put(i / 8, (byte)(this.validity.get(i / 8) |
+                                                     (1 << (i % 8))));
+                }
+            }
+            this.offsets.putInt(4 * rows, sb.length());
+
+            this.data = allocate(sb.length(), direct);
+            this.data.put(sb.toString().getBytes(StandardCharsets.US_ASCII));
+            this.data.clear();
+        }
+
+        static ByteBuffer allocate(final int n, final boolean direct) {
+            return direct ? ByteBuffer.allocateDirect(n) : ByteBuffer.allocate(n);
+        }
+
+        String value(final ByteBuffer d, final int i) {
+            final byte[] b = new byte[this.offsets.getInt(4 * i + 4) -
+                                      this.offsets.getInt(4 * i)];
+            for (int j = 0; j < b.length; j++) {
+                b[j] = d.get(this.offsets.getInt(4 * i) + j);
+            }
+            return new String(b, StandardCharsets.US_ASCII);
+        }
+    }
+
+    private void roundtrip(final FFX ctx, final FFXBatch b, final int rows,
+                           final boolean direct) {
+        final Column c = new Column(rows, direct);
+        final ByteBuffer O = Column.allocate(4 * (rows + 1), direct);
+        final ByteBuffer D = Column.allocate(c.data.capacity(), direct);
+
+        b.encrypt(rows, c.validity, c.offsets, c.data, O, D, null);
+
+        for (int i = 0; i < rows; i++) {
+            assertEquals(c.offsets.getInt(4 * i),
+                         O.order(ByteOrder.LITTLE_ENDIAN).getInt(4 * i));
+            assertEquals((i % 7 == 3) ? c.values[i] : ctx.encrypt(c.values[i]),
+                         c.value(D, i));
+        }
+
+        /* in place */
+        b.decrypt(rows, c.validity, c.offsets, D, null, D, null);
+        for (int i = 0; i < rows; i++) {
+            assertEquals(c.values[i], c.value(D, i));
+        }
+    }
+
+    @Test
+    public void sequential() {
+        final FFX ff1 = new FF1(key, twk, 0, 0, 10);
+        final FFX ff3 = new FF3_1(key, twk, 10);
+
+        roundtrip(ff1, new FFXBatch(ff1), 500, false);
+        roundtrip(ff1, new FFXBatch(ff1), 500, true);
+        roundtrip(ff3, new FFXBatch(ff3), 500, true);
+    }
+
+    @Test
+    public void parallel() throws InterruptedException {
+        final ExecutorService ex = Executors.newFixedThreadPool(4);
+        final FFX ctx = new FF1(key, twk, 0, 0, 10);
+
+        try {
+            roundtrip(ctx, new FFXBatch(ctx, ex, 4), 10000, true);
+        } finally {
+            ex.shutdown();
+        }
+    }
+
+    @Test
+    public void positions() {
+        final FFX ctx = new FF1(key, twk, 0, 0, 10);
+        final ByteBuffer O = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer D = ByteBuffer.allocate(16);
+
+        /* one value, at the positions of the buffers */
+        O.putInt(4, 0).putInt(8, 6).position(4);
+        D.position(10);
+        D.duplicate().put("123456".getBytes(StandardCharsets.US_ASCII));
+
+        new FFXBatch(ctx).encrypt(1, null, O, D, null, D, null);
+        assertEquals(4, O.position());
+        assertEquals(10, D.position());
+
+        final byte[] b = new byte[6];
+        D.duplicate().get(b);
+        assertEquals(ctx.encrypt("123456"),
+                     new String(b, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void invalid() {
+        final FFX ctx = new FF1(key, twk, 0, 0, 10);
+        final FFXBatch b = new FFXBatch(ctx);
+        final Column c = new Column(10, false);
+
+        c.data.put(c.offsets.getInt(0) + 1, (byte)'a');
+        assertThrows(IllegalArgumentException.class, () -> {
+                b.encrypt(10, null, c.offsets, c.data, null, c.data, null);
+            });
+        assertThrows(IndexOutOfBoundsException.class, () -> {
+                b.encrypt(11, null, c.offsets, c.data, null, c.data, null);
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                new FFXBatch(new FF1(key, twk, 0, 0, 10, "éabcdefghi"));
+            });
+    }
+}
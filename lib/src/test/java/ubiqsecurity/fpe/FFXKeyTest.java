@@ -0,0 +1,79 @@
+package ubiqsecurity.fpe;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FFXKeyTest
+{
+    private final byte[] key = {
+        (byte)0xef, (byte)0x43, (byte)0x59, (byte)0xd8,
+        (byte)0xd5, (byte)0x80, (byte)0xaa, (byte)0x4f,
+        (byte)0x7f, (byte)0x03, (byte)0x6d, (byte)0x6f,
+        (byte)0x04, (byte)0xfc, (byte)0x6a, (byte)0x94,
+    };
+
+    private final byte[] twk = {
+        (byte)0x39, (byte)0x38, (byte)0x37, (byte)0x36,
+        (byte)0x35, (byte)0x34, (byte)0x33,
+    };
+
+    @Test
+    public void ff1() {
+        final FF1Key k = new FF1Key(key);
+        final FF1 ctx10, ctx36;
+
+        ctx10 = new FF1(k, twk, 0, 0, 10);
+        ctx36 = new FF1(k, twk, 0, 0, 36);
+
+        assertEquals(new FF1(key, twk, 0, 0, 10).encrypt("0123456789"),
+                     ctx10.encrypt("0123456789"));
+        assertEquals(new FF1(key, twk, 0, 0, 36).encrypt("0123456789abcdefghi"),
+                     ctx36.encrypt("0123456789abcdefghi"));
+        assertEquals("0123456789",
+                     ctx10.decrypt(ctx10.encrypt("0123456789")));
+    }
+
+    @Test
+    public void ff3_1() {
+        final FF3_1Key k = new FF3_1Key(key);
+        final FF3_1 ctx;
+
+        ctx = new FF3_1(k, twk, 10);
+        assertEquals("251467746185412673", ctx.encrypt("890121234567890000"));
+        assertEquals("890121234567890000", ctx.decrypt("251467746185412673"));
+    }
+
+    @Test
+    public void size() {
+        assertThrows(IllegalArgumentException.class, () -> {
+                new FF1Key(Arrays.copyOf(key, 15));
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                new FF3_1Key(Arrays.copyOf(key, 20));
+            });
+    }
+
+    @Test
+    public void destroy() {
+        final FF1Key k = new FF1Key(key);
+        final FF1 ctx1, ctx2;
+
+        ctx1 = new FF1(k, twk, 0, 0, 10);
+        ctx2 = new FF1(k, twk, 0, 0, 16);
+
+        /* destroying a context leaves the shared key intact */
+        ctx1.destroy();
+        assertTrue(ctx1.isDestroyed());
+        assertFalse(k.isDestroyed());
+        assertEquals("0123456789",
+                     ctx2.decrypt(ctx2.encrypt("0123456789")));
+
+        k.destroy();
+        assertTrue(ctx2.isDestroyed());
+        assertThrows(IllegalStateException.class, () -> {
+                ctx2.encrypt("0123456789");
+            });
+    }
+}
@@ -0,0 +1,92 @@
+package ubiqsecurity.fpe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FFXLazyListTest
+{
+    private final FFX ctx = new FF1(new byte[16], new byte[0], 0, 0, 10);
+
+    private List<String> plain(final int n) {
+        final List<String> PT = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            PT.add(String.format("%09d", i * 7919));
+        }
+        return PT;
+    }
+
+    private List<String> cipher(final List<String> PT) {
+        final List<String> CT = new ArrayList<>();
+        for (final String s : PT) {
+            CT.add(this.ctx.encrypt(s));
+        }
+        return CT;
+    }
+
+    @Test
+    public void lazy() {
+        final List<String> PT = plain(1000);
+        final FFXLazyList L = new FFXLazyList(ctx, cipher(PT), null);
+
+        assertEquals(1000, L.size());
+        assertEquals(0, L.decrypted());
+
+        assertEquals(PT.get(10), L.get(10));
+        assertEquals(PT.get(10), L.get(10));
+        assertEquals(1, L.decrypted());
+        assertTrue(L.isDecrypted(10));
+        assertFalse(L.isDecrypted(11));
+
+        assertEquals(PT.subList(0, 20), L.subList(0, 20));
+        assertEquals(20, L.decrypted());
+    }
+
+    @Test
+    public void prefetch() {
+        final List<String> PT = plain(1000);
+        final FFXLazyList L = new FFXLazyList(ctx, cipher(PT), null);
+
+        L.prefetch(100, 200).join();
+        assertEquals(100, L.decrypted());
+        for (int i = 100; i < 200; i++) {
+            assertTrue(L.isDecrypted(i));
+        }
+
+        assertEquals(PT, L);
+        assertEquals(1000, L.decrypted());
+    }
+
+    @Test
+    public void nulls() {
+        final FFXLazyList L = new FFXLazyList(
+            ctx, Arrays.asList(ctx.encrypt("123456"), null), null);
+
+        assertEquals(Arrays.asList("123456", null), L);
+        assertEquals(1, L.decrypted());
+    }
+
+    @Test
+    public void invalid() {
+        final FFXLazyList L = new FFXLazyList(
+            ctx, Arrays.asList("123456", "12x456"), null);
+
+        assertEquals(ctx.decrypt("123456"), L.get(0));
+        assertThrows(IllegalArgumentException.class, () -> {
+                L.get(1);
+            });
+        assertThrows(CompletionException.class, () -> {
+                L.prefetch(0, 2).join();
+            });
+        assertThrows(IndexOutOfBoundsException.class, () -> {
+                L.prefetch(0, 3);
+            });
+        assertThrows(UnsupportedOperationException.class, () -> {
+                L.set(0, "000000");
+            });
+    }
+}
@@ -0,0 +1,122 @@
+package ubiqsecurity.fpe;
+
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FFXMetricsTest
+{
+    private final byte[] key = new byte[16];
+    private final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+
+    private static FFXMetrics.Snapshot find(final FFXMetrics m,
+                                            final String algorithm,
+                                            final int radix) {
+        for (FFXMetrics.Snapshot s : m.snapshot()) {
+            if (s.algorithm().equals(algorithm) && s.radix() == radix) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void disabled() {
+        final FF1 ctx = new FF1(key, twk, 0, 0, 10);
+
+        assertNull(FFXMetrics.installed());
+        assertEquals("0123456789",
+                     ctx.decrypt(ctx.encrypt("0123456789")));
+    }
+
+    @Test
+    public void record() {
+        final FFXMetrics m = new FFXMetrics(1);
+        final FF1 ff1 = new FF1(key, twk, 0, 0, 10);
+        final FF3_1 ff3_1 = new FF3_1(key, twk, 36);
+        final FFXResult res = new FFXResult();
+        FFXMetrics.Snapshot s;
+        String CT;
+
+        FFXMetrics.install(m);
+        try {
+            assertSame(m, FFXMetrics.installed());
+
+            CT = ff1.encrypt("0123456789");
+            ff1.decrypt(CT);
+            ff1.encrypt("0123456789", null);
+            assertTrue(ff1.tryEncrypt("012345", res));
+
+            /* failed operations are not recorded */
+            assertFalse(ff1.tryEncrypt("01234x", res));
+
+            ff3_1.encrypt("0123456789abcdefghijklmnopqrstuvwxyz");
+        } finally {
+            FFXMetrics.install(null);
+        }
+
+        /* operations after uninstalling are not recorded */
+        ff1.encrypt("0123456789");
+
+        List<FFXMetrics.Snapshot> l = m.snapshot();
+        assertEquals(2, l.size());
+
+        s = find(m, "FF1", 10);
+        assertNotNull(s);
+        assertEquals(3, s.encrypts());
+        assertEquals(1, s.decrypts());
+        assertEquals(3, s.lengths()[10]);
+        assertEquals(1, s.lengths()[6]);
+        assertEquals(4, s.sampled());
+        assertTrue(s.phaseNanos(FFXMetrics.PRF) > 0);
+        assertTrue(s.nanos() >=
+                   s.phaseNanos(FFXMetrics.CONVERT) +
+                   s.phaseNanos(FFXMetrics.PRF) +
+                   s.phaseNanos(FFXMetrics.ARITHMETIC));
+
+        long ops = 0;
+        for (long c : s.latencies()) {
+            ops += c;
+        }
+        assertEquals(4, ops);
+        assertEquals(FFXMetrics.LATENCY_BUCKETS, s.latencies().length);
+
+        s = find(m, "FF3-1", 36);
+        assertNotNull(s);
+        assertEquals(1, s.encrypts());
+        assertEquals(0, s.decrypts());
+        assertEquals(1, s.lengths()[36]);
+    }
+
+    @Test
+    public void reencrypt() {
+        final FFXMetrics m = new FFXMetrics();
+        final FF1 ctx = new FF1(key, twk, 0, 0, 10);
+        final byte[] key2 = new byte[16];
+        final FF1 ctx2;
+
+        key2[0] = 1;
+        ctx2 = new FF1(key2, twk, 0, 0, 10);
+
+        final String CT = ctx.encrypt("0123456789");
+
+        FFXMetrics.install(m);
+        try {
+            FFX.reencrypt(ctx, ctx2, CT);
+        } finally {
+            FFXMetrics.install(null);
+        }
+
+        final FFXMetrics.Snapshot s = find(m, "FF1", 10);
+        assertEquals(1, s.encrypts());
+        assertEquals(1, s.decrypts());
+    }
+
+    @Test
+    public void invalid() {
+        assertThrows(IllegalArgumentException.class, () -> {
+                new FFXMetrics(0);
+            });
+    }
+}
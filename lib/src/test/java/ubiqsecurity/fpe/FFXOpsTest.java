@@ -0,0 +1,91 @@
+package ubiqsecurity.fpe;
+
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/*
+ * FFXOps has a different implementation for each release in the
+ * multi-release jar. these tests compare whichever one is in use
+ * against straightforward computations of the same results
+ */
+public class FFXOpsTest
+{
+    private final Random rnd = new Random(0);
+
+    @Test
+    public void xor() {
+        for (int len = 0; len < 40; len++) {
+            final byte[] a = new byte[len + 3];
+            final byte[] b = new byte[len + 5];
+            final byte[] d = new byte[len + 7];
+
+            rnd.nextBytes(a);
+            rnd.nextBytes(b);
+
+            FFXOps.xor(d, 7, a, 3, b, 5, len);
+            for (int i = 0; i < len; i++) {
+                assertEquals((byte)(a[3 + i] ^ b[5 + i]), d[7 + i]);
+            }
+
+            /* in place */
+            final byte[] c = a.clone();
+            FFXOps.xor(c, 3, c, 3, b, 5, len);
+            for (int i = 0; i < len; i++) {
+                assertEquals(d[7 + i], c[3 + i]);
+            }
+        }
+    }
+
+    @Test
+    public void rev() {
+        for (int len = 0; len < 40; len++) {
+            final byte[] src = new byte[len];
+            final byte[] dst = new byte[len];
+            final byte[] same;
+
+            rnd.nextBytes(src);
+            same = src.clone();
+
+            FFXOps.rev(dst, src);
+            FFXOps.rev(same, same);
+            for (int i = 0; i < len; i++) {
+                assertEquals(src[len - 1 - i], dst[i]);
+            }
+            assertArrayEquals(dst, same);
+        }
+    }
+
+    private static void div(final long x, final long d) {
+        assertEquals(x + " / " + d,
+                     x / d, FFXOps.div(x, d, FFXOps.reciprocal(d)));
+    }
+
+    @Test
+    public void div() {
+        final long[] ds = {
+            1, 2, 3, 7, 10, 16, 26, 36, 62, 65535, 65536,
+            100000000L, (1L << 32) + 1, 999999999999999L, (1L << 55) - 1,
+            Long.MAX_VALUE,
+        };
+
+        for (long d : ds) {
+            div(0, d);
+            div(d - 1, d);
+            div(d, d);
+            div(Long.MAX_VALUE, d);
+            div(Long.MAX_VALUE - 1, d);
+
+            for (int i = 0; i < 1000; i++) {
+                div(rnd.nextLong() >>> 1, d);
+                div(rnd.nextLong() >>> (1 + rnd.nextInt(62)), d);
+            }
+        }
+
+        for (int i = 0; i < 10000; i++) {
+            final long d = (rnd.nextLong() >>> (1 + rnd.nextInt(62))) + 1;
+            div(rnd.nextLong() >>> 1, d);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 
 import java.util.Arrays;
+import java.util.Random;
 
 import java.math.BigInteger;
 
@@ -79,4 +80,271 @@ public class FFXTest
         s = FFX.rev("abcde");
         assertEquals("edcba", s);
     }
+
+    @Test
+    public void plans() {
+        final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+        final byte[] other = { 7, 6, 5, 4, 3, 2, 1 };
+        final FFX ctx = new FF1(new byte[16], twk, 0, 0, 10);
+        final FFXPlan p10, p12, q10;
+
+        /* plans for the default tweak survive alternating lengths */
+        p10 = ctx.planFor(10, ctx.check(10, null));
+        p12 = ctx.planFor(12, ctx.check(12, null));
+        assertSame(p10, ctx.planFor(10, ctx.check(10, null)));
+        assertSame(p12, ctx.planFor(12, Arrays.copyOf(twk, twk.length)));
+
+        /* and those for other tweaks don't displace them */
+        q10 = ctx.planFor(10, other);
+        assertNotSame(p10, q10);
+        assertSame(q10, ctx.planFor(10, other));
+        assertSame(p10, ctx.planFor(10, ctx.check(10, null)));
+
+        /* lengths beyond the cached ones still work */
+        assertEquals(100, ctx.planFor(100, twk).n);
+        assertSame(ctx.planFor(100, twk), ctx.planFor(100, twk));
+    }
+
+    @Test
+    public void reencrypt() {
+        final byte[] k1 = new byte[16], k2 = new byte[32];
+        final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+        final FFX ff1, ff3_1, hex;
+        final String[] PT = {
+            "0123456789", "9876543210123", "000000000000000000",
+        };
+        final String[] CT = new String[PT.length];
+
+        Arrays.fill(k2, (byte)0x5a);
+        ff1 = new FF1(k1, twk, 0, 0, 10);
+        ff3_1 = new FF3_1(k2, twk, 10);
+        hex = new FF1(k2, twk, 0, 0, 16, "0123456789ABCDEF");
+
+        for (int i = 0; i < PT.length; i++) {
+            CT[i] = ff1.encrypt(PT[i]);
+
+            assertEquals(ff3_1.encrypt(PT[i]),
+                         FFX.reencrypt(ff1, ff3_1, CT[i]));
+            assertEquals(hex.encrypt(PT[i], new byte[0]),
+                         FFX.reencrypt(ff1, hex, CT[i], null, new byte[0]));
+        }
+
+        /* each length recurs, reusing the buffers prepared for it */
+        final String[] CT2 = new String[2 * CT.length];
+        for (int i = 0; i < CT2.length; i++) {
+            CT2[i] = CT[i % CT.length];
+        }
+
+        final String[] out = FFX.reencrypt(ff1, ff3_1, CT2, null, null);
+        for (int i = 0; i < CT2.length; i++) {
+            assertEquals(PT[i % PT.length], ff3_1.decrypt(out[i]));
+        }
+
+        /* the plain text can't be expressed in the new alphabet */
+        final String ct = hex.encrypt("00000000000000EF");
+        assertThrows(IllegalArgumentException.class, () -> {
+                FFX.reencrypt(hex, ff1, ct);
+            });
+        /* nor is the cipher text valid in the old alphabet */
+        assertThrows(IllegalArgumentException.class, () -> {
+                FFX.reencrypt(ff1, hex, "01234x6789");
+            });
+    }
+
+    @Test
+    public void tryCipher() {
+        final FFX ctx = new FF1(new byte[16], new byte[0], 0, 4, 10);
+        final FFXResult res = new FFXResult();
+
+        assertEquals(FFXResult.OK, ctx.validate("0123456789"));
+        assertEquals(FFXResult.INVALID_LENGTH, ctx.validate("01234"));
+        assertEquals(FFXResult.INVALID_CHARACTER, ctx.validate("01234a6789"));
+        assertEquals(FFXResult.INVALID_CHARACTER, ctx.validate("01234-6789"));
+
+        assertTrue(ctx.tryEncrypt("0123456789", res));
+        assertEquals(FFXResult.OK, res.status());
+        assertEquals(ctx.encrypt("0123456789"), res.value());
+
+        assertTrue(ctx.tryDecrypt(res.value(), res));
+        assertEquals("0123456789", res.value());
+        for (int x : res.numerals(0)) {
+            assertEquals(0, x);
+        }
+
+        res.clear();
+        assertEquals(FFXResult.OK, res.status());
+        assertNull(res.value());
+
+        assertFalse(ctx.tryEncrypt("01234", res));
+        assertEquals(FFXResult.INVALID_LENGTH, res.status());
+        assertNull(res.value());
+
+        assertFalse(ctx.tryEncrypt("0123456789", new byte[5], res));
+        assertEquals(FFXResult.INVALID_TWEAK_LENGTH, res.status());
+
+        assertFalse(ctx.tryDecrypt(new StringBuilder("01234a6789"), res));
+        assertEquals(FFXResult.INVALID_CHARACTER, res.status());
+
+        ctx.destroy();
+        assertFalse(ctx.tryEncrypt("0123456789", res));
+        assertEquals(FFXResult.DESTROYED, res.status());
+    }
+
+    @Test
+    public void numerals() {
+        final FFX ctx = new FF3_1(new byte[16], new byte[7], 36);
+        final int[] X = { 99, 1, 2, 3, 4, 5, 6, 7, 8, 35, 99 };
+        final String PT = "12345678z";
+        final String CT = ctx.encrypt(PT);
+
+        ctx.encrypt(X, 1, 9, null);
+        assertEquals(99, X[0]);
+        assertEquals(99, X[10]);
+        for (int i = 0; i < 9; i++) {
+            assertEquals(Character.digit(CT.charAt(i), 36), X[1 + i]);
+        }
+
+        ctx.decrypt(X, 1, 9, null);
+        for (int i = 0; i < 9; i++) {
+            assertEquals(Character.digit(PT.charAt(i), 36), X[1 + i]);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> {
+                ctx.encrypt(X, 0, 9, null);
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                ctx.encrypt(X, 1, 3, null);
+            });
+    }
+
+    private static String pad(final long x, final int radix, final int n) {
+        final String s = Long.toString(x, radix);
+        return new String(new char[n - s.length()]).replace('\0', '0') + s;
+    }
+
+    private static void integers(final FFX ctx, final int n) {
+        final Random rng = new Random(n);
+        final long[] X = new long[64];
+        final long[] Y = new long[X.length];
+        long size = 1;
+
+        for (int i = 0; i < n; i++) {
+            size *= ctx.radix;
+        }
+
+        for (int i = 0; i < X.length; i++) {
+            X[i] = (i < 2) ? i * (size - 1) : (rng.nextLong() >>> 1) % size;
+
+            Y[i] = ctx.encrypt(X[i], n, null);
+            assertEquals(ctx.encrypt(pad(X[i], ctx.radix, n)),
+                         pad(Y[i], ctx.radix, n));
+            assertEquals(X[i], ctx.decrypt(Y[i], n, null));
+        }
+
+        ctx.encrypt(X, 0, X.length, n, null);
+        assertArrayEquals(Y, X);
+        ctx.decrypt(X, 0, X.length, n, null);
+        for (int i = 0; i < X.length; i++) {
+            assertEquals(ctx.decrypt(Y[i], n, null), X[i]);
+        }
+    }
+
+    @Test
+    public void integers() {
+        final byte[] key = new byte[16];
+        final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+
+        integers(new FF1(key, twk, 0, 0, 10), 6);
+        integers(new FF1(key, twk, 0, 0, 10), 18);
+        integers(new FF1(key, twk, 0, 0, 36), 12);
+        integers(new FF1(key, twk, 0, 0, 2), 62);
+        integers(new FF3_1(key, twk, 10), 18);
+        integers(new FF3_1(key, twk, 36), 9);
+    }
+
+    @Test
+    public void ints() {
+        final FFX ctx = new FF1(new byte[16], new byte[0], 0, 0, 10);
+
+        for (int x = 0; x < 1000000000; x += 99999989) {
+            final int y = ctx.encrypt(x, 9, null);
+
+            assertEquals(ctx.encrypt(pad(x, 10, 9)), pad(y, 10, 9));
+            assertEquals(x, ctx.decrypt(y, 9, null));
+        }
+    }
+
+    @Test
+    public void invalidIntegers() {
+        final FFX ctx = new FF1(new byte[16], new byte[0], 0, 0, 10);
+
+        assertThrows(IllegalArgumentException.class, () -> {
+                ctx.encrypt(1000000L, 6, null);
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                ctx.encrypt(-1L, 6, null);
+            });
+        /* 10**19 doesn't fit in a long, nor 10**10 in an int */
+        assertThrows(IllegalArgumentException.class, () -> {
+                ctx.encrypt(0L, 19, null);
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                ctx.encrypt(0, 10, null);
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                ctx.encrypt(new long[] { 1, 1000000 }, 0, 2, 6, null);
+            });
+        assertThrows(IndexOutOfBoundsException.class, () -> {
+                ctx.encrypt(new long[2], 1, 2, 6, null);
+            });
+    }
+
+    private static void packed(final FFX ctx, final String PT) {
+        final int n = PT.length();
+        final String CT = ctx.encrypt(PT);
+        final byte[] P = ctx.encryptPacked(PT, null);
+        final byte[] B = new byte[P.length + 2];
+
+        assertEquals(ctx.packedLength(n), P.length);
+        assertEquals(new BigInteger(CT, ctx.radix), new BigInteger(1, P));
+        assertEquals(PT, ctx.decryptPacked(P, 0, n, null));
+
+        ctx.encryptPacked(PT, null, B, 1);
+        assertArrayEquals(P, Arrays.copyOfRange(B, 1, 1 + P.length));
+        assertEquals(PT, ctx.decryptPacked(B, 1, n, null));
+    }
+
+    @Test
+    public void packed() {
+        final byte[] key = new byte[16];
+        final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+        final FFX ff1 = new FF1(key, twk, 0, 0, 10);
+        final FFX ff3 = new FF3_1(key, twk, 36);
+
+        /* a 16 digit decimal value fits in 7 bytes */
+        assertEquals(7, ff1.packedLength(16));
+        packed(ff1, "4111111111111111");
+        packed(ff1, "000000");
+        packed(ff1, "1234567890123456789012345678901234567890");
+        packed(ff3, "0123456789abcdefghijk");
+        packed(ff3, "zzzzzzz");
+
+        final long CT = ff1.encryptToLong("4111111111111111", null);
+        assertEquals(ff1.encrypt("4111111111111111"),
+                     String.format("%016d", CT));
+        assertEquals("4111111111111111", ff1.decryptFromLong(CT, 16, null));
+
+        /* 10**16 doesn't fit in 7 bytes */
+        assertThrows(IllegalArgumentException.class, () -> {
+                ff1.decryptPacked(new byte[] { 0x23, (byte)0x86, (byte)0xf2,
+                                               0x6f, (byte)0xc1, 0, 0 },
+                                  0, 16, null);
+            });
+        assertThrows(IndexOutOfBoundsException.class, () -> {
+                ff1.decryptPacked(new byte[7], 1, 16, null);
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                ff1.encryptToLong("12345678901234567890", null);
+            });
+    }
 }
@@ -0,0 +1,72 @@
+package ubiqsecurity.fpe;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FFXWarmupTest
+{
+    private final byte[] key = new byte[16];
+    private final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+
+    @Test
+    public void selfTest() {
+        FFXWarmup.selfTest();
+    }
+
+    @Test
+    public void run() {
+        final FFXWarmup.Report r = FFXWarmup.run(
+            Arrays.asList(new FF1(key, twk, 0, 0, 10),
+                          new FF3_1(key, twk, 36)),
+            100);
+
+        /* 5 lengths for FF1 and 4, from 6 to 32, for FF3-1 */
+        assertEquals(900, r.roundTrips());
+        assertTrue(r.nanos() > 0);
+        assertTrue(r.firstBatchNanos() > 0);
+        assertTrue(r.settledAfter() <= r.roundTrips());
+    }
+
+    @Test
+    public void start() throws InterruptedException, ExecutionException {
+        final FFXWarmup.Report r = FFXWarmup.start(
+            Collections.singletonList(new FF1(key, twk, 0, 0, 10)), 10, 9, 40)
+            .get();
+
+        assertEquals(20, r.roundTrips());
+    }
+
+    @Test
+    public void settled() {
+        final AtomicReference<FFXWarmup.Report> at = new AtomicReference<>();
+        final FFXWarmup.Report r = FFXWarmup.run(
+            Collections.singletonList(new FF1(key, twk, 0, 0, 10)), 100000,
+            s -> at.compareAndSet(null, s), 6);
+
+        /* the warm-up stops at the point at which it settles, if it does */
+        if (r.settled()) {
+            assertNotNull(at.get());
+            assertEquals(r.settledAfter(), at.get().settledAfter());
+            assertEquals(r.settledAfter(), at.get().roundTrips());
+            assertEquals(r.settledAfter(), r.roundTrips());
+            assertTrue(r.roundTrips() < 100000);
+        } else {
+            assertNull(at.get());
+            assertEquals(100000, r.roundTrips());
+        }
+    }
+
+    @Test
+    public void invalid() {
+        assertThrows(ExecutionException.class, () -> {
+                FFXWarmup.start(
+                    Collections.singletonList(new FF1(key, twk, 0, 0, 10)),
+                    10, 3).get();
+            });
+    }
+}
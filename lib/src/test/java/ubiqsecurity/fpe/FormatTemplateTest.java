@@ -0,0 +1,95 @@
+package ubiqsecurity.fpe;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FormatTemplateTest
+{
+    private final byte[] key = new byte[16];
+    private final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+
+    @Test
+    public void ssn() {
+        final FF1 ctx = new FF1(key, twk, 0, 0, 10);
+        final FormatTemplate t = FormatTemplate.compile("ddd-dd-dddd");
+        final String CT = t.encrypt(ctx, "123-45-6789");
+        final String d = ctx.encrypt("123456789");
+
+        assertEquals("ddd-dd-dddd", t.template());
+        assertEquals(11, t.length());
+        assertEquals(9, t.slots());
+
+        assertEquals(d.substring(0, 3) + "-" + d.substring(3, 5) + "-" +
+                     d.substring(5), CT);
+        assertEquals("123-45-6789", t.decrypt(ctx, CT));
+    }
+
+    @Test
+    public void buffer() {
+        final FF3_1 ctx = new FF3_1(key, twk, 10);
+        final FormatTemplate t = FormatTemplate.compile("(999) 999-9999");
+        final char[] buf = new char[20];
+        final byte[] twk2 = { 7, 6, 5, 4, 3, 2, 1 };
+
+        t.encrypt(ctx, "(555) 123-4567", twk2, buf, 3);
+        final String CT = new String(buf, 3, 14);
+
+        assertTrue(CT.matches("\\(\\d{3}\\) \\d{3}-\\d{4}"));
+        assertNotEquals(t.encrypt(ctx, "(555) 123-4567"), CT);
+
+        t.decrypt(ctx, CT, twk2, buf, 0);
+        assertEquals("(555) 123-4567", new String(buf, 0, 14));
+    }
+
+    @Test
+    public void classes() {
+        final FF1 upper = new FF1(key, twk, 0, 0, 26, "ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        final FF1 any = new FF1(key, twk, 0, 0, 36);
+        final FormatTemplate t = FormatTemplate.compile("AAA-AAA\\*");
+
+        assertEquals(8, t.length());
+        final String CT = t.encrypt(upper, "ABC-XYZ*");
+        assertTrue(CT.matches("[A-Z]{3}-[A-Z]{3}\\*"));
+        assertEquals("ABC-XYZ*", t.decrypt(upper, CT));
+
+        final FormatTemplate a = FormatTemplate.compile("**.**.**");
+        assertEquals("z1.b2.y3", a.decrypt(any, a.encrypt(any, "z1.b2.y3")));
+
+        /* the class must be the alphabet */
+        assertThrows(IllegalArgumentException.class, () -> {
+                t.encrypt(any, "ABC-XYZ*");
+            });
+        /* having matched one alphabet doesn't match another of its radix */
+        final FF1 lower = new FF1(key, twk, 0, 0, 26);
+        assertThrows(IllegalArgumentException.class, () -> {
+                t.encrypt(lower, "ABC-XYZ*");
+            });
+        assertEquals(CT, t.encrypt(upper, "ABC-XYZ*"));
+    }
+
+    @Test
+    public void invalid() {
+        final FF1 ctx = new FF1(key, twk, 0, 0, 10);
+        final FormatTemplate t = FormatTemplate.compile("ddd-dd-dddd");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+                t.encrypt(ctx, "123-45-678");
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                t.encrypt(ctx, "123 45 6789");
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                t.encrypt(ctx, "123-45-678x");
+            });
+        assertThrows(IndexOutOfBoundsException.class, () -> {
+                t.encrypt(ctx, "123-45-6789", null, new char[12], 2);
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                FormatTemplate.compile("ddd\\");
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                /* too few characters are encrypted */
+                FormatTemplate.compile("d-dd-d").encrypt(ctx, "1-23-4");
+            });
+    }
+}
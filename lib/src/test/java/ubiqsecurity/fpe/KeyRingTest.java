@@ -0,0 +1,111 @@
+package ubiqsecurity.fpe;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class KeyRingTest
+{
+    private final byte[] twk = {};
+
+    private FF1 context(final int seed) {
+        final byte[] key = new byte[16];
+        Arrays.fill(key, (byte)seed);
+        return new FF1(key, twk, 0, 0, 10);
+    }
+
+    @Test
+    public void rotate() {
+        final KeyRing<FF1> ring = new KeyRing<>();
+        final KeyRing.Key<FF1> k1, k2;
+        final String c1, c2;
+
+        assertThrows(IllegalStateException.class, () -> {
+                ring.encrypt("0123456789");
+            });
+
+        ring.add("1", context(1));
+        ring.activate("1");
+
+        k1 = ring.active();
+        assertEquals("1", k1.id());
+        c1 = k1.context().encrypt("0123456789");
+
+        ring.add("2", context(2));
+        assertSame(k1, ring.active());
+        ring.activate("2");
+
+        k2 = ring.active();
+        assertEquals("2", k2.id());
+        c2 = ring.encrypt("0123456789");
+        assertNotEquals(c1, c2);
+
+        /* both keys remain available for decryption */
+        assertEquals("0123456789", ring.decrypt("1", c1));
+        assertEquals("0123456789", ring.decrypt("2", c2));
+
+        assertThrows(IllegalStateException.class, () -> {
+                ring.retire("2");
+            });
+        assertSame(k1.context(), ring.retire("1"));
+        assertFalse(k1.context().isDestroyed());
+
+        assertNull(ring.get("1"));
+        assertEquals(1, ring.ids().size());
+        assertThrows(IllegalArgumentException.class, () -> {
+                ring.decrypt("1", c1);
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                ring.add("2", context(3));
+            });
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+        final KeyRing<FF1> ring = new KeyRing<>();
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread[] readers = new Thread[4];
+
+        ring.add("0", context(0));
+        ring.activate("0");
+
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> {
+                    try {
+                        while (!done.get()) {
+                            final KeyRing.Key<FF1> k = ring.active();
+                            final String ct = k.context().encrypt("0123456789");
+
+                            /*
+                             * the key may have been retired in the
+                             * meantime, but the context must still work
+                             */
+                            assertEquals("0123456789",
+                                         k.context().decrypt(ct));
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                });
+            readers[i].start();
+        }
+
+        for (int i = 1; i < 50; i++) {
+            ring.add(Integer.toString(i), context(i));
+            ring.activate(Integer.toString(i));
+            ring.retire(Integer.toString(i - 1));
+        }
+
+        done.set(true);
+        for (Thread t : readers) {
+            t.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals("49", ring.active().id());
+    }
+}
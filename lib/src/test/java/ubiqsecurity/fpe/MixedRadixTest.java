@@ -0,0 +1,107 @@
+package ubiqsecurity.fpe;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MixedRadixTest
+{
+    private static final String L = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final String D = "0123456789";
+    private static final String A = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    private final byte[] key = new byte[16];
+    private final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+
+    private static String random(final Random r, final String[] alphabets) {
+        final StringBuilder sb = new StringBuilder();
+        for (String a : alphabets) {
+            sb.append(a.charAt(r.nextInt(a.length())));
+        }
+        return sb.toString();
+    }
+
+    private static void check(final String[] alphabets, final String s) {
+        assertEquals(alphabets.length, s.length());
+        for (int i = 0; i < s.length(); i++) {
+            assertTrue(alphabets[i].indexOf(s.charAt(i)) >= 0);
+        }
+    }
+
+    @Test
+    public void plate() {
+        final String[] alphabets = { L, L, L, D, D, D, D };
+        final MixedRadix m = new MixedRadix(key, twk, alphabets);
+        final Random r = new Random(1);
+        final Set<String> seen = new HashSet<>();
+
+        assertEquals(7, m.length());
+        assertEquals(BigInteger.valueOf(26L * 26 * 26 * 10000), m.size());
+        /* 2**28 / 175760000 */
+        assertEquals(1.527, m.expectedIterations(), 0.001);
+
+        for (int i = 0; i < 1000; i++) {
+            final String PT = random(r, alphabets);
+            final String CT = m.encrypt(PT);
+
+            check(alphabets, CT);
+            assertEquals(PT, m.decrypt(CT));
+            seen.add(CT);
+        }
+        assertTrue(seen.size() > 990);
+
+        assertNotEquals(m.encrypt("ABC1234"),
+                        m.encrypt("ABC1234", new byte[] { 7, 6, 5 }));
+        assertEquals("ABC1234",
+                     m.decrypt(m.encrypt("ABC1234", new byte[] { 7, 6, 5 }),
+                               new byte[] { 7, 6, 5 }));
+    }
+
+    @Test
+    public void large() {
+        final String[] alphabets = new String[40];
+        final Random r = new Random(2);
+
+        for (int i = 0; i < alphabets.length; i++) {
+            alphabets[i] = (i % 3 == 0) ? L : ((i % 3 == 1) ? D : A);
+        }
+
+        final MixedRadix m = new MixedRadix(new FF1Key(key), twk, alphabets);
+        assertTrue(m.size().bitLength() > 62);
+        assertTrue(m.expectedIterations() >= 1 && m.expectedIterations() < 2);
+
+        for (int i = 0; i < 100; i++) {
+            final String PT = random(r, alphabets);
+            final String CT = m.encrypt(PT);
+
+            check(alphabets, CT);
+            assertEquals(PT, m.decrypt(CT));
+        }
+    }
+
+    @Test
+    public void invalid() {
+        final MixedRadix m = new MixedRadix(key, twk, L, L, L, D, D, D, D);
+
+        assertThrows(IllegalArgumentException.class, () -> {
+                m.encrypt("ABC123");
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                m.encrypt("AB01234");
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                /* 26 * 10**4 is too small a domain */
+                new MixedRadix(key, twk, L, D, D, D, D);
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                new MixedRadix(key, twk, L, L, L, D, D, D, "00");
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                new MixedRadix(key, twk, L, L, L, D, D, D, "0");
+            });
+    }
+}
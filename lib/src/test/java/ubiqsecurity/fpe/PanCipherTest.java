@@ -0,0 +1,100 @@
+package ubiqsecurity.fpe;
+
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PanCipherTest
+{
+    private final byte[] key = new byte[16];
+    private final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+
+    private static boolean luhn(final String s) {
+        int sum = 0;
+
+        for (int i = s.length() - 1, dbl = 0; i >= 0; i--, dbl ^= 1) {
+            final int d = (s.charAt(i) - '0') << dbl;
+            sum += (d > 9) ? d - 9 : d;
+        }
+
+        return sum % 10 == 0;
+    }
+
+    /* a random, valid card number of length @n */
+    private static String pan(final Random r, final int n) {
+        final StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < n - 1; i++) {
+            sb.append((char)('0' + r.nextInt(10)));
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            if (luhn(sb.toString() + c)) {
+                return sb.append(c).toString();
+            }
+        }
+        throw new AssertionError();
+    }
+
+    private void roundtrip(final FFX ctx) {
+        final PanCipher p = new PanCipher(ctx);
+        final Random r = new Random(1);
+
+        for (int i = 0; i < 2000; i++) {
+            final String PT = pan(r, 16 + i % 4);
+            final String CT = p.encrypt(PT);
+
+            assertEquals(PT.length(), CT.length());
+            assertTrue(luhn(CT));
+            assertEquals(PT.substring(0, 6), CT.substring(0, 6));
+            assertEquals(PT.substring(PT.length() - 4),
+                         CT.substring(CT.length() - 4));
+            assertEquals(PT, p.decrypt(CT));
+        }
+
+        assertEquals(4000, p.operations());
+        /* the average of 4000 geometric variables with a mean of 10 */
+        assertEquals(PanCipher.expectedIterations(), p.averageIterations(), 1.0);
+    }
+
+    @Test
+    public void ff1() {
+        roundtrip(new FF1(key, twk, 0, 0, 10));
+    }
+
+    @Test
+    public void ff3_1() {
+        roundtrip(new FF3_1(key, twk, 10));
+    }
+
+    @Test
+    public void tweak() {
+        final PanCipher p = new PanCipher(new FF1(key, twk, 0, 0, 10));
+        final byte[] twk2 = { 9, 9 };
+        final String CT = p.encrypt("4111111111111111", twk2);
+
+        assertNotEquals(p.encrypt("4111111111111111"), CT);
+        assertEquals("4111111111111111", p.decrypt(CT, twk2));
+    }
+
+    @Test
+    public void invalid() {
+        final PanCipher p = new PanCipher(new FF1(key, twk, 0, 0, 10));
+
+        assertEquals(0, p.averageIterations(), 0);
+        assertThrows(IllegalArgumentException.class, () -> {
+                /* fails the Luhn check */
+                p.encrypt("4111111111111112");
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                /* too short */
+                p.encrypt("378282246310005");
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                p.encrypt("4111-11111111111");
+            });
+        assertThrows(IllegalArgumentException.class, () -> {
+                new PanCipher(new FF1(key, twk, 0, 0, 16));
+            });
+    }
+}
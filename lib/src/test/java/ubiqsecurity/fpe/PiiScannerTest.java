@@ -0,0 +1,131 @@
+package ubiqsecurity.fpe;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PiiScannerTest
+{
+    private final byte[] key = new byte[16];
+    private final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+    private final FF1 ctx = new FF1(key, twk, 0, 0, 10);
+
+    private static String scan(final PiiScanner s, final String text)
+        throws IOException {
+        final StringWriter w = new StringWriter();
+        s.scan(new StringReader(text), w);
+        return w.toString();
+    }
+
+    /* encrypt the digits of @s, keeping everything else */
+    private String e(final String s) {
+        final String d = s.replaceAll("[^0-9]", "");
+        final String c = this.ctx.encrypt(d);
+        final StringBuilder sb = new StringBuilder();
+
+        for (int i = 0, k = 0; i < s.length(); i++) {
+            final char ch = s.charAt(i);
+            sb.append((ch >= '0' && ch <= '9') ? c.charAt(k++) : ch);
+        }
+        return sb.toString();
+    }
+
+    /* encrypt a card number, recomputing its check digit */
+    private String pan(final String s) {
+        final int last = s.length() - 1;
+        final String c = this.e(s.substring(0, last));
+        final String d = c.replaceAll("[^0-9]", "");
+        final int[] X = new int[d.length()];
+
+        for (int i = 0; i < X.length; i++) {
+            X[i] = d.charAt(i) - '0';
+        }
+        return c + PiiScanner.check(X, X.length);
+    }
+
+    @Test
+    public void check() {
+        final int[] X = { 7, 9, 9, 2, 7, 3, 9, 8, 7, 1 };
+        assertEquals(3, PiiScanner.check(X, X.length));
+    }
+
+    @Test
+    public void shapes() throws IOException {
+        final PiiScanner enc = new PiiScanner(ctx, true);
+        final PiiScanner dec = new PiiScanner(ctx, false);
+        final String PT =
+            "ssn=123-45-6789, card 4111 1111 1111 1111 and 4111-1111-1111-1111;\n" +
+            "call (555) 123-4567 or +1 555.123.4567 or 555 123 4567\n" +
+            "card:378282246310005 visa 4012888888881881.\n" +
+            /* not matched: invalid check digit, too long, mixed
+             * separators, part of a word or number */
+            "x 4111111111111112 41111111111111111111111 4111 1111-1111 1111\n" +
+            "a123-45-6789 123-45-67890 id1234567890 555-123.4567 (555)123-4567\n" +
+            "é 123-45-6789";
+        final String CT =
+            "ssn=" + e("123-45-6789") + ", card " + pan("4111 1111 1111 1111") +
+            " and " + pan("4111-1111-1111-1111") + ";\n" +
+            "call " + e("(555) 123-4567") + " or +1 " + e("555.123.4567") +
+            " or " + e("555 123 4567") + "\n" +
+            "card:" + pan("378282246310005") + " visa " + pan("4012888888881881") +
+            ".\n" +
+            "x 4111111111111112 41111111111111111111111 4111 1111-1111 1111\n" +
+            "a123-45-6789 123-45-67890 id1234567890 555-123.4567 (555)123-4567\n" +
+            "é " + e("123-45-6789");
+
+        assertEquals(CT, scan(enc, PT));
+        assertEquals(PT, scan(dec, CT));
+    }
+
+    @Test
+    public void kinds() throws IOException {
+        final PiiScanner s = new PiiScanner(
+            ctx, true, EnumSet.of(PiiScanner.Kind.SSN));
+
+        assertEquals(e("123-45-6789") + " 4111111111111111 555-123-4567",
+                     scan(s, "123-45-6789 4111111111111111 555-123-4567"));
+    }
+
+    @Test
+    public void stream() throws IOException {
+        final PiiScanner enc = new PiiScanner(ctx, true);
+        final StringBuilder pt = new StringBuilder();
+        final StringBuilder ct = new StringBuilder();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long n;
+
+        /* lines of varying lengths, so that matches cross the buffers */
+        for (int i = 0; i < 5000; i++) {
+            final String pad = new String(new char[i % 41]).replace('\0', 'é');
+
+            pt.append(pad + " 4111 1111 1111 1111 #" + i + " 123-45-6789\n");
+            ct.append(pad + " " + pan("4111 1111 1111 1111") + " #" + i + " " +
+                      e("123-45-6789") + "\n");
+        }
+
+        assertEquals(ct.toString(), scan(enc, pt.toString()));
+
+        n = enc.scan(
+            Channels.newChannel(new ByteArrayInputStream(
+                                    pt.toString().getBytes(StandardCharsets.UTF_8))),
+            Channels.newChannel(out));
+        assertEquals(10000, n);
+        assertEquals(ct.toString(),
+                     new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void invalid() {
+        assertThrows(IllegalArgumentException.class, () -> {
+                new PiiScanner(new FF1(key, twk, 0, 0, 16), true);
+            });
+    }
+}
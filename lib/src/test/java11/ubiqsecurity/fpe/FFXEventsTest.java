@@ -0,0 +1,136 @@
+package ubiqsecurity.fpe;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FFXEventsTest
+{
+    private final byte[] key = new byte[16];
+    private final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+
+    private List<RecordedEvent> record(final Runnable r) throws Exception {
+        final Path f = Files.createTempFile("ffx", ".jfr");
+
+        try (Recording rec = new Recording()) {
+            rec.enable("ubiqsecurity.fpe.Operation").withThreshold(null);
+            rec.start();
+            r.run();
+            rec.stop();
+            rec.dump(f);
+            return RecordingFile.readAllEvents(f);
+        } finally {
+            Files.delete(f);
+        }
+    }
+
+    @Test
+    public void disabled() {
+        assertNull(FFXEvents.begin());
+    }
+
+    /*
+     * run by dormant() in a new JVM, in which nothing else has touched
+     * Flight Recorder
+     */
+    public static void main(final String[] args) {
+        final FF1 ctx = new FF1(new byte[16], new byte[0], 0, 0, 10);
+
+        ctx.decrypt(ctx.encrypt("0123456789"));
+    }
+
+    /*
+     * the first operations must not initialize Flight Recorder, which
+     * takes hundreds of milliseconds. that loads its internal classes,
+     * which the new JVM is asked to list
+     */
+    @Test
+    public void dormant() throws Exception {
+        final Process p = new ProcessBuilder(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-verbose:class",
+            "-cp", System.getProperty("java.class.path"),
+            FFXEventsTest.class.getName())
+            .redirectErrorStream(true).start();
+        final List<String> out;
+
+        try (BufferedReader r = new BufferedReader(
+                 new InputStreamReader(p.getInputStream(),
+                                       StandardCharsets.UTF_8))) {
+            out = r.lines().collect(Collectors.toList());
+        }
+
+        assertTrue(p.waitFor(60, TimeUnit.SECONDS));
+        assertEquals(0, p.exitValue());
+        assertTrue(out.stream().anyMatch(l -> l.contains("ubiqsecurity.fpe.FFXEvents ")));
+        assertFalse(out.stream().anyMatch(l -> l.contains("jdk.jfr.internal.")));
+    }
+
+    @Test
+    public void events() throws Exception {
+        final FF1 ff1 = new FF1(key, twk, 0, 0, 10);
+        final FF3_1 ff3_1 = new FF3_1(key, twk, 10);
+        final List<RecordedEvent> l = record(() -> {
+                ff1.decrypt(ff1.encrypt("0123456789"));
+                ff3_1.encrypt("0123456789");
+            });
+        RecordedEvent e;
+
+        assertEquals(3, l.size());
+
+        e = l.get(0);
+        assertEquals("ubiqsecurity.fpe.Operation", e.getEventType().getName());
+        assertEquals("FF1", e.getString("algorithm"));
+        assertEquals("encrypt", e.getString("operation"));
+        assertEquals(10, e.getInt("radix"));
+        assertEquals(10, e.getInt("length"));
+        assertEquals(7, e.getInt("tweakLength"));
+        assertEquals("long", e.getString("backend"));
+        assertFalse(e.getBoolean("cacheHit"));
+
+        e = l.get(1);
+        assertEquals("decrypt", e.getString("operation"));
+        assertTrue(e.getBoolean("cacheHit"));
+
+        e = l.get(2);
+        assertEquals("FF3-1", e.getString("algorithm"));
+    }
+
+    @Test
+    public void threshold() throws Exception {
+        final FF1 ctx = new FF1(key, twk, 0, 0, 10);
+        final List<RecordedEvent> l;
+
+        try (Recording rec = new Recording()) {
+            /* the default threshold excludes fast operations */
+            final Path f = Files.createTempFile("ffx", ".jfr");
+            try {
+                rec.enable("ubiqsecurity.fpe.Operation");
+                rec.start();
+                for (int i = 0; i < 100; i++) {
+                    ctx.encrypt("0123456789");
+                }
+                rec.stop();
+                rec.dump(f);
+                l = RecordingFile.readAllEvents(f);
+            } finally {
+                Files.delete(f);
+            }
+        }
+
+        assertTrue(l.size() < 100);
+    }
+}
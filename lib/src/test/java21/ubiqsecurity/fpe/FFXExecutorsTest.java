@@ -0,0 +1,16 @@
+package ubiqsecurity.fpe;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FFXExecutorsTest
+{
+    @Test
+    public void virtual() {
+        assertTrue(CompletableFuture.supplyAsync(
+                       () -> Thread.currentThread().isVirtual(),
+                       FFXExecutors.standard()).join());
+    }
+}
@@ -0,0 +1,244 @@
+package ubiqsecurity.fpe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FFXProcessorTest
+{
+    private final byte[] twk = { 1, 2, 3, 4, 5, 6, 7 };
+    private final FF1 ctx = new FF1(new byte[16], twk, 0, 0, 10);
+    private final ExecutorService ex = Executors.newFixedThreadPool(4);
+
+    /* a record with a field to be encrypted */
+    private static final class Record
+    {
+        final int id;
+        String ssn;
+
+        Record(final int id, final String ssn) {
+            this.id = id;
+            this.ssn = ssn;
+        }
+    }
+
+    /* publishes @n records, counting the demand signalled to it */
+    private static final class Source implements Flow.Publisher<Record>
+    {
+        final int n;
+        final AtomicLong requested = new AtomicLong();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        Source(final int n) {
+            this.n = n;
+        }
+
+        public void subscribe(final Flow.Subscriber<? super Record> s) {
+            s.onSubscribe(new Flow.Subscription() {
+                    int sent = 0;
+                    long demand = 0;
+                    boolean busy = false;
+
+                    public synchronized void request(final long k) {
+                        requested.addAndGet(k);
+                        demand += k;
+                        if (busy) {
+                            return;
+                        }
+                        busy = true;
+                        while (demand > 0 && sent < n && !cancelled.get()) {
+                            demand--;
+                            s.onNext(new Record(sent, String.format("%09d", sent)));
+                            sent++;
+                        }
+                        if (sent == n && !cancelled.get()) {
+                            sent++;
+                            s.onComplete();
+                        }
+                        busy = false;
+                    }
+
+                    public void cancel() {
+                        cancelled.set(true);
+                    }
+                });
+        }
+    }
+
+    /*
+     * collects records, requesting @initial of them on subscription.
+     * @arrived is released when the records most recently requested
+     * have all arrived
+     */
+    private static final class Sink implements Flow.Subscriber<Record>
+    {
+        final List<Record> records = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final long initial;
+        volatile CountDownLatch arrived;
+        volatile Flow.Subscription subscription;
+        volatile Throwable error;
+
+        Sink(final long initial) {
+            this.initial = initial;
+            this.arrived = new CountDownLatch(
+                (int)Math.min(initial, Integer.MAX_VALUE));
+        }
+
+        /* request @k more records, returning the latch for their arrival */
+        CountDownLatch request(final int k) {
+            final CountDownLatch l = new CountDownLatch(k);
+
+            this.arrived = l;
+            this.subscription.request(k);
+            return l;
+        }
+
+        public void onSubscribe(final Flow.Subscription s) {
+            this.subscription = s;
+            if (this.initial > 0) {
+                s.request(this.initial);
+            }
+        }
+
+        public void onNext(final Record r) {
+            synchronized (this.records) {
+                this.records.add(r);
+            }
+            this.arrived.countDown();
+        }
+
+        public void onError(final Throwable e) {
+            this.error = e;
+            this.done.countDown();
+        }
+
+        public void onComplete() {
+            this.done.countDown();
+        }
+    }
+
+    private FFXProcessor<Record> processor(final boolean encrypt) {
+        return new FFXProcessor<>(
+            ctx, encrypt,
+            r -> r.ssn,
+            (r, v) -> new Record(r.id, v),
+            16, 4, ex);
+    }
+
+    @After
+    public void shutdown() {
+        ex.shutdownNow();
+    }
+
+    @Test
+    public void ordered() throws Exception {
+        final Source src = new Source(1000);
+        final FFXProcessor<Record> p = processor(true);
+        final Sink sink = new Sink(Long.MAX_VALUE);
+
+        p.subscribe(sink);
+        src.subscribe(p);
+
+        assertTrue(sink.done.await(30, TimeUnit.SECONDS));
+        assertNull(sink.error);
+        assertEquals(1000, sink.records.size());
+        for (int i = 0; i < 1000; i++) {
+            final Record r = sink.records.get(i);
+            assertEquals(i, r.id);
+            assertEquals(ctx.encrypt(String.format("%09d", i)), r.ssn);
+            assertEquals(String.format("%09d", i), ctx.decrypt(r.ssn));
+        }
+    }
+
+    @Test
+    public void bounded() throws Exception {
+        final Source src = new Source(1000);
+        final FFXProcessor<Record> p = processor(true);
+        final Sink sink = new Sink(0);
+
+        p.subscribe(sink);
+        src.subscribe(p);
+
+        /* with no downstream demand, only two batches are requested */
+        assertEquals(32, src.requested.get());
+        assertTrue(sink.records.isEmpty());
+
+        /* consuming less than a batch doesn't make room for another */
+        assertTrue(sink.request(10).await(30, TimeUnit.SECONDS));
+        assertEquals(10, sink.records.size());
+        assertEquals(32, src.requested.get());
+
+        sink.subscription.request(Long.MAX_VALUE);
+        assertTrue(sink.done.await(30, TimeUnit.SECONDS));
+        assertEquals(1000, sink.records.size());
+        assertTrue(src.requested.get() <= 1000 + 32);
+    }
+
+    @Test
+    public void failure() throws Exception {
+        final Source src = new Source(100);
+        final FFXProcessor<Record> p = new FFXProcessor<>(
+            ctx, true,
+            r -> (r.id == 50) ? "12345678x" : r.ssn,
+            (r, v) -> new Record(r.id, v),
+            16, 4, ex);
+        final Sink sink = new Sink(Long.MAX_VALUE);
+
+        p.subscribe(sink);
+        src.subscribe(p);
+
+        assertTrue(sink.done.await(30, TimeUnit.SECONDS));
+        assertTrue(sink.error instanceof IllegalArgumentException);
+        /* the records before the failure were published in order */
+        assertEquals(50, sink.records.size());
+        assertTrue(src.cancelled.get());
+    }
+
+    @Test
+    public void cancel() throws Exception {
+        final Source src = new Source(1000);
+        final FFXProcessor<Record> p = processor(false);
+        final Sink sink = new Sink(5);
+
+        p.subscribe(sink);
+        src.subscribe(p);
+
+        assertTrue(sink.arrived.await(30, TimeUnit.SECONDS));
+        sink.subscription.cancel();
+        assertTrue(src.cancelled.get());
+        assertEquals(5, sink.records.size());
+
+        /* a second subscriber is rejected */
+        final Sink second = new Sink(1);
+        p.subscribe(second);
+        assertTrue(second.done.await(1, TimeUnit.SECONDS));
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void nulls() throws Exception {
+        final Source src = new Source(10);
+        final FFXProcessor<Record> p = new FFXProcessor<>(
+            ctx, true, r -> null, (r, v) -> null, 4, 2, ex);
+        final Sink sink = new Sink(Long.MAX_VALUE);
+
+        p.subscribe(sink);
+        src.subscribe(p);
+
+        assertTrue(sink.done.await(30, TimeUnit.SECONDS));
+        assertNull(sink.error);
+        assertEquals(10, sink.records.size());
+        assertEquals("000000003", sink.records.get(3).ssn);
+    }
+}
@@ -0,0 +1,94 @@
+package ubiqsecurity.fpe.loadgen;
+
+/*
+ * a histogram of latencies, in nanoseconds, with a relative error of
+ * at most 1/32. values below 64 are counted exactly; above that, each
+ * power of two is divided into 32 buckets of equal width. recording is
+ * a few arithmetic operations and an increment, with no allocation, so
+ * that it doesn't disturb what is measured. a histogram isn't thread
+ * safe: each thread records into its own, and they are merged after.
+ */
+final class Histogram
+{
+    private static final int SUB = 5;
+    private static final int BUCKETS = (64 - SUB + 1) << SUB;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count, sum, max;
+
+    static int index(final long v) {
+        final int e = 63 - Long.numberOfLeadingZeros(v);
+
+        if (v < (2L << SUB)) {
+            return (int)v;
+        }
+        /* v >>> shift is from 32 to 63; its low bits select the bucket */
+        return ((e - SUB + 1) << SUB) + (int)((v >>> (e - SUB)) & ((1 << SUB) - 1));
+    }
+
+    /* the largest value counted in bucket @i */
+    static long highest(final int i) {
+        final int shift = (i >>> SUB) - 1;
+
+        if (i < (2 << SUB)) {
+            return i;
+        }
+        return ((((long)(i & ((1 << SUB) - 1)) | (1L << SUB)) + 1) << shift) - 1;
+    }
+
+    void record(long v) {
+        if (v < 0) {
+            v = 0;
+        }
+
+        this.counts[index(v)]++;
+        this.count++;
+        this.sum += v;
+        if (v > this.max) {
+            this.max = v;
+        }
+    }
+
+    void add(final Histogram h) {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.counts[i] += h.counts[i];
+        }
+        this.count += h.count;
+        this.sum += h.sum;
+        this.max = Math.max(this.max, h.max);
+    }
+
+    long count() {
+        return this.count;
+    }
+
+    long max() {
+        return this.max;
+    }
+
+    double mean() {
+        return (this.count > 0) ? (double)this.sum / this.count : 0;
+    }
+
+    /*
+     * the value below which the fraction @q of the recorded values lie,
+     * reported as the largest value of its bucket, or 0 if none were
+     * recorded
+     */
+    long percentile(final double q) {
+        final long rank = Math.max((long)Math.ceil(q * this.count), 1);
+        long seen = 0;
+
+        if (this.count == 0) {
+            return 0;
+        }
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), this.max);
+            }
+        }
+        return this.max;
+    }
+}
@@ -0,0 +1,153 @@
+package ubiqsecurity.fpe.loadgen;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/*
+ * inputs shaped like personal data. each kind generates the part of a
+ * value that is encrypted, whose characters belong to the kind's
+ * alphabet, with lengths and contents distributed roughly as in real
+ * data so that the plans and the arithmetic exercised are realistic.
+ */
+enum Inputs
+{
+    /* card numbers of 15 or 16 digits, with valid issuer prefixes and check digits */
+    PAN(Inputs.DIGITS) {
+        String generate(final Random r) {
+            final String[] prefixes = { "4", "51", "52", "53", "54", "55", "2221",
+                                        "34", "37", "6011" };
+            final String p = prefixes[r.nextInt(prefixes.length)];
+            final int n = p.startsWith("3") ? 15 : 16;
+            final StringBuilder sb = new StringBuilder(p);
+
+            while (sb.length() < n - 1) {
+                sb.append((char)('0' + r.nextInt(10)));
+            }
+            return sb.append((char)('0' + luhn(sb))).toString();
+        }
+    },
+
+    /* social security numbers, without dashes, with valid area and group numbers */
+    SSN(Inputs.DIGITS) {
+        String generate(final Random r) {
+            int area;
+
+            do {
+                area = 1 + r.nextInt(899);
+            } while (area == 666);
+
+            return String.format("%03d%02d%04d", area,
+                                 1 + r.nextInt(99), 1 + r.nextInt(9999));
+        }
+    },
+
+    /* the check digits and account numbers of IBANs of a few countries */
+    IBAN(Inputs.DIGITS + Inputs.UPPER) {
+        String generate(final Random r) {
+            /* country code and the format of its BBAN: n digits, a letters, c either */
+            final String[] formats = { "DE18n", "GB4a14n", "FR10n11c2n", "NL4a10n" };
+            final String f = formats[r.nextInt(formats.length)];
+            final StringBuilder bban = new StringBuilder();
+
+            for (int i = 2; i < f.length(); ) {
+                int j = i, k;
+
+                while (Character.isDigit(f.charAt(j))) {
+                    j++;
+                }
+                for (k = Integer.parseInt(f.substring(i, j)); k > 0; k--) {
+                    final String a = (f.charAt(j) == 'n') ? Inputs.DIGITS
+                        : (f.charAt(j) == 'a') ? Inputs.UPPER
+                        : Inputs.DIGITS + Inputs.UPPER;
+                    bban.append(a.charAt(r.nextInt(a.length())));
+                }
+                i = j + 1;
+            }
+
+            return String.format("%02d", check(f.substring(0, 2), bban)) + bban;
+        }
+    },
+
+    /* the local parts of email addresses */
+    EMAIL(Inputs.DIGITS + Inputs.LOWER + "._") {
+        String generate(final Random r) {
+            final String[] first = { "james", "mary", "li", "olga", "ahmed",
+                                     "sofia", "jean", "wei", "maria", "oluwaseun" };
+            final String[] last = { "smith", "garcia", "wang", "muller", "kim",
+                                    "rossi", "nguyen", "okafor", "silva", "ng" };
+            final String f = first[r.nextInt(first.length)];
+            final String l = last[r.nextInt(last.length)];
+
+            switch (r.nextInt(4)) {
+            case 0:
+                return f + "." + l;
+            case 1:
+                return f.charAt(0) + l + r.nextInt(100);
+            case 2:
+                return f + "_" + l + (1950 + r.nextInt(60));
+            default:
+                return l + "." + f.charAt(0);
+            }
+        }
+    },
+
+    /* opaque tokens of 22 alphanumeric characters, such as encoded UUIDs */
+    TOKEN(Inputs.DIGITS + Inputs.UPPER + Inputs.LOWER) {
+        String generate(final Random r) {
+            final char[] c = new char[22];
+            for (int i = 0; i < c.length; i++) {
+                c[i] = this.alphabet.charAt(r.nextInt(this.alphabet.length()));
+            }
+            return new String(c);
+        }
+    };
+
+    static final String DIGITS = "0123456789";
+    static final String UPPER = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    static final String LOWER = "abcdefghijklmnopqrstuvwxyz";
+
+    final String alphabet;
+
+    Inputs(final String alphabet) {
+        this.alphabet = alphabet;
+    }
+
+    abstract String generate(Random r);
+
+    /* generate @n inputs from @seed */
+    String[] generate(final int n, final long seed) {
+        final Random r = new Random(seed);
+        final String[] s = new String[n];
+
+        for (int i = 0; i < n; i++) {
+            s[i] = this.generate(r);
+        }
+        return s;
+    }
+
+    /* the Luhn check digit for the digits of @s */
+    static int luhn(final CharSequence s) {
+        int sum = 0;
+
+        for (int i = s.length() - 1, dbl = 1; i >= 0; i--, dbl ^= 1) {
+            final int d = (s.charAt(i) - '0') << dbl;
+            sum += (d > 9) ? d - 9 : d;
+        }
+        return (10 - sum % 10) % 10;
+    }
+
+    /*
+     * the check digits of the IBAN of country @cc with @bban: the
+     * remainder by 97 of the digits of bban, cc, and 00, with letters
+     * as 10 to 35, subtracted from 98
+     */
+    static int check(final String cc, final CharSequence bban) {
+        final StringBuilder sb = new StringBuilder();
+        final String s = bban + cc + "00";
+
+        for (int i = 0; i < s.length(); i++) {
+            sb.append(Character.digit(s.charAt(i), 36));
+        }
+        return 98 - new BigInteger(sb.toString()).mod(BigInteger.valueOf(97)).intValue();
+    }
+}
@@ -0,0 +1,214 @@
+package ubiqsecurity.fpe.loadgen;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import ubiqsecurity.fpe.FFX;
+
+/*
+ * drives a set of workloads from a number of threads for a warm-up
+ * period, whose operations aren't measured, followed by a measured
+ * period.
+ *
+ * closed-loop, each thread starts an operation as soon as the previous
+ * one finishes, and the latency of an operation is the time it took.
+ * open-loop, operations are scheduled at a fixed rate, spread evenly
+ * over the threads, and the latency of an operation is measured from
+ * the time at which it was scheduled, not the time at which it started,
+ * so that time spent waiting behind a slow operation is counted rather
+ * than hidden (coordinated omission).
+ */
+final class LoadGenerator
+{
+    /* the time before a scheduled operation spent spinning, in ns */
+    private static final long SPIN = 200000;
+
+    /* the values of one kind and the context with which they're processed */
+    static final class Workload
+    {
+        final Inputs kind;
+        final FFX ctx;
+        final String[] inputs;
+
+        Workload(final Inputs kind, final FFX ctx, final String[] inputs) {
+            this.kind = kind;
+            this.ctx = ctx;
+            this.inputs = inputs;
+        }
+    }
+
+    /* the measurements of a run */
+    static final class Result
+    {
+        final Histogram all = new Histogram();
+        final Histogram[] kinds;
+        long nanos;
+        long collections, collectionMillis;
+
+        Result(final int workloads) {
+            this.kinds = new Histogram[workloads];
+            for (int i = 0; i < workloads; i++) {
+                this.kinds[i] = new Histogram();
+            }
+        }
+
+        void add(final Result r) {
+            this.all.add(r.all);
+            for (int i = 0; i < this.kinds.length; i++) {
+                this.kinds[i].add(r.kinds[i]);
+            }
+        }
+
+        double throughput() {
+            return this.all.count() / (Math.max(this.nanos, 1) / 1e9);
+        }
+    }
+
+    private final List<Workload> work;
+    private final int threads;
+    /* operations per second over all threads, or 0 for closed-loop */
+    private final double rate;
+    private final long warmup, duration;
+    private final boolean encrypt;
+
+    /* written so that the results of the operations aren't optimized away */
+    volatile long sink;
+
+    LoadGenerator(final List<Workload> work, final int threads,
+                  final double rate, final long warmup, final long duration,
+                  final boolean encrypt) {
+        if (work.isEmpty() || threads < 1 || rate < 0 ||
+            warmup < 0 || duration <= 0) {
+            throw new IllegalArgumentException("invalid load parameters");
+        }
+
+        this.work = work;
+        this.threads = threads;
+        this.rate = rate;
+        this.warmup = warmup;
+        this.duration = duration;
+        this.encrypt = encrypt;
+    }
+
+    Result run() throws InterruptedException {
+        final Result total = new Result(this.work.size());
+        final Result[] results = new Result[this.threads];
+        final Thread[] t = new Thread[this.threads];
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final long begin = System.nanoTime() + 10000000;
+        final long measure = begin + this.warmup;
+        final long end = measure + this.duration;
+        long gc0, ms0;
+
+        for (int i = 0; i < this.threads; i++) {
+            final int k = i;
+
+            results[i] = new Result(this.work.size());
+            t[i] = new Thread(() -> {
+                    try {
+                        this.drive(k, begin, measure, end, results[k]);
+                    } catch (final Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }, "loadgen-" + i);
+            t[i].start();
+        }
+
+        /* the collections that happen during the measured period */
+        sleepUntil(measure);
+        gc0 = collections(false);
+        ms0 = collections(true);
+
+        for (final Thread th : t) {
+            th.join();
+        }
+
+        total.nanos = this.duration;
+        total.collections = collections(false) - gc0;
+        total.collectionMillis = collections(true) - ms0;
+
+        if (failure.get() != null) {
+            throw new IllegalStateException("operation failed", failure.get());
+        }
+
+        for (final Result r : results) {
+            total.add(r);
+        }
+        return total;
+    }
+
+    private void drive(final int k, final long begin, final long measure,
+                       final long end, final Result r) {
+        final int n = this.work.size();
+        /* the interval between one thread's operations, when open-loop */
+        final double interval = (this.rate > 0) ? this.threads * 1e9 / this.rate : 0;
+        /* threads are offset from each other, and start at different inputs */
+        final long t0 = begin + (long)(interval * k / this.threads);
+        long sink = 0;
+
+        sleepUntil(t0);
+
+        for (long i = 0; ; i++) {
+            final Workload w = this.work.get((int)(i % n));
+            final String x = w.inputs[(int)((i / n + 7919L * k) % w.inputs.length)];
+            final long scheduled;
+            final String y;
+            final long done;
+
+            if (interval > 0) {
+                scheduled = t0 + (long)(i * interval);
+                if (scheduled >= end) {
+                    break;
+                }
+                sleepUntil(scheduled);
+            } else {
+                scheduled = System.nanoTime();
+                if (scheduled >= end) {
+                    break;
+                }
+            }
+
+            y = this.encrypt ? w.ctx.encrypt(x) : w.ctx.decrypt(x);
+            done = System.nanoTime();
+            sink += y.length();
+
+            if (scheduled >= measure) {
+                r.all.record(done - scheduled);
+                r.kinds[(int)(i % n)].record(done - scheduled);
+            }
+        }
+
+        this.sink = sink;
+    }
+
+    /*
+     * wait until @deadline. parking may wake up tens of microseconds
+     * late, which open-loop would count as latency, so the last part
+     * of the wait is spent spinning
+     */
+    private static void sleepUntil(final long deadline) {
+        long now;
+        while ((now = System.nanoTime()) < deadline) {
+            if (deadline - now > SPIN) {
+                LockSupport.parkNanos(deadline - now - SPIN);
+            }
+        }
+    }
+
+    /* the total number of collections, or the time spent in them, in ms */
+    private static long collections(final boolean time) {
+        long sum = 0;
+
+        for (final GarbageCollectorMXBean gc :
+                 ManagementFactory.getGarbageCollectorMXBeans()) {
+            final long v = time ? gc.getCollectionTime() : gc.getCollectionCount();
+            if (v > 0) {
+                sum += v;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,198 @@
+package ubiqsecurity.fpe.loadgen;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import ubiqsecurity.fpe.FF1;
+import ubiqsecurity.fpe.FF1Key;
+import ubiqsecurity.fpe.FF3_1;
+import ubiqsecurity.fpe.FF3_1Key;
+import ubiqsecurity.fpe.FFX;
+
+/*
+ * the load generator: ubiq-fpe-loadgen [options]
+ */
+public final class Main
+{
+    /* the number of distinct inputs generated for each kind */
+    private static final int POOL = 1 << 16;
+
+    private static final String USAGE =
+        "usage: ubiq-fpe-loadgen [options]\n" +
+        "\n" +
+        "  --algorithm ff1|ff3-1   (default ff1)\n" +
+        "  --inputs <list>         comma-separated kinds of input, from\n" +
+        "                          pan, ssn, iban, email, and token\n" +
+        "                          (default all)\n" +
+        "  --threads <n>           (default: the number of processors)\n" +
+        "  --rate <ops/s>          run open-loop at this total rate\n" +
+        "                          (default: closed-loop)\n" +
+        "  --warmup <s>            unmeasured seconds before the run\n" +
+        "                          (default 10)\n" +
+        "  --duration <s>          measured seconds (default 30)\n" +
+        "  --decrypt               decrypt rather than encrypt\n" +
+        "  --key <hex>             the key (default: random)\n" +
+        "  --report <file>         where to write the JSON report\n" +
+        "                          (default: standard output)\n";
+
+    private Main() {
+    }
+
+    static byte[] hex(final String s) {
+        final byte[] b = new byte[s.length() / 2];
+
+        if (s.length() % 2 != 0) {
+            throw new IllegalArgumentException("invalid hex string");
+        }
+
+        for (int i = 0; i < b.length; i++) {
+            final int hi = Character.digit(s.charAt(2 * i), 16);
+            final int lo = Character.digit(s.charAt(2 * i + 1), 16);
+
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("invalid hex string");
+            }
+            b[i] = (byte)((hi << 4) | lo);
+        }
+
+        return b;
+    }
+
+    private static long seconds(final Options o, final String name,
+                                final String def) {
+        final double s = Double.parseDouble(o.get(name, def));
+        if (s < 0) {
+            throw new IllegalArgumentException("invalid --" + name);
+        }
+        return (long)(s * 1e9);
+    }
+
+    /*
+     * create the workloads for the kinds of input in @kinds. all
+     * contexts share one expanded key and the all-zero tweak
+     */
+    static List<LoadGenerator.Workload> workloads(final String algorithm,
+                                                  final byte[] key,
+                                                  final String kinds,
+                                                  final boolean encrypt) {
+        final List<LoadGenerator.Workload> work = new ArrayList<>();
+        final FF1Key ff1;
+        final FF3_1Key ff3_1;
+
+        if (algorithm.equals("ff1")) {
+            ff1 = new FF1Key(key);
+            ff3_1 = null;
+        } else if (algorithm.equals("ff3-1")) {
+            ff1 = null;
+            ff3_1 = new FF3_1Key(key);
+        } else {
+            throw new IllegalArgumentException("unknown algorithm: " + algorithm);
+        }
+
+        for (final String k : kinds.split(",")) {
+            final Inputs kind;
+            final String[] inputs;
+            final FFX ctx;
+
+            try {
+                kind = Inputs.valueOf(k.trim().toUpperCase(Locale.ROOT));
+            } catch (final IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown input: " + k);
+            }
+
+            ctx = (ff1 != null)
+                ? new FF1(ff1, new byte[0], 0, 0,
+                          kind.alphabet.length(), kind.alphabet)
+                : new FF3_1(ff3_1, new byte[7],
+                            kind.alphabet.length(), kind.alphabet);
+
+            inputs = kind.generate(POOL, kind.ordinal());
+            if (!encrypt) {
+                for (int i = 0; i < inputs.length; i++) {
+                    inputs[i] = ctx.encrypt(inputs[i]);
+                }
+            }
+
+            work.add(new LoadGenerator.Workload(kind, ctx, inputs));
+        }
+
+        return work;
+    }
+
+    private static Report run(final String[] argv) throws Exception {
+        final Options o = new Options(
+            argv,
+            new String[] { "algorithm", "inputs", "threads", "rate", "warmup",
+                           "duration", "key", "report" },
+            new String[] { "decrypt" });
+        final String algorithm = o.get("algorithm", "ff1");
+        final boolean encrypt = !o.has("decrypt");
+        final int threads = o.getInt("threads",
+                                     Runtime.getRuntime().availableProcessors());
+        final double rate = Double.parseDouble(o.get("rate", "0"));
+        final long warmup = seconds(o, "warmup", "10");
+        final long duration = seconds(o, "duration", "30");
+        final byte[] key;
+        final List<LoadGenerator.Workload> work;
+        final Report r;
+
+        if (!o.args().isEmpty()) {
+            throw new IllegalArgumentException("unexpected argument: " +
+                                               o.args().get(0));
+        }
+
+        if (o.get("key", null) != null) {
+            key = hex(o.get("key", null));
+        } else {
+            key = new byte[16];
+            new SecureRandom().nextBytes(key);
+        }
+
+        work = workloads(algorithm, key,
+                         o.get("inputs", "pan,ssn,iban,email,token"), encrypt);
+        r = new Report(algorithm, encrypt, threads, rate, warmup, duration, work,
+                       new LoadGenerator(work, threads, rate, warmup, duration,
+                                         encrypt).run());
+
+        if (o.get("report", null) != null) {
+            try (Writer w = Files.newBufferedWriter(Paths.get(o.get("report", null)),
+                                                    StandardCharsets.UTF_8)) {
+                w.write(r.json());
+            }
+        } else {
+            System.out.print(r.json());
+        }
+
+        return r;
+    }
+
+    public static void main(final String[] args) {
+        final Report r;
+
+        if (args.length > 0 && args[0].equals("--help")) {
+            System.err.print(USAGE);
+            System.exit(0);
+        }
+
+        try {
+            r = run(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("ubiq-fpe-loadgen: " + e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+            return;
+        } catch (Exception e) {
+            System.err.println("ubiq-fpe-loadgen: " + e);
+            System.exit(1);
+            return;
+        }
+
+        System.err.println(r);
+    }
+}
@@ -0,0 +1,75 @@
+package ubiqsecurity.fpe.loadgen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * command line options of the form --name value or --flag, followed
+ * by positional arguments
+ */
+final class Options
+{
+    private final Map<String, String> values = new HashMap<>();
+    private final Set<String> flags = new HashSet<>();
+    private final List<String> args = new ArrayList<>();
+
+    /*
+     * parse @argv, in which the options named in @withValue take a
+     * value and those named in @flags don't
+     */
+    Options(final String[] argv, final String[] withValue, final String[] flags) {
+        final List<String> wv = Arrays.asList(withValue);
+        final List<String> fl = Arrays.asList(flags);
+
+        for (int i = 0; i < argv.length; i++) {
+            final String a = argv[i];
+
+            if (a.equals("--")) {
+                this.args.addAll(Arrays.asList(argv).subList(i + 1, argv.length));
+                break;
+            } else if (!a.startsWith("--")) {
+                this.args.add(a);
+            } else if (wv.contains(a.substring(2))) {
+                if (i + 1 == argv.length) {
+                    throw new IllegalArgumentException("missing value for " + a);
+                }
+                this.values.put(a.substring(2), argv[++i]);
+            } else if (fl.contains(a.substring(2))) {
+                this.flags.add(a.substring(2));
+            } else {
+                throw new IllegalArgumentException("unknown option: " + a);
+            }
+        }
+    }
+
+    String get(final String name, final String def) {
+        final String v = this.values.get(name);
+        return (v != null) ? v : def;
+    }
+
+    String require(final String name) {
+        final String v = this.values.get(name);
+        if (v == null) {
+            throw new IllegalArgumentException("missing option: --" + name);
+        }
+        return v;
+    }
+
+    int getInt(final String name, final int def) {
+        final String v = this.values.get(name);
+        return (v != null) ? Integer.parseInt(v) : def;
+    }
+
+    boolean has(final String name) {
+        return this.flags.contains(name);
+    }
+
+    List<String> args() {
+        return this.args;
+    }
+}
@@ -0,0 +1,110 @@
+package ubiqsecurity.fpe.loadgen;
+
+import java.util.List;
+import java.util.Locale;
+
+import ubiqsecurity.fpe.FFX;
+
+/*
+ * the results of a run, as a JSON document for comparison between
+ * releases, and as a line of text for people. latencies are in
+ * nanoseconds.
+ */
+final class Report
+{
+    private final String algorithm;
+    private final boolean encrypt;
+    private final int threads;
+    private final double rate;
+    private final long warmup, duration;
+    private final List<LoadGenerator.Workload> work;
+    private final LoadGenerator.Result result;
+
+    Report(final String algorithm, final boolean encrypt, final int threads,
+           final double rate, final long warmup, final long duration,
+           final List<LoadGenerator.Workload> work,
+           final LoadGenerator.Result result) {
+        this.algorithm = algorithm;
+        this.encrypt = encrypt;
+        this.threads = threads;
+        this.rate = rate;
+        this.warmup = warmup;
+        this.duration = duration;
+        this.work = work;
+        this.result = result;
+    }
+
+    private static String string(final String s) {
+        return (s != null) ? "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"" : "null";
+    }
+
+    private static void latencies(final StringBuilder sb, final Histogram h) {
+        sb.append(String.format(
+                      Locale.ROOT,
+                      "{\"operations\": %d, \"mean\": %.0f, \"p50\": %d, " +
+                      "\"p99\": %d, \"p999\": %d, \"max\": %d}",
+                      h.count(), h.mean(), h.percentile(0.5),
+                      h.percentile(0.99), h.percentile(0.999), h.max()));
+    }
+
+    String json() {
+        final StringBuilder sb = new StringBuilder();
+        final Runtime rt = Runtime.getRuntime();
+
+        sb.append("{\n");
+        sb.append("  \"version\": ")
+            .append(string(FFX.class.getPackage().getImplementationVersion()))
+            .append(",\n");
+        sb.append("  \"java\": ").append(string(System.getProperty("java.version")))
+            .append(",\n");
+        sb.append("  \"vm\": ").append(string(System.getProperty("java.vm.name")))
+            .append(",\n");
+        sb.append("  \"processors\": ").append(rt.availableProcessors()).append(",\n");
+        sb.append("  \"maxHeap\": ").append(rt.maxMemory()).append(",\n");
+        sb.append("  \"algorithm\": ").append(string(this.algorithm)).append(",\n");
+        sb.append("  \"operation\": ")
+            .append(string(this.encrypt ? "encrypt" : "decrypt")).append(",\n");
+        sb.append("  \"mode\": ")
+            .append(string((this.rate > 0) ? "open" : "closed")).append(",\n");
+        sb.append("  \"threads\": ").append(this.threads).append(",\n");
+        sb.append("  \"targetRate\": ")
+            .append((this.rate > 0) ? String.format(Locale.ROOT, "%.1f", this.rate) : "null")
+            .append(",\n");
+        sb.append("  \"warmupSeconds\": ").append(this.warmup / 1e9).append(",\n");
+        sb.append("  \"durationSeconds\": ").append(this.duration / 1e9).append(",\n");
+        sb.append("  \"throughput\": ")
+            .append(String.format(Locale.ROOT, "%.1f", this.result.throughput()))
+            .append(",\n");
+        sb.append("  \"latency\": ");
+        latencies(sb, this.result.all);
+        sb.append(",\n");
+        sb.append("  \"gc\": {\"collections\": ").append(this.result.collections)
+            .append(", \"millis\": ").append(this.result.collectionMillis)
+            .append("},\n");
+        sb.append("  \"inputs\": {");
+        for (int i = 0; i < this.work.size(); i++) {
+            sb.append((i > 0) ? ",\n" : "\n").append("    ")
+                .append(string(this.work.get(i).kind.name().toLowerCase(Locale.ROOT)))
+                .append(": ");
+            latencies(sb, this.result.kinds[i]);
+        }
+        sb.append("\n  }\n");
+        sb.append("}\n");
+
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        final Histogram h = this.result.all;
+
+        return String.format(
+            Locale.ROOT,
+            "%d operations in %.1f s: %.0f ops/s, latency p50 %.1f us, " +
+            "p99 %.1f us, p99.9 %.1f us, max %.1f us; %d collections, %d ms",
+            h.count(), this.duration / 1e9, this.result.throughput(),
+            h.percentile(0.5) / 1e3, h.percentile(0.99) / 1e3,
+            h.percentile(0.999) / 1e3, h.max() / 1e3,
+            this.result.collections, this.result.collectionMillis);
+    }
+}
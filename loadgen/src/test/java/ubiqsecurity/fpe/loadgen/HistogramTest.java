@@ -0,0 +1,55 @@
+package ubiqsecurity.fpe.loadgen;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class HistogramTest
+{
+    @Test
+    public void buckets() {
+        int last = -1;
+
+        /* every value falls in a bucket whose highest value is not below it */
+        for (long v = 0; v < 100000; v++) {
+            final int i = Histogram.index(v);
+
+            assertTrue(i == last || i == last + 1);
+            assertTrue(Histogram.highest(i) >= v);
+            assertTrue(Histogram.highest(i) - v <= v / 32);
+            last = i;
+        }
+
+        assertEquals(Long.MAX_VALUE, Histogram.highest(Histogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void percentiles() {
+        final Random rng = new Random(1);
+        final long[] v = new long[100000];
+        final Histogram h = new Histogram();
+        final Histogram a = new Histogram(), b = new Histogram();
+
+        for (int i = 0; i < v.length; i++) {
+            v[i] = (long)Math.exp(rng.nextDouble() * 20);
+            h.record(v[i]);
+            ((i % 2 == 0) ? a : b).record(v[i]);
+        }
+        Arrays.sort(v);
+
+        a.add(b);
+        for (final double q : new double[] { 0.5, 0.99, 0.999, 1.0 }) {
+            final long exact = v[(int)Math.ceil(q * v.length) - 1];
+
+            assertTrue(h.percentile(q) >= exact);
+            assertTrue(h.percentile(q) <= exact + exact / 32);
+            assertEquals(h.percentile(q), a.percentile(q));
+        }
+
+        assertEquals(v.length, a.count());
+        assertEquals(v[v.length - 1], h.max());
+        assertEquals(0, new Histogram().percentile(0.5));
+    }
+}
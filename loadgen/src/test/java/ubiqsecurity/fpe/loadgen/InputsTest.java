@@ -0,0 +1,56 @@
+package ubiqsecurity.fpe.loadgen;
+
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class InputsTest
+{
+    @Test
+    public void shapes() {
+        for (final Inputs k : Inputs.values()) {
+            for (final String s : k.generate(1000, 1)) {
+                for (int i = 0; i < s.length(); i++) {
+                    assertTrue(s, k.alphabet.indexOf(s.charAt(i)) >= 0);
+                }
+            }
+        }
+
+        for (final String s : Inputs.PAN.generate(1000, 2)) {
+            assertTrue(s.length() == 15 || s.length() == 16);
+            assertEquals(s.charAt(s.length() - 1) - '0',
+                         Inputs.luhn(s.substring(0, s.length() - 1)));
+        }
+
+        /* GB82WEST12345698765432, from the IBAN registry */
+        assertEquals(82, Inputs.check("GB", "WEST12345698765432"));
+    }
+
+    @Test
+    public void workloads() throws InterruptedException {
+        final byte[] key = new byte[16];
+
+        for (final String alg : new String[] { "ff1", "ff3-1" }) {
+            final List<LoadGenerator.Workload> w = Main.workloads(
+                alg, key, "pan,ssn,iban,email,token", true);
+            final LoadGenerator.Result r =
+                new LoadGenerator(w, 2, 0, 0, 200000000L, true).run();
+
+            assertTrue(r.all.count() > 0);
+            for (int i = 0; i < w.size(); i++) {
+                assertTrue(r.kinds[i].count() > 0);
+            }
+        }
+
+        /* open-loop: about 1000 ops/s for 0.5 s */
+        final LoadGenerator.Result r = new LoadGenerator(
+            Main.workloads("ff1", key, "ssn", false), 2, 1000,
+            0, 500000000L, false).run();
+        assertEquals(500, r.all.count());
+
+        assertThrows(IllegalArgumentException.class, () -> {
+                Main.workloads("ff1", key, "passport", true);
+            });
+    }
+}